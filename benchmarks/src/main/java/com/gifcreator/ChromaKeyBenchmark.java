@@ -0,0 +1,56 @@
+package com.gifcreator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RemoveGreenBackground#makeTransparent} against the per-pixel
+ * getRGB/Color/setRGB loop it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChromaKeyBenchmark {
+
+    @Param({ "256x256", "1920x1080", "3840x2160" })
+    public String resolution;
+
+    private BufferedImage frame;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        frame = MultiConvert.convertImageWithGreenBackground(SyntheticFrames.frame(size[0], size[1], 0));
+    }
+
+    @Benchmark
+    public BufferedImage makeTransparent() {
+        return RemoveGreenBackground.makeTransparent(frame);
+    }
+
+    @Benchmark
+    public BufferedImage perPixelBaseline() {
+        BufferedImage transparentImage = new BufferedImage(frame.getWidth(), frame.getHeight(),
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = transparentImage.createGraphics();
+        g2d.drawImage(frame, 0, 0, null);
+        for (int y = 0; y < frame.getHeight(); y++) {
+            for (int x = 0; x < frame.getWidth(); x++) {
+                int pixel = frame.getRGB(x, y);
+                Color color = new Color(pixel, true);
+                if (color.getGreen() > 150 && color.getRed() < 150 && color.getBlue() < 150) {
+                    transparentImage.setRGB(x, y, 0x00FFFFFF & pixel);
+                }
+            }
+        }
+        g2d.dispose();
+        return transparentImage;
+    }
+}
@@ -0,0 +1,49 @@
+package com.gifcreator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compositing a translucent frame over the green matte, through the current
+ * {@link PixelOps} kernels and through the Graphics2D fill+drawImage they replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompositeBenchmark {
+
+    @Param({ "256x256", "1920x1080", "3840x2160" })
+    public String resolution;
+
+    private BufferedImage frame;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        frame = SyntheticFrames.frame(size[0], size[1], 0);
+    }
+
+    @Benchmark
+    public BufferedImage convertImageWithGreenBackground() {
+        return MultiConvert.convertImageWithGreenBackground(frame);
+    }
+
+    @Benchmark
+    public BufferedImage graphics2dBaseline() {
+        BufferedImage converted = new BufferedImage(frame.getWidth(), frame.getHeight(),
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = converted.createGraphics();
+        g2d.setColor(Color.GREEN);
+        g2d.fillRect(0, 0, converted.getWidth(), converted.getHeight());
+        g2d.drawImage(frame, 0, 0, null);
+        g2d.dispose();
+        return converted;
+    }
+}
@@ -0,0 +1,59 @@
+package com.gifcreator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A complete {@link MultiConvert#createGif} run writing to a temporary file. The
+ * score is per GIF; divide by {@code frameCount} for ns/frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CreateGifBenchmark {
+
+    @Param({ "256x256", "1920x1080" })
+    public String resolution;
+
+    @Param({ "10", "60" })
+    public int frameCount;
+
+    @Param({ "FAST", "IMAGEIO" })
+    public GifEncoderType encoder;
+
+    @Param({ "LOCAL", "GLOBAL" })
+    public PaletteMode paletteMode;
+
+    @Param({ "false", "true" })
+    public boolean deltaFrames;
+
+    private BufferedImage[] frames;
+    private File output;
+    private ConversionOptions options;
+
+    @Setup
+    public void setUp() throws IOException {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        frames = SyntheticFrames.frames(size[0], size[1], frameCount);
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = MultiConvert.convertImageWithGreenBackground(frames[i]);
+        }
+        options = ConversionOptions.builder().encoder(encoder).paletteMode(paletteMode).deltaFrames(deltaFrames)
+                .build();
+        output = File.createTempFile("gifcreator-bench", ".gif");
+        output.deleteOnExit();
+    }
+
+    @Benchmark
+    public long createGif() throws IOException {
+        MultiConvert.createGif(frames, output.getAbsolutePath(), 100, options);
+        return output.length();
+    }
+}
@@ -0,0 +1,57 @@
+package com.gifcreator;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PNG decode, the first stage of every conversion, up to the packed ARGB pixels
+ * the later stages work on, through {@code ImageIO.read} as before and through
+ * {@link FrameLoader} with its cached per-thread reader.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+
+    @Param({ "256x256", "1920x1080", "3840x2160" })
+    public String resolution;
+
+    private byte[] png;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        png = SyntheticFrames.png(SyntheticFrames.frame(size[0], size[1], 0));
+    }
+
+    private int[] pixels;
+
+    @Benchmark
+    public BufferedImage imageIoRead() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(png));
+    }
+
+    @Benchmark
+    public int[] imageIoReadToArgb() throws IOException {
+        return toArgb(ImageIO.read(new ByteArrayInputStream(png)));
+    }
+
+    @Benchmark
+    public int[] frameLoaderToArgb() throws IOException {
+        return toArgb(FrameLoader.decode(png, "png"));
+    }
+
+    private int[] toArgb(BufferedImage image) {
+        pixels = Rasters.scratchArgb(image.getWidth() * image.getHeight());
+        Rasters.copyArgb(image, pixels);
+        return pixels;
+    }
+}
@@ -0,0 +1,91 @@
+package com.gifcreator;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing one frame to an open GIF, with all output discarded. {@code indexed}
+ * selects whether the writer receives an already quantized frame or has to reduce
+ * the colours itself. The {@code arena} variants write the frame quantized into a
+ * {@link FrameArena} buffer, as the conversion hands it over; the JDK writer gets
+ * it either through the raster view or as the heap copy its encoder makes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncodeBenchmark {
+
+    @Param({ "256x256", "1920x1080", "3840x2160" })
+    public String resolution;
+
+    @Param({ "true", "false" })
+    public boolean indexed;
+
+    private BufferedImage frame;
+    private BufferedImage arenaFrame;
+    private MemoryCacheImageOutputStream sequenceOutput;
+    private GifSequenceWriter sequenceWriter;
+    private GifEncoder fastEncoder;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        frame = MultiConvert.convertImageWithGreenBackground(SyntheticFrames.frame(size[0], size[1], 0));
+        FrameArena arena = new FrameArena(size[0] * size[1]);
+        ByteBuffer indices = arena.allocate(size[0] * size[1]);
+        arenaFrame = arena.indexed(indices, size[0], size[1],
+                new OctreeQuantizer().quantizeInto(Rasters.argbPixels(frame), size[0], size[1], indices));
+        if (indexed) {
+            frame = new OctreeQuantizer().quantize(frame);
+        }
+
+        sequenceOutput = new MemoryCacheImageOutputStream(OutputStream.nullOutputStream());
+        sequenceWriter = new GifSequenceWriter(sequenceOutput, BufferedImage.TYPE_INT_ARGB, 100, true);
+        fastEncoder = GifEncoderType.FAST.create();
+        fastEncoder.start(OutputStream.nullOutputStream(), 0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        sequenceWriter.close();
+        sequenceOutput.close();
+        fastEncoder.finish();
+    }
+
+    @Benchmark
+    public void gifSequenceWriter() throws IOException {
+        sequenceWriter.writeToSequence(frame);
+        sequenceOutput.flush();
+    }
+
+    @Benchmark
+    public void fastGifEncoder() throws IOException {
+        fastEncoder.addFrame(frame, 100);
+    }
+
+    @Benchmark
+    public void gifSequenceWriterArenaView() throws IOException {
+        sequenceWriter.writeToSequence(arenaFrame);
+        sequenceOutput.flush();
+    }
+
+    @Benchmark
+    public void gifSequenceWriterArenaCopy() throws IOException {
+        sequenceWriter.writeToSequence(FrameArena.onHeap(arenaFrame));
+        sequenceOutput.flush();
+    }
+
+    @Benchmark
+    public void fastGifEncoderArena() throws IOException {
+        fastEncoder.addFrame(arenaFrame, 100);
+    }
+}
@@ -0,0 +1,80 @@
+package com.gifcreator;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Directories full of short GIFs, where per-GIF setup rather than per-frame work
+ * dominates. Each invocation writes {@code gifCount} four-frame GIFs to a
+ * discarding stream, with a fresh {@link GifSequenceWriter} per GIF, with pooled
+ * writers, and with the FAST encoder for reference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ManySmallGifsBenchmark {
+
+    @Param({ "8x8", "64x64" })
+    public String resolution;
+
+    @Param({ "100" })
+    public int gifCount;
+
+    private BufferedImage[] frames;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        frames = SyntheticFrames.frames(size[0], size[1], 4);
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new OctreeQuantizer().quantize(MultiConvert.convertImageWithGreenBackground(frames[i]));
+        }
+    }
+
+    @Benchmark
+    public void newWriterPerGif() throws IOException {
+        for (int g = 0; g < gifCount; g++) {
+            MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(OutputStream.nullOutputStream());
+            GifSequenceWriter writer = new GifSequenceWriter(output, BufferedImage.TYPE_INT_ARGB, 100, 0);
+            writeFrames(writer);
+            output.close();
+        }
+    }
+
+    @Benchmark
+    public void pooledWriters() throws IOException {
+        for (int g = 0; g < gifCount; g++) {
+            MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(OutputStream.nullOutputStream());
+            GifSequenceWriter writer = GifSequenceWriter.pooled(output, BufferedImage.TYPE_INT_ARGB, 100, 0);
+            writeFrames(writer);
+            output.close();
+        }
+    }
+
+    @Benchmark
+    public void fastEncoder() throws IOException {
+        for (int g = 0; g < gifCount; g++) {
+            GifEncoder encoder = GifEncoderType.FAST.create();
+            encoder.start(OutputStream.nullOutputStream(), 0);
+            for (BufferedImage frame : frames) {
+                encoder.addFrame(frame, 100);
+            }
+            encoder.finish();
+        }
+    }
+
+    private void writeFrames(GifSequenceWriter writer) throws IOException {
+        for (BufferedImage frame : frames) {
+            writer.writeToSequence(frame, 100);
+        }
+        writer.close();
+    }
+}
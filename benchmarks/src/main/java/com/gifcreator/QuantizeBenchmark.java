@@ -0,0 +1,75 @@
+package com.gifcreator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reducing a composited frame to a 256-colour indexed image. The {@code Into}
+ * variants write the indices into a reused buffer, on the heap or from a
+ * {@link FrameArena}, as the conversion does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuantizeBenchmark {
+
+    @Param({ "256x256", "1920x1080", "3840x2160" })
+    public String resolution;
+
+    private BufferedImage composited;
+    private int[] argb;
+    private ByteBuffer heapIndices;
+    private ByteBuffer arenaIndices;
+
+    @Setup
+    public void setUp() {
+        int[] size = SyntheticFrames.parseResolution(resolution);
+        composited = MultiConvert.convertImageWithGreenBackground(SyntheticFrames.frame(size[0], size[1], 0));
+        argb = Rasters.argbPixels(composited);
+        heapIndices = ByteBuffer.allocate(size[0] * size[1]);
+        arenaIndices = new FrameArena(size[0] * size[1]).allocate(size[0] * size[1]);
+    }
+
+    @Benchmark
+    public BufferedImage octree() {
+        return new OctreeQuantizer().quantize(composited);
+    }
+
+    @Benchmark
+    public IndexColorModel octreeIntoHeap() {
+        return new OctreeQuantizer().quantizeInto(argb, composited.getWidth(), composited.getHeight(), heapIndices);
+    }
+
+    @Benchmark
+    public IndexColorModel octreeIntoArena() {
+        return new OctreeQuantizer().quantizeInto(argb, composited.getWidth(), composited.getHeight(), arenaIndices);
+    }
+
+    @Benchmark
+    public BufferedImage medianCut() {
+        return new FrameQuantizer(QuantizerType.MEDIAN_CUT, Dithering.NONE, 1).quantize(composited);
+    }
+
+    @Benchmark
+    public BufferedImage neuQuant() {
+        return new FrameQuantizer(QuantizerType.NEUQUANT, Dithering.NONE, NeuQuantQuantizer.DEFAULT_SAMPLE_FACTOR)
+                .quantize(composited);
+    }
+
+    @Benchmark
+    public BufferedImage octreeOrdered() {
+        return new FrameQuantizer(QuantizerType.OCTREE, Dithering.ORDERED, 1).quantize(composited);
+    }
+
+    @Benchmark
+    public BufferedImage octreeFloydSteinberg() {
+        return new FrameQuantizer(QuantizerType.OCTREE, Dithering.FLOYD_STEINBERG, 1).quantize(composited);
+    }
+}
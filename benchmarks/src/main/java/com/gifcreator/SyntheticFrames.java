@@ -0,0 +1,62 @@
+package com.gifcreator;
+
+import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Deterministic sprite-like frames so the benchmarks run offline: a translucent
+ * gradient, an anti-aliased moving shape and a green-screen border.
+ */
+final class SyntheticFrames {
+
+    private SyntheticFrames() {
+    }
+
+    /** Parses a {@code WIDTHxHEIGHT} benchmark parameter. */
+    static int[] parseResolution(String resolution) {
+        String[] parts = resolution.split("x");
+        return new int[] { Integer.parseInt(parts[0]), Integer.parseInt(parts[1]) };
+    }
+
+    static BufferedImage frame(int width, int height, int index) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setPaint(new GradientPaint(0, 0, new Color(255, 40, 40, 220), width, height, new Color(40, 40, 255, 90)));
+        g.fillRect(width / 8, height / 8, width * 3 / 4, height / 2);
+        g.setColor(new Color(250, 200, 10));
+        int size = Math.max(8, Math.min(width, height) / 4);
+        g.fillOval((index * 17) % Math.max(1, width - size), height / 2, size, size);
+        g.setComposite(AlphaComposite.Src);
+        g.setColor(new Color(0, 255, 0, 255));
+        g.fillRect(0, 0, width, Math.max(1, height / 16));
+        g.dispose();
+        return image;
+    }
+
+    static BufferedImage[] frames(int width, int height, int count) {
+        BufferedImage[] frames = new BufferedImage[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = frame(width, height, i);
+        }
+        return frames;
+    }
+
+    static byte[] png(BufferedImage image) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
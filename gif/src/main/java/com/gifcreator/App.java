@@ -1,6 +1,7 @@
 package com.gifcreator;
 
 import javax.swing.*;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import java.awt.*;
@@ -9,6 +10,8 @@ import java.awt.event.ActionListener;
 import java.io.File;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 public class App {
     private static JProgressBar progressBar;
@@ -18,10 +21,25 @@ public class App {
     private static JComboBox<String> modeComboBox;
     private static JTextField suffixTextField;
     private static JSlider speedSlider;
+    private static JCheckBox transparentCheckBox;
     private static JLabel gifPreviewLabel;
     private static JPanel previewPanel;
     private static int currentDelay = 100; // Valor padrão em ms
 
+    // Pré-visualização tocada direto no painel, sem gerar um GIF
+    private static final PreviewEngine previewEngine = new PreviewEngine(PreviewEngine.DEFAULT_PIXEL_BUDGET);
+    private static final List<Image> previewFrames = new ArrayList<>();
+    private static final ImageIcon previewIcon = new ImageIcon();
+    private static Timer previewTimer;
+    private static SwingWorker<Void, Image> previewWorker;
+    private static int previewStep = 1;
+    private static int previewIndex;
+
+    // Progresso da conversão: quadros gravados ou pulados sobre os quadros encontrados até agora
+    private static final LongAdder framesQueued = new LongAdder();
+    private static final LongAdder framesDone = new LongAdder();
+    private static final AtomicBoolean progressUpdatePending = new AtomicBoolean();
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             createAndShowGUI();
@@ -69,6 +87,9 @@ public class App {
         speedSlider.setPaintTicks(true);
         speedSlider.setPaintLabels(true);
 
+        // Fundo transparente direto das imagens, sem o verde
+        transparentCheckBox = new JCheckBox("Fundo transparente (sem fundo verde)");
+
         // Botões
         previewButton = new JButton("Visualizar Primeiro GIF");
         previewButton.setEnabled(false);
@@ -117,15 +138,19 @@ public class App {
 
         constraints.gridy = 4;
         constraints.gridx = 1;
+        controlPanel.add(transparentCheckBox, constraints);
+
+        constraints.gridy = 5;
+        constraints.gridx = 1;
         constraints.gridwidth = 1;
         constraints.anchor = GridBagConstraints.CENTER;
         controlPanel.add(previewButton, constraints);
 
-        constraints.gridy = 5;
+        constraints.gridy = 6;
         constraints.gridx = 1;
         controlPanel.add(convertButton, constraints);
 
-        constraints.gridy = 6;
+        constraints.gridy = 7;
         constraints.gridx = 0;
         constraints.gridwidth = 4;
         constraints.fill = GridBagConstraints.HORIZONTAL;
@@ -161,6 +186,9 @@ public class App {
 
         speedSlider.addChangeListener(e -> {
             currentDelay = speedSlider.getValue();
+            if (previewTimer != null) {
+                previewTimer.setDelay(currentDelay * previewStep);
+            }
         });
 
         previewButton.addActionListener(e -> {
@@ -176,23 +204,55 @@ public class App {
                     : MultiConvert.ProcessingMode.SEQUENTIAL;
             String suffix = modeComboBox.getSelectedIndex() == 1 ? suffixTextField.getText() : "-0";
 
-            MultiConvert.setProcessingMode(mode, suffix);
-            MultiConvert.setFrameDelay(currentDelay);
+            MultiConvert converter = new MultiConvert(ConversionOptions.builder()
+                    .mode(mode)
+                    .suffix(suffix)
+                    .frameDelay(currentDelay)
+                    .background(transparentCheckBox.isSelected() ? Background.TRANSPARENT : Background.GREEN)
+                    .build());
 
-            new SwingWorker<Void, Void>() {
+            Background background = transparentCheckBox.isSelected() ? Background.TRANSPARENT : Background.GREEN;
+            int maxWidth = previewPanel.getWidth() - 20;
+            int maxHeight = previewPanel.getHeight() - 20;
+            stopPreview();
+            setUIState(false, "Gerando pré-visualização...");
+
+            previewWorker = new SwingWorker<Void, Image>() {
                 @Override
-                protected Void doInBackground() throws Exception {
-                    setUIState(false, "Gerando pré-visualização...");
-                    File previewGif = MultiConvert.generatePreview(inputPath);
-                    SwingUtilities.invokeLater(() -> updatePreviewUI(previewGif));
+                protected Void doInBackground() {
+                    List<File> files = converter.previewFiles(inputPath);
+                    int step = previewEngine.stepFor(files.size(), maxWidth, maxHeight);
+                    SwingUtilities.invokeLater(() -> previewStep = step);
+                    previewEngine.load(files, step, maxWidth, maxHeight, background, frame -> publish(frame));
                     return null;
                 }
 
+                @Override
+                protected void process(List<Image> frames) {
+                    if (isCancelled()) {
+                        return;
+                    }
+                    previewFrames.addAll(frames);
+                    if (!previewTimer.isRunning()) {
+                        showPreviewFrame();
+                        previewTimer.setDelay(currentDelay * previewStep);
+                        previewTimer.start();
+                    }
+                }
+
                 @Override
                 protected void done() {
+                    if (isCancelled()) {
+                        return;
+                    }
                     setUIState(true, "");
+                    if (previewFrames.isEmpty()) {
+                        gifPreviewLabel.setIcon(null);
+                        gifPreviewLabel.setText("Pré-visualização não disponível");
+                    }
                 }
-            }.execute();
+            };
+            previewWorker.execute();
         });
 
         convertButton.addActionListener(e -> {
@@ -207,14 +267,39 @@ public class App {
                     : MultiConvert.ProcessingMode.SEQUENTIAL;
             String suffix = modeComboBox.getSelectedIndex() == 1 ? suffixTextField.getText() : "-0";
 
-            MultiConvert.setProcessingMode(mode, suffix);
-            MultiConvert.setFrameDelay(currentDelay);
-
+            MultiConvert converter = new MultiConvert(ConversionOptions.builder()
+                    .mode(mode)
+                    .suffix(suffix)
+                    .frameDelay(currentDelay)
+                    .background(transparentCheckBox.isSelected() ? Background.TRANSPARENT : Background.GREEN)
+                    .listener(new ConversionListener() {
+                        @Override
+                        public void framesQueued(String source, int frames) {
+                            framesQueued.add(frames);
+                            scheduleProgressUpdate();
+                        }
+
+                        @Override
+                        public void frameWritten(String source) {
+                            framesDone.increment();
+                            scheduleProgressUpdate();
+                        }
+
+                        @Override
+                        public void frameSkipped(String source) {
+                            framesDone.increment();
+                            scheduleProgressUpdate();
+                        }
+                    })
+                    .build());
+
+            framesQueued.reset();
+            framesDone.reset();
+            setUIState(false, "Criando GIFs...");
             new SwingWorker<Void, Void>() {
                 @Override
                 protected Void doInBackground() throws Exception {
-                    setUIState(false, "Criando GIFs...");
-                    MultiConvert.convertImagesToGif(inputPath);
+                    converter.convertImagesToGif(inputPath);
                     return null;
                 }
 
@@ -233,18 +318,47 @@ public class App {
         frame.setVisible(true);
     }
 
-    private static void updatePreviewUI(File gifFile) {
-        if (gifFile != null && gifFile.exists()) {
-            ImageIcon icon = new ImageIcon(gifFile.getAbsolutePath());
-            Image scaledImage = icon.getImage().getScaledInstance(
-                    previewPanel.getWidth() - 20,
-                    previewPanel.getHeight() - 20,
-                    Image.SCALE_SMOOTH);
-            gifPreviewLabel.setIcon(new ImageIcon(scaledImage));
-            gifPreviewLabel.setText("");
-        } else {
-            gifPreviewLabel.setIcon(null);
-            gifPreviewLabel.setText("Pré-visualização não disponível");
+    // Para a pré-visualização anterior antes de começar outra
+    private static void stopPreview() {
+        if (previewWorker != null) {
+            previewWorker.cancel(true);
+        }
+        if (previewTimer == null) {
+            previewTimer = new Timer(currentDelay, e -> showPreviewFrame());
+        }
+        previewTimer.stop();
+        previewFrames.clear();
+        previewStep = 1;
+        previewIndex = 0;
+    }
+
+    private static void showPreviewFrame() {
+        if (previewFrames.isEmpty()) {
+            return;
+        }
+        if (previewIndex >= previewFrames.size()) {
+            previewIndex = 0;
+        }
+        previewIcon.setImage(previewFrames.get(previewIndex++));
+        gifPreviewLabel.setIcon(previewIcon);
+        gifPreviewLabel.setText("");
+        gifPreviewLabel.repaint();
+    }
+
+    // Uma atualização pendente por vez na EDT, por mais quadros que as threads gravem
+    private static void scheduleProgressUpdate() {
+        if (progressUpdatePending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                progressUpdatePending.set(false);
+                long total = framesQueued.sum();
+                long done = Math.min(framesDone.sum(), total);
+                if (total == 0 || !progressBar.isVisible()) {
+                    return;
+                }
+                progressBar.setIndeterminate(false);
+                progressBar.setValue((int) (done * 100 / total));
+                progressBar.setString("Criando GIFs... " + done + "/" + total + " quadros");
+            });
         }
     }
 
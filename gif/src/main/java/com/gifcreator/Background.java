@@ -0,0 +1,16 @@
+package com.gifcreator;
+
+/** What the transparent areas of the source images become in the GIF. */
+public enum Background {
+    /**
+     * Frames are flattened onto solid green, for {@link RemoveGreenBackground} to key
+     * out of the finished GIF afterwards.
+     */
+    GREEN,
+    /**
+     * The source alpha goes straight to the GIF's transparent index: pixels below
+     * half opacity become transparent and the rest keep their colour, in one pass
+     * and without the green fringe the keying step leaves on antialiased edges.
+     */
+    TRANSPARENT
+}
@@ -0,0 +1,325 @@
+package com.gifcreator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Persistent record of which GIFs under an output root were built from which
+ * frames, so that a rerun only rebuilds sequences whose inputs changed.
+ *
+ * Each GIF is keyed by its source sequence and stores the encode settings, the
+ * output file and, for every frame in order, its path, size, modification time
+ * and CRC-32C. A GIF is current when the settings and frame list match and the
+ * output still has its recorded size; frames are compared by size and mtime
+ * first and only hashed when the mtime moved, e.g. after a fresh checkout. A
+ * build takes the CRCs of new or changed frames from the bytes the encoder reads,
+ * rather than reading each file a second time.
+ *
+ * The index is one small binary file, {@value #FILE_NAME}, read at the start of
+ * a batch and replaced atomically at the end. Batches can share an output root,
+ * e.g. two server jobs or sibling inputs that both default to
+ * {@code parent/processed}, so the save happens under a lock on
+ * {@value #LOCK_NAME} and only writes over the entries this batch touched,
+ * keeping whatever the others saved meanwhile. Lookups and updates from
+ * concurrent jobs of one batch go through a {@link ConcurrentHashMap}.
+ */
+final class BuildManifest {
+    static final String FILE_NAME = ".gifcreator-manifest";
+    static final String LOCK_NAME = FILE_NAME + ".lock";
+    /** A CRC not taken yet; real ones fit in 32 bits. */
+    static final long UNKNOWN_CRC = -1;
+
+    private static final int MAGIC = 0x47494D46; // "GIMF"
+    private static final int VERSION = 1;
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+    // A JVM can't hold two file locks on one file, so its own batches queue up here first
+    private static final Map<Path, Object> SAVING = new ConcurrentHashMap<>();
+
+    /** A frame as it was when a GIF was built from it. */
+    static final class Stamp {
+        final String path;
+        final long size;
+        final long modified;
+        final long crc;
+
+        Stamp(String path, long size, long modified, long crc) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.crc = crc;
+        }
+    }
+
+    private static final class Entry {
+        final String output;
+        final long outputSize;
+        final String settings;
+        final Stamp[] frames;
+
+        Entry(String output, long outputSize, String settings, Stamp[] frames) {
+            this.output = output;
+            this.outputSize = outputSize;
+            this.settings = settings;
+            this.frames = frames;
+        }
+    }
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Keys recorded or refreshed since the last save
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+
+    private BuildManifest(Path file) {
+        this.file = file;
+    }
+
+    /** Reads the manifest of {@code outputRoot}; a missing or unreadable one starts empty. */
+    static BuildManifest load(File outputRoot) {
+        BuildManifest manifest = new BuildManifest(new File(outputRoot, FILE_NAME).toPath());
+        manifest.entries.putAll(read(manifest.file));
+        return manifest;
+    }
+
+    /** The entries saved in {@code file}; none if it is missing or unreadable. */
+    private static Map<String, Entry> read(Path file) {
+        Map<String, Entry> entries = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), HASH_BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.println("Manifesto de build ignorado (formato desconhecido): " + file);
+                return entries;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                String output = in.readUTF();
+                long outputSize = in.readLong();
+                String settings = in.readUTF();
+                Stamp[] frames = new Stamp[in.readInt()];
+                for (int f = 0; f < frames.length; f++) {
+                    frames[f] = new Stamp(in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+                }
+                entries.put(key, new Entry(output, outputSize, settings, frames));
+            }
+        } catch (NoSuchFileException e) {
+            // First run against this output folder
+        } catch (IOException e) {
+            System.err.println("Manifesto de build ignorado: " + e.getMessage());
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the GIF recorded for {@code key} if it was built from exactly these
+     * frames with these settings and is still on disk, otherwise {@code null}.
+     */
+    File currentOutput(String key, List<File> frames, String settings) throws IOException {
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.settings.equals(settings) || entry.frames.length != frames.size()) {
+            return null;
+        }
+        File output = new File(entry.output);
+        if (output.length() != entry.outputSize || !output.isFile()) {
+            return null;
+        }
+
+        Stamp[] refreshed = null;
+        for (int i = 0; i < entry.frames.length; i++) {
+            Stamp recorded = entry.frames[i];
+            Path frame = frames.get(i).getAbsoluteFile().toPath();
+            if (!recorded.path.equals(frame.toString())) {
+                return null;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(frame, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (attributes.size() != recorded.size) {
+                return null;
+            }
+            if (modified != recorded.modified) {
+                if (crc(frame) != recorded.crc) {
+                    return null;
+                }
+                // Same content under a new mtime: remember it so the next run takes the fast path
+                if (refreshed == null) {
+                    refreshed = entry.frames.clone();
+                }
+                refreshed[i] = new Stamp(recorded.path, recorded.size, modified, recorded.crc);
+            }
+        }
+        if (refreshed != null) {
+            entries.put(key, new Entry(entry.output, entry.outputSize, entry.settings, refreshed));
+            changed.add(key);
+        }
+        return output;
+    }
+
+    /**
+     * The file last built for {@code key}, so a rebuild can overwrite it instead of
+     * picking a new name. {@code null} if there is none or it was deleted, since
+     * another sequence may have claimed the name since.
+     */
+    File previousOutput(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        File output = new File(entry.output);
+        return output.isFile() ? output : null;
+    }
+
+    /**
+     * Stamps the frames as they are now. Called before encoding, so a frame that
+     * changes while the GIF is being written shows up as dirty on the next run.
+     *
+     * Only a frame with the size and mtime it had when {@code key} was last built
+     * gets a CRC here, the recorded one. The others get {@link #UNKNOWN_CRC}:
+     * the encoder is about to read them anyway, and {@link #withChecksums} takes
+     * their CRCs from those bytes instead of reading every file twice.
+     */
+    List<Stamp> stamp(String key, List<File> frames) throws IOException {
+        Entry entry = entries.get(key);
+        List<Stamp> stamps = new ArrayList<>(frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            Path path = frames.get(i).getAbsoluteFile().toPath();
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            long crc = UNKNOWN_CRC;
+            if (entry != null && i < entry.frames.length) {
+                Stamp recorded = entry.frames[i];
+                if (recorded.path.equals(path.toString()) && recorded.size == size && recorded.modified == modified) {
+                    crc = recorded.crc;
+                }
+            }
+            stamps.add(new Stamp(path.toString(), size, modified, crc));
+        }
+        return stamps;
+    }
+
+    /**
+     * The stamps with every {@link #UNKNOWN_CRC} filled in, from the CRC of the
+     * bytes read for the GIF at the same index in {@code checksums}, or by hashing
+     * the file where there is none, e.g. for a frame served from the
+     * {@link FrameCache}.
+     *
+     * @param checksums {@link #crc(byte[])} of each frame as it was read, or
+     *                  {@link #UNKNOWN_CRC}; {@code null} to hash every file
+     */
+    static List<Stamp> withChecksums(List<Stamp> stamps, long[] checksums) throws IOException {
+        List<Stamp> complete = new ArrayList<>(stamps.size());
+        for (int i = 0; i < stamps.size(); i++) {
+            Stamp stamp = stamps.get(i);
+            if (stamp.crc == UNKNOWN_CRC) {
+                long crc = checksums != null ? checksums[i] : UNKNOWN_CRC;
+                stamp = new Stamp(stamp.path, stamp.size, stamp.modified,
+                        crc != UNKNOWN_CRC ? crc : crc(Path.of(stamp.path)));
+            }
+            complete.add(stamp);
+        }
+        return complete;
+    }
+
+    void record(String key, File output, List<Stamp> frames, String settings) {
+        entries.put(key, new Entry(output.getAbsolutePath(), output.length(), settings,
+                frames.toArray(new Stamp[0])));
+        changed.add(key);
+    }
+
+    /**
+     * Merges the entries changed since the last save into the manifest on disk:
+     * writes the result to a temporary file of its own and moves it over the old
+     * one, all while holding the output root's lock.
+     */
+    void save() throws IOException {
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(changed);
+        synchronized (SAVING.computeIfAbsent(file.toAbsolutePath().normalize(), path -> new Object())) {
+            try (FileChannel channel = FileChannel.open(file.resolveSibling(LOCK_NAME), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+                Map<String, Entry> merged = read(file);
+                for (String key : keys) {
+                    merged.put(key, entries.get(key));
+                }
+                write(merged);
+                entries.putAll(merged);
+            }
+        }
+        changed.removeAll(keys);
+    }
+
+    private void write(Map<String, Entry> merged) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), HASH_BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(merged.size());
+                for (Map.Entry<String, Entry> item : merged.entrySet()) {
+                    Entry entry = item.getValue();
+                    out.writeUTF(item.getKey());
+                    out.writeUTF(entry.output);
+                    out.writeLong(entry.outputSize);
+                    out.writeUTF(entry.settings);
+                    out.writeInt(entry.frames.length);
+                    for (Stamp frame : entry.frames) {
+                        out.writeUTF(frame.path);
+                        out.writeLong(frame.size);
+                        out.writeLong(frame.modified);
+                        out.writeLong(frame.crc);
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** The CRC-32C the manifest keeps for a frame with these bytes. */
+    static long crc(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    private static long crc(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,49 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
+
+/**
+ * Green-screen keying on packed ARGB arrays. A pixel is keyed when its green
+ * channel is above the threshold and both red and blue are below it; keyed pixels
+ * keep their colour but get alpha 0. Pixels that were already fully transparent
+ * and aren't keyed become 0, as they did when the frame was drawn through
+ * {@code Graphics2D} onto an empty image.
+ */
+final class ChromaKey {
+    // Below this many pixels splitting rows across threads costs more than it saves
+    private static final int PARALLEL_MIN_PIXELS = 256 * 1024;
+    private static final int ROWS_PER_TASK = 64;
+
+    private ChromaKey() {
+    }
+
+    /** Returns a new {@code TYPE_INT_ARGB} copy of {@code image} with the green background keyed out. */
+    static BufferedImage keyGreen(BufferedImage image, int threshold) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage keyed = Rasters.newArgb(width, height);
+        int[] pixels = Rasters.data(keyed);
+        Rasters.copyArgb(image, pixels);
+        keyGreen(pixels, width, height, threshold);
+        return keyed;
+    }
+
+    /** Keys {@code pixels} in place, splitting rows across the common pool for large frames. */
+    static void keyGreen(int[] pixels, int width, int height, int threshold) {
+        if ((long) width * height < PARALLEL_MIN_PIXELS) {
+            keyGreenRange(pixels, 0, width * height, threshold);
+            return;
+        }
+        int tasks = (height + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+        IntStream.range(0, tasks).parallel().forEach(task -> {
+            int fromRow = task * ROWS_PER_TASK;
+            int toRow = Math.min(height, fromRow + ROWS_PER_TASK);
+            keyGreenRange(pixels, fromRow * width, toRow * width, threshold);
+        });
+    }
+
+    static void keyGreenRange(int[] pixels, int from, int to, int threshold) {
+        PixelOps.get().keyGreen(pixels, from, to, threshold);
+    }
+}
@@ -0,0 +1,599 @@
+package com.gifcreator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Conversão sem interface gráfica, para scripts e servidores.
+ *
+ * <pre>
+ * java -cp gif.jar com.gifcreator.Cli [opções] PASTA...
+ * java -cp gif.jar com.gifcreator.Cli [opções] --jobs ARQUIVO
+ * java -cp gif.jar com.gifcreator.Cli [opções] --watch PASTA...
+ * java -cp gif.jar com.gifcreator.Cli key [--encoder fast|imageio] PASTA...
+ * java -cp gif.jar com.gifcreator.Cli sequence [--encoder fast|imageio] PASTA...
+ * </pre>
+ *
+ * O arquivo de jobs tem um job por linha, no mesmo formato da linha de comando
+ * (opções seguidas da pasta de entrada); as opções da linha valem só para ela e
+ * completam as passadas na linha de comando. Linhas vazias e que começam com
+ * {@code #} são ignoradas, e argumentos com espaços podem vir entre aspas.
+ *
+ * Roda com {@code java.awt.headless=true} e nunca cria um {@code Toolkit}: só
+ * {@code java.awt.image} e o ImageIO são usados. O progresso de cada GIF e o
+ * tempo de cada job vão para a saída de erro, junto com a média de cada etapa por
+ * quadro, e ao final um resumo em JSON lines (um objeto por job, com as
+ * {@link ConversionMetrics}, e um total) vai para a saída padrão ou para o arquivo
+ * de {@code --summary}. Sem {@code --summary}, a saída padrão só recebe o resumo,
+ * e cada linha dela é um objeto JSON.
+ *
+ * Com {@code --watch}, cada job vira um {@link FolderWatcher} e o processo fica
+ * convertendo as sequências que chegam até ser interrompido; não há resumo JSON.
+ *
+ * Os subcomandos rodam os utilitários de uma etapa só em cada pasta, com o mesmo
+ * resumo JSON: {@code key} aplica o {@link RemoveGreenBackground} aos GIFs da
+ * pasta, e {@code sequence} gera com o {@link ImageToGifConverter} um GIF por
+ * sequência {@code NOME-0.png}. Uma pasta de entrada chamada {@code key} ou
+ * {@code sequence} precisa vir como {@code ./key}.
+ */
+public final class Cli {
+    static final int EXIT_OK = 0;
+    static final int EXIT_FAILED = 1;
+    static final int EXIT_USAGE = 2;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Uso: Cli [opções] PASTA...",
+            "     Cli [opções] --jobs ARQUIVO",
+            "     Cli key|sequence [--encoder fast|imageio] [--summary ARQUIVO] PASTA...",
+            "",
+            "  key                           remove o fundo verde dos GIFs de cada pasta (em \"transparent\")",
+            "  sequence                      um GIF por sequência NOME-0.png de cada pasta (em \"processed\")",
+            "",
+            "  --mode recursive|sequential   modo de processamento (padrão: recursive)",
+            "  --suffix TEXTO                sufixo do primeiro quadro no modo sequential (padrão: -0)",
+            "  --delay MS                    atraso entre quadros no modo sequential (padrão: 100)",
+            "  --parallelism N               GIFs gerados ao mesmo tempo",
+            "  --frame-parallelism N         threads por GIF para decodificar e quantizar quadros",
+            "  --memory-budget MB            heap estimado para os GIFs em andamento (padrão: metade do heap)",
+            "  --encoder fast|imageio        codificador de GIF (padrão: fast)",
+            "  --palette local|global        uma paleta por quadro ou uma por GIF (padrão: local)",
+            "  --quantizer octree|median-cut|neuquant",
+            "                                algoritmo que escolhe as cores da paleta (padrão: octree)",
+            "  --dither none|ordered|floyd-steinberg",
+            "                                como as cores fora da paleta são aproximadas (padrão: none)",
+            "  --neuquant-sample N           com neuquant, aprende com 1 pixel a cada N, de 1 a 30 (padrão: 10)",
+            "  --background green|transparent",
+            "                                fundo verde para o RemoveGreenBackground, ou o alfa das imagens",
+            "                                direto no GIF (padrão: green)",
+            "  --delta                       grava só a área alterada de cada quadro",
+            "  --force                       regera todos os GIFs, ignorando o manifesto de build",
+            "  --output PASTA                pasta de saída (padrão: \"processed\" ao lado da entrada)",
+            "  --layout flat|mirror          nomes com '-' numa pasta só, ou as subpastas recriadas",
+            "  --jobs ARQUIVO                lê os jobs de um arquivo, um por linha",
+            "  --summary ARQUIVO             grava o resumo JSON lines no arquivo em vez da saída padrão",
+            "  --watch                       continua observando as pastas e converte o que chegar",
+            "  --quiet MS                    com --watch, tempo sem mudanças até converter (padrão: 2000)",
+            "  --help                        mostra esta ajuda");
+
+    /** O que é feito com cada pasta de entrada. */
+    enum Command {
+        CONVERT, KEY, SEQUENCE
+    }
+
+    /** Uma pasta de entrada e as opções com que ela é convertida. */
+    static final class Job {
+        final String input;
+        final ConversionOptions options;
+
+        Job(String input, ConversionOptions options) {
+            this.input = input;
+            this.options = options;
+        }
+    }
+
+    /** Os jobs de uma chamada e para onde vai o resumo. */
+    static final class Invocation {
+        final Command command;
+        final List<Job> jobs;
+        final File summary;
+        final boolean help;
+        final boolean watch;
+        final long quietMillis;
+
+        Invocation(List<Job> jobs, File summary, boolean help) {
+            this(Command.CONVERT, jobs, summary, help, false, FolderWatcher.DEFAULT_QUIET_MILLIS);
+        }
+
+        Invocation(Command command, List<Job> jobs, File summary, boolean help, boolean watch, long quietMillis) {
+            this.command = command;
+            this.jobs = jobs;
+            this.summary = summary;
+            this.help = help;
+            this.watch = watch;
+            this.quietMillis = quietMillis;
+        }
+    }
+
+    private Cli() {
+    }
+
+    public static void main(String[] args) {
+        // Antes de qualquer classe do AWT ser carregada
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Invocation invocation;
+        try {
+            invocation = parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        if (invocation.help) {
+            out.println(USAGE);
+            return EXIT_OK;
+        }
+        if (invocation.watch) {
+            return watch(invocation, err);
+        }
+        if (invocation.command != Command.CONVERT) {
+            return runTool(invocation, out, err);
+        }
+
+        List<String> lines = new ArrayList<>();
+        int created = 0, upToDate = 0, failed = 0;
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < invocation.jobs.size(); i++) {
+            Job job = invocation.jobs.get(i);
+            long jobStart = System.nanoTime();
+            MultiConvert converter = new MultiConvert(job.options);
+            ConversionSummary summary = converter.convertImagesToGif(job.input);
+            ConversionMetrics metrics = converter.getMetrics();
+            long millis = (System.nanoTime() - jobStart) / 1_000_000;
+            err.printf(Locale.ROOT, "Job %d (%s): %d criados, %d atualizados, %d com erro em %d ms%n", i + 1,
+                    job.input, summary.getCreated(), summary.getUpToDate(), summary.getFailed(), millis);
+            if (metrics.frames(ConversionMetrics.Stage.ENCODE) > 0) {
+                err.printf(Locale.ROOT, "  %d quadros, %d bytes; média por quadro:",
+                        metrics.frames(ConversionMetrics.Stage.ENCODE), metrics.bytesWritten());
+                for (ConversionMetrics.Stage stage : ConversionMetrics.Stage.values()) {
+                    err.printf(Locale.ROOT, " %s %.2f ms", stage.name().toLowerCase(Locale.ROOT),
+                            metrics.latency(stage).meanNanos() / 1e6);
+                }
+                err.println();
+            }
+
+            created += summary.getCreated();
+            upToDate += summary.getUpToDate();
+            failed += summary.getFailed();
+            bytes += metrics.bytesWritten();
+            lines.add("{\"job\":" + (i + 1)
+                    + ",\"input\":" + json(new File(job.input).getAbsolutePath())
+                    + ",\"output\":" + (summary.getOutputDir() == null ? "null"
+                            : json(summary.getOutputDir().getAbsolutePath()))
+                    + ",\"mode\":" + json(job.options.getMode().name().toLowerCase(Locale.ROOT))
+                    + ",\"created\":" + summary.getCreated()
+                    + ",\"upToDate\":" + summary.getUpToDate()
+                    + ",\"failed\":" + summary.getFailed()
+                    + ",\"millis\":" + millis
+                    + ",\"metrics\":" + metrics.toJson() + "}");
+        }
+        long totalMillis = (System.nanoTime() - start) / 1_000_000;
+        lines.add("{\"total\":true,\"jobs\":" + invocation.jobs.size()
+                + ",\"created\":" + created
+                + ",\"upToDate\":" + upToDate
+                + ",\"failed\":" + failed
+                + ",\"bytes\":" + bytes
+                + ",\"millis\":" + totalMillis + "}");
+
+        if (!writeSummary(lines, invocation, out, err)) {
+            return EXIT_FAILED;
+        }
+        return failed > 0 ? EXIT_FAILED : EXIT_OK;
+    }
+
+    /** Roda {@code key} ou {@code sequence} em cada pasta, com o mesmo resumo da conversão. */
+    private static int runTool(Invocation invocation, PrintStream out, PrintStream err) {
+        String command = invocation.command.name().toLowerCase(Locale.ROOT);
+        List<String> lines = new ArrayList<>();
+        int created = 0, failed = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < invocation.jobs.size(); i++) {
+            Job job = invocation.jobs.get(i);
+            long jobStart = System.nanoTime();
+            File input = new File(job.input);
+            File output = null;
+            int jobCreated = 0, jobFailed = 0;
+            if (!input.isDirectory()) {
+                err.println("Não é um diretório: " + job.input);
+                jobFailed = 1;
+            } else if (invocation.command == Command.KEY) {
+                jobCreated = RemoveGreenBackground.processGifs(job.input, job.options.getEncoder());
+                output = new File(input, "transparent");
+            } else {
+                jobCreated = ImageToGifConverter.convertImagesToGif(job.input, job.options.getEncoder());
+                output = new File(input, "processed");
+            }
+            long millis = (System.nanoTime() - jobStart) / 1_000_000;
+            err.printf(Locale.ROOT, "Job %d (%s): %d criados em %d ms%n", i + 1, job.input, jobCreated, millis);
+
+            created += jobCreated;
+            failed += jobFailed;
+            lines.add("{\"job\":" + (i + 1)
+                    + ",\"command\":" + json(command)
+                    + ",\"input\":" + json(input.getAbsolutePath())
+                    + ",\"output\":" + (output == null ? "null" : json(output.getAbsolutePath()))
+                    + ",\"created\":" + jobCreated
+                    + ",\"failed\":" + jobFailed
+                    + ",\"millis\":" + millis + "}");
+        }
+        lines.add("{\"total\":true,\"command\":" + json(command)
+                + ",\"jobs\":" + invocation.jobs.size()
+                + ",\"created\":" + created
+                + ",\"failed\":" + failed
+                + ",\"millis\":" + (System.nanoTime() - start) / 1_000_000 + "}");
+
+        if (!writeSummary(lines, invocation, out, err)) {
+            return EXIT_FAILED;
+        }
+        return failed > 0 ? EXIT_FAILED : EXIT_OK;
+    }
+
+    /** Manda o resumo para a saída padrão ou para o arquivo de {@code --summary}; falso se não conseguir gravar. */
+    private static boolean writeSummary(List<String> lines, Invocation invocation, PrintStream out,
+            PrintStream err) {
+        if (invocation.summary == null) {
+            lines.forEach(out::println);
+            return true;
+        }
+        try (PrintWriter writer = new PrintWriter(
+                Files.newBufferedWriter(invocation.summary.toPath(), StandardCharsets.UTF_8))) {
+            lines.forEach(writer::println);
+            return true;
+        } catch (IOException e) {
+            err.println("Erro ao gravar o resumo: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Observa todas as pastas até o processo ser interrompido. */
+    private static int watch(Invocation invocation, PrintStream err) {
+        List<FolderWatcher> watchers = new ArrayList<>();
+        try {
+            for (Job job : invocation.jobs) {
+                watchers.add(new MultiConvert(job.options).watch(job.input, invocation.quietMillis));
+                err.println("Observando " + new File(job.input).getAbsolutePath());
+            }
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            watchers.forEach(FolderWatcher::close);
+            return EXIT_FAILED;
+        }
+        // Ctrl+C termina a rodada em andamento e grava os manifestos
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> watchers.forEach(FolderWatcher::close)));
+        try {
+            for (FolderWatcher watcher : watchers) {
+                watcher.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return EXIT_OK;
+    }
+
+    /** Lê a linha de comando; erros de uso viram {@link IllegalArgumentException}. */
+    static Invocation parse(String[] args) {
+        if (args.length > 0 && (args[0].equals("key") || args[0].equals("sequence"))) {
+            return parseTool(choice(Command.class, args[0], "comando"), args);
+        }
+        ConversionOptions.Builder global = ConversionOptions.builder();
+        List<String> inputs = new ArrayList<>();
+        File jobsFile = null;
+        File summary = null;
+        boolean watch = false;
+        long quietMillis = FolderWatcher.DEFAULT_QUIET_MILLIS;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--help":
+                case "-h":
+                    return new Invocation(List.of(), null, true);
+                case "--jobs":
+                    jobsFile = new File(value(args, ++i, arg));
+                    break;
+                case "--summary":
+                    summary = new File(value(args, ++i, arg));
+                    break;
+                case "--watch":
+                    watch = true;
+                    break;
+                case "--quiet":
+                    quietMillis = number(value(args, ++i, arg), arg);
+                    if (quietMillis < 0) {
+                        throw new IllegalArgumentException("Valor inválido para " + arg + ": " + quietMillis);
+                    }
+                    break;
+                default:
+                    i = option(args, i, global, inputs);
+            }
+        }
+        ConversionOptions base = global.build();
+
+        List<Job> jobs = new ArrayList<>();
+        for (String input : inputs) {
+            jobs.add(new Job(input, base));
+        }
+        if (jobsFile != null) {
+            jobs.addAll(readJobs(jobsFile, base));
+        }
+        if (jobs.isEmpty()) {
+            throw new IllegalArgumentException("Nenhuma pasta de entrada informada");
+        }
+        return new Invocation(Command.CONVERT, jobs, summary, false, watch, quietMillis);
+    }
+
+    /** Lê os argumentos de {@code key} ou {@code sequence}, que vêm depois do nome do subcomando. */
+    private static Invocation parseTool(Command command, String[] args) {
+        ConversionOptions.Builder builder = ConversionOptions.builder();
+        List<String> inputs = new ArrayList<>();
+        File summary = null;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--help":
+                case "-h":
+                    return new Invocation(List.of(), null, true);
+                case "--encoder":
+                    builder.encoder(choice(GifEncoderType.class, value(args, ++i, arg), arg));
+                    break;
+                case "--summary":
+                    summary = new File(value(args, ++i, arg));
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Opção desconhecida para " + args[0] + ": " + arg);
+                    }
+                    inputs.add(arg);
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("Nenhuma pasta de entrada informada");
+        }
+        ConversionOptions options = builder.build();
+        List<Job> jobs = new ArrayList<>();
+        for (String input : inputs) {
+            jobs.add(new Job(input, options));
+        }
+        return new Invocation(command, jobs, summary, false, false, FolderWatcher.DEFAULT_QUIET_MILLIS);
+    }
+
+    private static List<Job> readJobs(File file, ConversionOptions base) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Não foi possível ler o arquivo de jobs: " + file);
+        }
+        List<Job> jobs = new ArrayList<>();
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                jobs.add(job(split(line), base));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(file + ":" + (n + 1) + ": " + e.getMessage());
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Aplica a opção de conversão em {@code args[i]} ao builder, ou a guarda como
+     * pasta de entrada se não for uma opção.
+     *
+     * @return o índice do último argumento consumido
+     */
+    private static int option(String[] args, int i, ConversionOptions.Builder builder, List<String> inputs) {
+        String arg = args[i];
+        switch (arg) {
+            case "--mode":
+                builder.mode(choice(MultiConvert.ProcessingMode.class, value(args, ++i, arg), arg));
+                break;
+            case "--suffix":
+                builder.suffix(value(args, ++i, arg));
+                break;
+            case "--delay":
+                builder.frameDelay(number(value(args, ++i, arg), arg));
+                break;
+            case "--parallelism":
+                builder.parallelism(number(value(args, ++i, arg), arg));
+                break;
+            case "--frame-parallelism":
+                builder.frameParallelism(number(value(args, ++i, arg), arg));
+                break;
+            case "--memory-budget":
+                builder.memoryBudget(number(value(args, ++i, arg), arg) * 1024L * 1024L);
+                break;
+            case "--encoder":
+                builder.encoder(choice(GifEncoderType.class, value(args, ++i, arg), arg));
+                break;
+            case "--palette":
+                builder.paletteMode(choice(PaletteMode.class, value(args, ++i, arg), arg));
+                break;
+            case "--quantizer":
+                builder.quantizer(choice(QuantizerType.class, value(args, ++i, arg), arg));
+                break;
+            case "--dither":
+                builder.dithering(choice(Dithering.class, value(args, ++i, arg), arg));
+                break;
+            case "--neuquant-sample":
+                builder.neuQuantSampleFactor(number(value(args, ++i, arg), arg));
+                break;
+            case "--background":
+                builder.background(choice(Background.class, value(args, ++i, arg), arg));
+                break;
+            case "--delta":
+                builder.deltaFrames(true);
+                break;
+            case "--force":
+                builder.incremental(false);
+                break;
+            case "--output":
+                builder.outputDir(new File(value(args, ++i, arg)));
+                break;
+            case "--layout":
+                builder.outputLayout(choice(OutputLayout.class, value(args, ++i, arg), arg));
+                break;
+            default:
+                if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Opção desconhecida: " + arg);
+                }
+                inputs.add(arg);
+        }
+        return i;
+    }
+
+    /** Um job com uma única pasta de entrada; as opções completam {@code base}. */
+    static Job job(String[] args, ConversionOptions base) {
+        ConversionOptions.Builder builder = base.toBuilder();
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            i = option(args, i, builder, inputs);
+        }
+        if (inputs.size() != 1) {
+            throw new IllegalArgumentException("cada job precisa de exatamente uma pasta de entrada");
+        }
+        return new Job(inputs.get(0), builder.build());
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Falta o valor de " + option);
+        }
+        return args[i];
+    }
+
+    private static int number(String value, String option) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor inválido para " + option + ": " + value);
+        }
+    }
+
+    static <E extends Enum<E>> E choice(Class<E> type, String value, String option) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Valor inválido para " + option + ": " + value);
+        }
+    }
+
+    /** Quebra uma linha do arquivo de jobs em argumentos, respeitando aspas simples e duplas. */
+    static String[] split(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inArg = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inArg = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArg) {
+                    args.add(current.toString());
+                    current.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                current.append(c);
+                inArg = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Aspas sem fechamento");
+        }
+        if (inArg) {
+            args.add(current.toString());
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** O inverso de {@link #split}: junta os argumentos numa linha, com aspas onde for preciso. */
+    static String join(List<String> args) {
+        StringBuilder line = new StringBuilder();
+        for (String arg : args) {
+            if (arg.indexOf('\n') >= 0 || arg.indexOf('\r') >= 0) {
+                throw new IllegalArgumentException("Argumento com quebra de linha: " + arg);
+            }
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            boolean plain = !arg.isEmpty();
+            for (int i = 0; i < arg.length() && plain; i++) {
+                char c = arg.charAt(i);
+                plain = !Character.isWhitespace(c) && c != '"' && c != '\'';
+            }
+            if (plain) {
+                line.append(arg);
+            } else if (arg.indexOf('"') < 0) {
+                line.append('"').append(arg).append('"');
+            } else if (arg.indexOf('\'') < 0) {
+                line.append('\'').append(arg).append('\'');
+            } else {
+                throw new IllegalArgumentException("Argumento com aspas simples e duplas: " + arg);
+            }
+        }
+        return line.toString();
+    }
+
+    static String json(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
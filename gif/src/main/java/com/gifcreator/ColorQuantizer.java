@@ -0,0 +1,13 @@
+package com.gifcreator;
+
+/** Chooses the palette for a set of pixels; {@link PaletteMapper} then maps them onto it. */
+interface ColorQuantizer {
+
+    /**
+     * The palette of the opaque pixels (alpha of at least 128) among the first
+     * {@code pixelCount} of {@code argb}.
+     *
+     * @return between 1 and {@code limit} RGB colours
+     */
+    int[] palette(int[] argb, int pixelCount, int limit);
+}
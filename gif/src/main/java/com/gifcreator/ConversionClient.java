@@ -0,0 +1,103 @@
+package com.gifcreator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cliente mínimo do {@link ConversionServer}: manda um job e imprime a resposta
+ * JSON. Abre só um socket, então roda bem mais rápido que o {@link Cli}.
+ *
+ * <pre>
+ * java -cp gif.jar com.gifcreator.ConversionClient [--socket ARQUIVO] [opções do Cli] PASTA
+ * java -cp gif.jar com.gifcreator.ConversionClient [--socket ARQUIVO] --key [--encoder fast|imageio] PASTA
+ * </pre>
+ *
+ * Sai com 0 se o job deu certo, 1 se o servidor recusou o job ou algum GIF falhou,
+ * e 2 se o servidor não respondeu.
+ */
+public final class ConversionClient {
+    private static final Pattern FAILED = Pattern.compile("\"failed\":(\\d+)");
+
+    private ConversionClient() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        Path socket = ConversionServer.DEFAULT_SOCKET;
+        String command = "convert";
+        List<String> jobArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--socket") && i + 1 < args.length) {
+                socket = Paths.get(args[++i]);
+            } else if (args[i].equals("--key")) {
+                command = "key";
+            } else {
+                jobArgs.add(args[i]);
+            }
+        }
+
+        String response;
+        try {
+            response = submit(socket, command, jobArgs);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return Cli.EXIT_USAGE;
+        } catch (IOException e) {
+            err.println("Servidor indisponível em " + socket + ": " + e.getMessage());
+            return Cli.EXIT_USAGE;
+        }
+        out.println(response);
+        if (!response.startsWith("{\"ok\":true")) {
+            return Cli.EXIT_FAILED;
+        }
+        Matcher failed = FAILED.matcher(response);
+        return failed.find() && Integer.parseInt(failed.group(1)) > 0 ? Cli.EXIT_FAILED : Cli.EXIT_OK;
+    }
+
+    /**
+     * Manda {@code command} com a pasta de trabalho atual e os argumentos, e
+     * devolve a linha de resposta.
+     */
+    public static String submit(Path socket, String command, List<String> args) throws IOException {
+        List<String> words = new ArrayList<>();
+        words.add(command);
+        words.add(Paths.get("").toAbsolutePath().toString());
+        words.addAll(args);
+        return send(socket, Cli.join(words));
+    }
+
+    /** Manda uma linha de requisição pronta e devolve a resposta. */
+    static String send(Path socket, String request) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+                Writer out = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8))) {
+            out.write(request);
+            out.write('\n');
+            out.flush();
+            String response = in.readLine();
+            if (response == null) {
+                throw new IOException("Conexão fechada sem resposta");
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.gifcreator;
+
+import java.io.File;
+
+/**
+ * Acompanha uma conversão do {@link MultiConvert}, por exemplo para uma barra de
+ * progresso. Os métodos são chamados das threads dos workers, vários ao mesmo
+ * tempo, e devem retornar rápido; quem atualiza uma interface Swing deve passar
+ * para a EDT por conta própria.
+ *
+ * {@link #framesQueued} é chamado antes de cada GIF ser gerado, então o total de
+ * quadros cresce à medida que as pastas são percorridas.
+ */
+public interface ConversionListener {
+    ConversionListener NONE = new ConversionListener() {
+    };
+
+    /** Um GIF de {@code frames} quadros vai ser gerado a partir de {@code source}. */
+    default void framesQueued(String source, int frames) {
+    }
+
+    /** Mais um quadro de {@code source} foi gravado no GIF. */
+    default void frameWritten(String source) {
+    }
+
+    /** Um quadro de {@code source} não pôde ser lido e ficou de fora. */
+    default void frameSkipped(String source) {
+    }
+
+    default void gifCreated(String source, File gif) {
+    }
+
+    default void gifUpToDate(String source, File gif) {
+    }
+
+    default void gifFailed(String source, String message) {
+    }
+}
@@ -0,0 +1,166 @@
+package com.gifcreator;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores e histogramas de latência de um {@link MultiConvert}, acumulados
+ * entre chamadas. Todos são {@link LongAdder}, que espalham as somas entre
+ * células por thread em vez de disputar um único valor, então podem ficar
+ * ligados com todos os workers e threads de quadros rodando.
+ *
+ * As leituras não param as conversões: cada valor é exato, mas valores lidos
+ * durante uma conversão podem ser de instantes ligeiramente diferentes.
+ */
+public final class ConversionMetrics {
+
+    /** Etapas pelas quais cada quadro passa, na ordem. */
+    public enum Stage {
+        /** Leitura do arquivo e decodificação da imagem. */
+        DECODE,
+        /** Composição sobre o fundo verde, ou cópia do alfa no modo transparente. */
+        COMPOSITE,
+        /** Quantização para 256 cores, ou mapeamento na paleta global. */
+        QUANTIZE,
+        /** Compressão LZW e gravação do quadro no GIF. */
+        ENCODE
+    }
+
+    /**
+     * Distribuição de latências em faixas de potências de dois de nanossegundos.
+     * Os percentis devolvem o limite superior da faixa, ou seja, no máximo o dobro
+     * do valor real.
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            count.increment();
+            totalNanos.add(value);
+            buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+        }
+
+        /** Quantas vezes a etapa rodou. */
+        public long count() {
+            return count.sum();
+        }
+
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long meanNanos() {
+            long n = count();
+            return n == 0 ? 0 : totalNanos() / n;
+        }
+
+        /** @param percentile entre 0 e 100 */
+        public long percentileNanos(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                n += counts[i];
+            }
+            if (n == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // A faixa 0 guarda só o zero; a faixa i guarda [2^(i-1), 2^i)
+                    return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private final Histogram[] stages = new Histogram[Stage.values().length];
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder gifsCreated = new LongAdder();
+    private final LongAdder framesInFlight = new LongAdder();
+    private final LongAdder jobsQueued = new LongAdder();
+
+    public ConversionMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new Histogram();
+        }
+    }
+
+    /** Latências de uma etapa; {@link Histogram#count()} é o total de quadros que passaram por ela. */
+    public Histogram latency(Stage stage) {
+        return stages[stage.ordinal()];
+    }
+
+    /** Quadros que passaram pela etapa. */
+    public long frames(Stage stage) {
+        return latency(stage).count();
+    }
+
+    /** Bytes de GIF gravados. */
+    public long bytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long gifsCreated() {
+        return gifsCreated.sum();
+    }
+
+    /** Quadros decodificados ou sendo decodificados que ainda não chegaram ao encoder. */
+    public long framesInFlight() {
+        return framesInFlight.sum();
+    }
+
+    /** GIFs agendados que ainda não começaram, esperando uma thread livre ou espaço no orçamento de memória. */
+    public long jobsQueued() {
+        return jobsQueued.sum();
+    }
+
+    void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    void gifWritten(long bytes) {
+        gifsCreated.increment();
+        bytesWritten.add(bytes);
+    }
+
+    void framesInFlight(int delta) {
+        framesInFlight.add(delta);
+    }
+
+    void jobsQueued(int delta) {
+        jobsQueued.add(delta);
+    }
+
+    /** Os contadores num objeto JSON, para logs e para o resumo do {@link Cli}. */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"gifs\":").append(gifsCreated())
+                .append(",\"bytes\":").append(bytesWritten());
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = latency(stage);
+            sb.append(",\"").append(stage.name().toLowerCase(Locale.ROOT)).append("\":{")
+                    .append("\"frames\":").append(histogram.count())
+                    .append(",\"meanMicros\":").append(TimeUnit.NANOSECONDS.toMicros(histogram.meanNanos()))
+                    .append(",\"p99Micros\":")
+                    .append(TimeUnit.NANOSECONDS.toMicros(histogram.percentileNanos(99)))
+                    .append('}');
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,319 @@
+package com.gifcreator;
+
+import java.io.File;
+
+/**
+ * Configuração imutável de uma execução do {@link MultiConvert}. Cada conversão
+ * recebe a sua própria instância, o que permite rodar várias lado a lado.
+ */
+public final class ConversionOptions {
+    private final MultiConvert.ProcessingMode mode;
+    private final String suffix;
+    private final int frameDelay;
+    private final int parallelism;
+    private final int frameParallelism;
+    private final long memoryBudget;
+    private final GifEncoderType encoder;
+    private final PaletteMode paletteMode;
+    private final QuantizerType quantizer;
+    private final Dithering dithering;
+    private final int neuQuantSampleFactor;
+    private final Background background;
+    private final boolean deltaFrames;
+    private final boolean incremental;
+    private final File outputDir;
+    private final OutputLayout outputLayout;
+    private final ConversionListener listener;
+
+    private ConversionOptions(Builder builder) {
+        this.mode = builder.mode;
+        this.suffix = builder.suffix;
+        this.frameDelay = builder.frameDelay;
+        this.parallelism = builder.parallelism;
+        this.frameParallelism = builder.frameParallelism;
+        this.memoryBudget = builder.memoryBudget;
+        this.encoder = builder.encoder;
+        this.paletteMode = builder.paletteMode;
+        this.quantizer = builder.quantizer;
+        this.dithering = builder.dithering;
+        this.neuQuantSampleFactor = builder.neuQuantSampleFactor;
+        this.background = builder.background;
+        this.deltaFrames = builder.deltaFrames;
+        this.incremental = builder.incremental;
+        this.outputDir = builder.outputDir;
+        this.outputLayout = builder.outputLayout;
+        this.listener = builder.listener;
+    }
+
+    public static ConversionOptions defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .mode(mode)
+                .suffix(suffix)
+                .frameDelay(frameDelay)
+                .parallelism(parallelism)
+                .frameParallelism(frameParallelism)
+                .memoryBudget(memoryBudget)
+                .encoder(encoder)
+                .paletteMode(paletteMode)
+                .quantizer(quantizer)
+                .dithering(dithering)
+                .neuQuantSampleFactor(neuQuantSampleFactor)
+                .background(background)
+                .deltaFrames(deltaFrames)
+                .incremental(incremental)
+                .outputDir(outputDir)
+                .outputLayout(outputLayout)
+                .listener(listener);
+    }
+
+    public MultiConvert.ProcessingMode getMode() {
+        return mode;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public int getFrameDelay() {
+        return frameDelay;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /** Threads que decodificam e quantizam quadros de um mesmo GIF; 1 desliga o pipeline. */
+    public int getFrameParallelism() {
+        return frameParallelism;
+    }
+
+    /**
+     * Bytes de heap que os GIFs em andamento podem ocupar juntos, pela estimativa
+     * tirada do cabeçalho dos quadros; um GIF maior que isso roda sozinho. Não
+     * muda os GIFs gerados. O padrão é metade do heap máximo.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public GifEncoderType getEncoder() {
+        return encoder;
+    }
+
+    /** {@link PaletteMode#GLOBAL} quantiza a sequência inteira uma única vez. */
+    public PaletteMode getPaletteMode() {
+        return paletteMode;
+    }
+
+    /** Algoritmo que escolhe as cores da paleta, por quadro ou global. */
+    public QuantizerType getQuantizer() {
+        return quantizer;
+    }
+
+    /** Como os pixels são levados às cores da paleta quando ela não tem a cor exata. */
+    public Dithering getDithering() {
+        return dithering;
+    }
+
+    /**
+     * Com {@link QuantizerType#NEUQUANT}, aprende com um pixel a cada tantos: 1 é o
+     * mais fiel, 30 o mais rápido.
+     */
+    public int getNeuQuantSampleFactor() {
+        return neuQuantSampleFactor;
+    }
+
+    /** {@link Background#TRANSPARENT} gera o GIF transparente direto, sem passar pelo fundo verde. */
+    public Background getBackground() {
+        return background;
+    }
+
+    /** Grava só a região que mudou em relação ao quadro anterior; o GIF decodificado é o mesmo. */
+    public boolean isDeltaFrames() {
+        return deltaFrames;
+    }
+
+    /**
+     * Pula os GIFs cujos quadros e configurações não mudaram desde a última
+     * execução, usando o {@link BuildManifest} da pasta de saída.
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /** Pasta de saída; {@code null} usa a pasta "processed" ao lado da pasta de entrada. */
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public OutputLayout getOutputLayout() {
+        return outputLayout;
+    }
+
+    /** Recebe o progresso de cada GIF; não muda os GIFs gerados. */
+    public ConversionListener getListener() {
+        return listener;
+    }
+
+    public static final class Builder {
+        private MultiConvert.ProcessingMode mode = MultiConvert.ProcessingMode.RECURSIVE;
+        private String suffix = "-0"; // Sufixo padrão para modo sequencial
+        private int frameDelay = 100;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int frameParallelism = Runtime.getRuntime().availableProcessors();
+        private long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+        private GifEncoderType encoder = GifEncoderType.FAST;
+        private PaletteMode paletteMode = PaletteMode.LOCAL;
+        private QuantizerType quantizer = QuantizerType.OCTREE;
+        private Dithering dithering = Dithering.NONE;
+        private int neuQuantSampleFactor = NeuQuantQuantizer.DEFAULT_SAMPLE_FACTOR;
+        private Background background = Background.GREEN;
+        private boolean deltaFrames;
+        private boolean incremental = true;
+        private File outputDir;
+        private OutputLayout outputLayout = OutputLayout.FLAT;
+        private ConversionListener listener = ConversionListener.NONE;
+
+        private Builder() {
+        }
+
+        public Builder mode(MultiConvert.ProcessingMode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        public Builder suffix(String suffix) {
+            if (suffix != null) {
+                this.suffix = suffix;
+            }
+            return this;
+        }
+
+        public Builder frameDelay(int frameDelay) {
+            this.frameDelay = frameDelay;
+            return this;
+        }
+
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        public Builder frameParallelism(int frameParallelism) {
+            this.frameParallelism = frameParallelism;
+            return this;
+        }
+
+        public Builder memoryBudget(long memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        public Builder encoder(GifEncoderType encoder) {
+            this.encoder = encoder;
+            return this;
+        }
+
+        public Builder paletteMode(PaletteMode paletteMode) {
+            this.paletteMode = paletteMode;
+            return this;
+        }
+
+        public Builder quantizer(QuantizerType quantizer) {
+            this.quantizer = quantizer;
+            return this;
+        }
+
+        public Builder dithering(Dithering dithering) {
+            this.dithering = dithering;
+            return this;
+        }
+
+        public Builder neuQuantSampleFactor(int neuQuantSampleFactor) {
+            this.neuQuantSampleFactor = neuQuantSampleFactor;
+            return this;
+        }
+
+        public Builder background(Background background) {
+            this.background = background;
+            return this;
+        }
+
+        public Builder deltaFrames(boolean deltaFrames) {
+            this.deltaFrames = deltaFrames;
+            return this;
+        }
+
+        public Builder incremental(boolean incremental) {
+            this.incremental = incremental;
+            return this;
+        }
+
+        public Builder outputDir(File outputDir) {
+            this.outputDir = outputDir;
+            return this;
+        }
+
+        public Builder outputLayout(OutputLayout outputLayout) {
+            this.outputLayout = outputLayout;
+            return this;
+        }
+
+        public Builder listener(ConversionListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public ConversionOptions build() {
+            if (mode == null) {
+                throw new IllegalArgumentException("Modo de processamento não informado");
+            }
+            if (encoder == null) {
+                throw new IllegalArgumentException("Encoder de GIF não informado");
+            }
+            if (paletteMode == null) {
+                throw new IllegalArgumentException("Modo de paleta não informado");
+            }
+            if (quantizer == null) {
+                throw new IllegalArgumentException("Quantizador não informado");
+            }
+            if (dithering == null) {
+                throw new IllegalArgumentException("Dithering não informado");
+            }
+            if (background == null) {
+                throw new IllegalArgumentException("Fundo não informado");
+            }
+            if (outputLayout == null) {
+                throw new IllegalArgumentException("Organização da saída não informada");
+            }
+            if (listener == null) {
+                throw new IllegalArgumentException("Listener não informado");
+            }
+            if (frameDelay < 0) {
+                throw new IllegalArgumentException("Atraso entre quadros inválido: " + frameDelay);
+            }
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Paralelismo deve ser pelo menos 1: " + parallelism);
+            }
+            if (frameParallelism < 1) {
+                throw new IllegalArgumentException("Paralelismo de quadros deve ser pelo menos 1: " + frameParallelism);
+            }
+            if (memoryBudget < 1) {
+                throw new IllegalArgumentException("Orçamento de memória deve ser positivo: " + memoryBudget);
+            }
+            if (neuQuantSampleFactor < 1 || neuQuantSampleFactor > NeuQuantQuantizer.MAX_SAMPLE_FACTOR) {
+                throw new IllegalArgumentException("Amostragem do NeuQuant deve estar entre 1 e "
+                        + NeuQuantQuantizer.MAX_SAMPLE_FACTOR + ": " + neuQuantSampleFactor);
+            }
+            return new ConversionOptions(this);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.gifcreator;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads a conversion runs on: a worker pool for whole GIFs and a pool that
+ * decodes and quantizes their frames.
+ *
+ * A {@link MultiConvert} on its own creates a set for each call and closes it at
+ * the end. The {@link ConversionServer} instead keeps one set, sized to the
+ * machine, for as long as it runs and lends it to every job, so concurrent jobs
+ * share the cores and start on threads that are already warm.
+ */
+final class ConversionPools implements AutoCloseable {
+    final ThreadPoolExecutor workers;
+    /** {@code null} when frames are processed on the thread of their GIF. */
+    final ForkJoinPool frames;
+
+    /**
+     * @param queued GIFs handed over beyond the running ones before the thread
+     *               handing them over runs the next one itself
+     */
+    ConversionPools(int parallelism, int frameParallelism, int queued) {
+        this.workers = newWorkerPool(parallelism, queued);
+        this.frames = frameParallelism > 1 ? new ForkJoinPool(frameParallelism) : null;
+    }
+
+    /** GIFs that can run at once. */
+    int parallelism() {
+        return workers.getMaximumPoolSize();
+    }
+
+    /** Waits for the GIFs already handed over, then stops both pools. */
+    @Override
+    public void close() {
+        shutdownQuietly(workers);
+        shutdownQuietly(frames);
+    }
+
+    /**
+     * The {@link JobScheduler} only hands over a GIF when a worker is free, so the
+     * queue never fills; if it did, the thread handing GIFs over would run one
+     * itself instead of piling up GIFs in progress.
+     */
+    private static ThreadPoolExecutor newWorkerPool(int parallelism, int queued) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "gifcreator-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queued)), factory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static void shutdownQuietly(ExecutorService pool) {
+        if (pool == null) {
+            return;
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
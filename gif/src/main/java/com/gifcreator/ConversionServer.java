@@ -0,0 +1,458 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Servidor de conversão residente: uma JVM já aquecida recebe os jobs por um
+ * socket Unix local, e cada GIF deixa de pagar a partida da JVM, a varredura dos
+ * plugins do ImageIO e a compilação dos laços de composição e codificação.
+ *
+ * <pre>
+ * java -cp gif.jar com.gifcreator.ConversionServer [--socket ARQUIVO] [--concurrent N]
+ * </pre>
+ *
+ * Cada linha recebida em UTF-8 é uma requisição e recebe como resposta uma linha
+ * JSON com {@code "ok"}; uma conexão pode mandar várias, uma depois da outra:
+ * <ul>
+ * <li>{@code convert PASTA_ATUAL [opções] PASTA}: um job com as opções do
+ * {@link Cli}, respondido com o resumo e as {@link ConversionMetrics} do job;</li>
+ * <li>{@code key PASTA_ATUAL [--encoder fast|imageio] PASTA}: o
+ * {@link RemoveGreenBackground} nos GIFs da pasta;</li>
+ * <li>{@code ping}.</li>
+ * </ul>
+ * Caminhos relativos valem a partir de {@code PASTA_ATUAL}, a pasta de trabalho
+ * do cliente. O {@link ConversionClient} monta essas linhas.
+ *
+ * Cada conexão é atendida numa thread virtual. No máximo {@code concurrent} jobs
+ * convertem ao mesmo tempo, todos nos mesmos pools do servidor, dimensionados
+ * pelos núcleos da máquina e aquecidos junto com o resto; os demais esperam a vez
+ * sem prender uma thread de plataforma. Os GIFs em andamento de todos os jobs
+ * dividem um só orçamento de memória, metade do heap do servidor, e os de cada
+ * job ficam também dentro do {@code --memory-budget} dele.
+ *
+ * O socket padrão fica numa pasta só do usuário que iniciou o servidor:
+ * {@code $XDG_RUNTIME_DIR}, ou {@code gifcreator-USUÁRIO} na pasta temporária do
+ * sistema, criada com permissão 0700 antes do socket existir. Uma pasta padrão
+ * que já exista e seja de outro usuário ou acessível a outros é recusada.
+ */
+public final class ConversionServer implements AutoCloseable {
+    /** Socket padrão, numa pasta só do usuário. */
+    public static final Path DEFAULT_SOCKET = defaultSocket();
+    public static final int DEFAULT_CONCURRENT_JOBS = 2;
+
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+    // Tamanho da sequência sintética do aquecimento e quantas vezes ela é convertida
+    private static final int WARM_UP_FRAMES = 8;
+    private static final int WARM_UP_ROUNDS = 8;
+
+    private static final String USAGE = "Uso: ConversionServer [--socket ARQUIVO] [--concurrent N]";
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final int concurrentJobs;
+    private final Semaphore jobSlots;
+    private final ConversionPools pools;
+    private final JobScheduler.Budget memoryBudget = new JobScheduler.Budget(
+            ConversionOptions.defaults().getMemoryBudget());
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean closed;
+
+    private ConversionServer(Path socket, ServerSocketChannel server, int concurrentJobs) {
+        this.socket = socket;
+        this.server = server;
+        this.concurrentJobs = concurrentJobs;
+        this.jobSlots = new Semaphore(concurrentJobs, true);
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.pools = new ConversionPools(cores, cores, cores * concurrentJobs);
+    }
+
+    private static Path defaultSocket() {
+        String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+        Path dir = runtimeDir != null && !runtimeDir.isEmpty() ? Paths.get(runtimeDir)
+                : Paths.get(System.getProperty("java.io.tmpdir"), "gifcreator-" + System.getProperty("user.name"));
+        return dir.resolve("gifcreator.sock");
+    }
+
+    /**
+     * Abre o socket e começa a aceitar conexões. Um arquivo de socket que sobrou de
+     * um servidor que não está mais rodando é substituído.
+     */
+    public static ConversionServer start(Path socket, int concurrentJobs) throws IOException {
+        if (concurrentJobs < 1) {
+            throw new IllegalArgumentException("Jobs simultâneos devem ser pelo menos 1: " + concurrentJobs);
+        }
+        Path dir = socket.toAbsolutePath().getParent();
+        if (dir.equals(DEFAULT_SOCKET.toAbsolutePath().getParent())) {
+            privateDirectory(dir);
+        } else if (!Files.isDirectory(dir)) {
+            createPrivate(dir);
+        }
+        if (Files.exists(socket)) {
+            if (isListening(socket)) {
+                throw new IOException("Já há um servidor em " + socket);
+            }
+            Files.delete(socket);
+        }
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            try {
+                Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // Sistema de arquivos sem permissões POSIX
+            }
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        ConversionServer conversionServer = new ConversionServer(socket, server, concurrentJobs);
+        Thread acceptor = new Thread(conversionServer::acceptLoop, "gifcreator-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return conversionServer;
+    }
+
+    /**
+     * Garante que {@code dir} exista e só o usuário atual o acesse: cria-o com
+     * permissão 0700 se faltar, ou recusa um que seja de outro usuário, um link ou
+     * que dê acesso ao grupo ou aos demais.
+     */
+    static void privateDirectory(Path dir) throws IOException {
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS) && createPrivate(dir)) {
+            return;
+        }
+        PosixFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException e) {
+            // Sistema de arquivos sem permissões POSIX
+            return;
+        }
+        if (!attributes.isDirectory() || !attributes.owner().getName().equals(System.getProperty("user.name"))
+                || !OWNER_ONLY.containsAll(attributes.permissions())) {
+            throw new IOException("Pasta do socket não é privada: " + dir);
+        }
+    }
+
+    /** Cria {@code dir} e as pastas que faltarem com permissão 0700; {@code false} se outro a criou antes. */
+    private static boolean createPrivate(Path dir) throws IOException {
+        try {
+            Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } catch (UnsupportedOperationException e) {
+            Files.createDirectories(dir);
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isListening(Path socket) {
+        try (SocketChannel probe = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public Path getSocket() {
+        return socket;
+    }
+
+    /** Bloqueia até o servidor ser encerrado por {@link #close()}. */
+    public void await() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Para de aceitar conexões, desconecta os clientes, espera os jobs em andamento
+     * terminarem e apaga o arquivo do socket.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao fechar o socket: " + e.getMessage());
+        }
+        // Libera as threads paradas esperando a próxima requisição
+        for (SocketChannel client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // Já estava fechado
+            }
+        }
+        connections.close();
+        pools.close();
+        try {
+            Files.deleteIfExists(socket);
+        } catch (IOException e) {
+            System.err.println("Erro ao apagar o socket: " + e.getMessage());
+        }
+        stopped.countDown();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                System.err.println("Erro ao aceitar conexão: " + e.getMessage());
+                continue;
+            }
+            clients.add(client);
+            connections.execute(() -> serve(client));
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        try (SocketChannel channel = client;
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+                Writer out = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                out.write(handle(line));
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Cliente desconectou
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    /** Executa uma requisição e devolve a linha de resposta, sem a quebra de linha. */
+    String handle(String line) {
+        long start = System.nanoTime();
+        try {
+            String[] words = Cli.split(line);
+            if (words.length == 0) {
+                throw new IllegalArgumentException("Requisição vazia");
+            }
+            switch (words[0]) {
+                case "ping":
+                    return "{\"ok\":true}";
+                case "convert":
+                    return convert(workingDir(words), Arrays.copyOfRange(words, 2, words.length), start);
+                case "key":
+                    return key(workingDir(words), Arrays.copyOfRange(words, 2, words.length), start);
+                default:
+                    throw new IllegalArgumentException("Comando desconhecido: " + words[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            return error(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return error("Servidor encerrando");
+        } catch (RuntimeException e) {
+            return error(e.toString());
+        }
+    }
+
+    private String convert(File workingDir, String[] args, long start) throws InterruptedException {
+        Cli.Job job = Cli.job(args, ConversionOptions.defaults());
+        ConversionOptions options = job.options;
+        if (options.getOutputDir() != null && !options.getOutputDir().isAbsolute()) {
+            options = options.toBuilder().outputDir(resolve(workingDir, options.getOutputDir().getPath())).build();
+        }
+        File input = resolve(workingDir, job.input);
+        MultiConvert converter = new MultiConvert(options, pools, memoryBudget);
+        ConversionSummary summary;
+        jobSlots.acquire();
+        try {
+            summary = converter.convertImagesToGif(input.getPath());
+        } finally {
+            jobSlots.release();
+        }
+        return "{\"ok\":true"
+                + ",\"input\":" + Cli.json(input.getPath())
+                + ",\"output\":" + (summary.getOutputDir() == null ? "null"
+                        : Cli.json(summary.getOutputDir().getAbsolutePath()))
+                + ",\"created\":" + summary.getCreated()
+                + ",\"upToDate\":" + summary.getUpToDate()
+                + ",\"failed\":" + summary.getFailed()
+                + ",\"millis\":" + millisSince(start)
+                + ",\"metrics\":" + converter.getMetrics().toJson() + "}";
+    }
+
+    private String key(File workingDir, String[] args, long start) throws InterruptedException {
+        GifEncoderType encoder = GifEncoderType.FAST;
+        String input = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--encoder") && i + 1 < args.length) {
+                encoder = Cli.choice(GifEncoderType.class, args[++i], "--encoder");
+            } else if (input == null && !args[i].startsWith("--")) {
+                input = args[i];
+            } else {
+                throw new IllegalArgumentException("Argumento inválido para key: " + args[i]);
+            }
+        }
+        if (input == null) {
+            throw new IllegalArgumentException("Nenhuma pasta de GIFs informada");
+        }
+        File dir = resolve(workingDir, input);
+        int keyed;
+        jobSlots.acquire();
+        try {
+            keyed = RemoveGreenBackground.processGifs(dir.getPath(), encoder);
+        } finally {
+            jobSlots.release();
+        }
+        return "{\"ok\":true,\"input\":" + Cli.json(dir.getPath()) + ",\"keyed\":" + keyed
+                + ",\"millis\":" + millisSince(start) + "}";
+    }
+
+    private static File workingDir(String[] words) {
+        if (words.length < 2 || !new File(words[1]).isAbsolute()) {
+            throw new IllegalArgumentException("Falta a pasta de trabalho absoluta do cliente");
+        }
+        return new File(words[1]);
+    }
+
+    private static File resolve(File workingDir, String path) {
+        File file = new File(path);
+        // Normalizado, para a chave do manifesto ser a mesma de um caminho absoluto
+        return (file.isAbsolute() ? file : new File(workingDir, path)).toPath().normalize().toFile();
+    }
+
+    private static void deleteQuietly(Path dir) {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Erro ao apagar " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static String error(String message) {
+        return "{\"ok\":false,\"error\":" + Cli.json(message == null ? "" : message) + "}";
+    }
+
+    /**
+     * Converte algumas vezes uma sequência sintética gravada numa pasta temporária,
+     * com cada codificador, pelo mesmo caminho dos jobs, e aplica o chroma key nos
+     * GIFs, para o JIT compilar leitura, composição, quantização e codificação nos
+     * pools do servidor antes do primeiro job. Os jobs que chegarem enquanto isso
+     * esperam o fim do aquecimento.
+     */
+    void warmUp() throws InterruptedException {
+        jobSlots.acquire(concurrentJobs);
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("gifcreator-warmup");
+            File input = Files.createDirectory(dir.resolve("walk")).toFile();
+            for (int i = 0; i < WARM_UP_FRAMES; i++) {
+                BufferedImage frame = new BufferedImage(96, 96, BufferedImage.TYPE_INT_ARGB);
+                for (int y = 0; y < 96; y++) {
+                    for (int x = 0; x < 96; x++) {
+                        boolean sprite = Math.abs(x - 20 - 6 * i) < 16 && Math.abs(y - 48) < 16;
+                        frame.setRGB(x, y, sprite ? 0xFF000000 | x * 2 << 16 | y * 2 << 8 | i * 30 : 0);
+                    }
+                }
+                ImageIO.write(frame, "png", new File(input, "walk-" + i + ".png"));
+            }
+            File output = dir.resolve("processed").toFile();
+            for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+                for (GifEncoderType encoder : GifEncoderType.values()) {
+                    // Sem o GIF anterior, cada rodada grava e aplica o chroma key num só
+                    deleteQuietly(output.toPath());
+                    new MultiConvert(ConversionOptions.builder()
+                            .mode(MultiConvert.ProcessingMode.SEQUENTIAL)
+                            .encoder(encoder)
+                            .incremental(false)
+                            .outputDir(output)
+                            .build(), pools, memoryBudget).convertImagesToGif(input.getPath());
+                    RemoveGreenBackground.processGifs(output.getPath(), encoder);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Aquecimento incompleto: " + e.getMessage());
+        } finally {
+            jobSlots.release(concurrentJobs);
+            deleteQuietly(dir);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        Path socket = DEFAULT_SOCKET;
+        int concurrent = DEFAULT_CONCURRENT_JOBS;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--socket") && i + 1 < args.length) {
+                    socket = Paths.get(args[++i]);
+                } else if (args[i].equals("--concurrent") && i + 1 < args.length) {
+                    concurrent = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("Argumento inválido: " + args[i]);
+                }
+            }
+            if (concurrent < 1) {
+                throw new IllegalArgumentException("Jobs simultâneos devem ser pelo menos 1: " + concurrent);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(Cli.EXIT_USAGE);
+        }
+        long start = System.nanoTime();
+        ConversionServer server = start(socket, concurrent);
+        server.warmUp();
+        System.err.printf(Locale.ROOT, "Servidor ouvindo em %s (aquecido em %d ms)%n", socket, millisSince(start));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.await();
+    }
+}
@@ -0,0 +1,41 @@
+package com.gifcreator;
+
+import java.io.File;
+
+/**
+ * Resultado de uma chamada a {@link MultiConvert#convertImagesToGif(String)}, ou
+ * o acumulado de um {@link FolderWatcher}.
+ */
+public final class ConversionSummary {
+    private final File outputDir;
+    private final int created;
+    private final int upToDate;
+    private final int failed;
+
+    ConversionSummary(File outputDir, int created, int upToDate, int failed) {
+        this.outputDir = outputDir;
+        this.created = created;
+        this.upToDate = upToDate;
+        this.failed = failed;
+    }
+
+    /** Pasta onde os GIFs foram gravados, ou {@code null} se a entrada não era uma pasta. */
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    /** GIFs gravados nesta execução. */
+    public int getCreated() {
+        return created;
+    }
+
+    /** GIFs pulados porque o manifesto mostrou que já estavam atualizados. */
+    public int getUpToDate() {
+        return upToDate;
+    }
+
+    /** Sequências que não puderam ser convertidas. */
+    public int getFailed() {
+        return failed;
+    }
+}
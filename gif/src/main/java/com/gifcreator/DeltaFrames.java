@@ -0,0 +1,280 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Turns a sequence of full-canvas indexed frames into GIF frames that decode to
+ * the same pictures but only cover what changed.
+ *
+ * Every frame after the first is cropped to the bounding box of the pixels that
+ * differ from what the decoder is showing at that point, and pixels inside that
+ * box that don't change are written with the transparent index so they let the
+ * canvas show through. Drawing can't make an opaque pixel transparent again, so
+ * frames are held back by one: when the next frame needs pixels cleared, the
+ * pending one is widened to cover them and gets disposal "restore to background",
+ * otherwise it gets "do not dispose". A frame identical to the current canvas is
+ * dropped and its delay added to the one before it.
+ *
+ * Frames whose palette is full and has no transparent entry are still cropped,
+ * but written without transparent pixels. A frame of a different size than the
+ * first starts over from a blank canvas of its own size.
+ *
+ * The held-back frame is copied into buffers allocated once per canvas size, so
+ * a pushed frame is free for the caller to reuse and nothing the size of a frame
+ * is allocated per frame, except the cropped frames handed back.
+ */
+final class DeltaFrames {
+    static final int DISPOSAL_KEEP = 1;
+    static final int DISPOSAL_RESTORE_BACKGROUND = 2;
+
+    // GIF delays are stored in hundredths of a second in an unsigned short
+    private static final int MAX_DELAY_MS = 0xFFFF * 10;
+
+    /** A frame ready to be written at {@code left}, {@code top} of the canvas. */
+    static final class Frame {
+        final BufferedImage image;
+        final int left;
+        final int top;
+        final int disposal;
+        final int delayMs;
+
+        Frame(BufferedImage image, int left, int top, int disposal, int delayMs) {
+            this.image = image;
+            this.left = left;
+            this.top = top;
+            this.disposal = disposal;
+            this.delayMs = delayMs;
+        }
+    }
+
+    private int width;
+    private int height;
+    // What the decoder shows before the pending frame is drawn, as ARGB with 0 for transparent
+    private int[] canvas;
+    // Null when no frame is pending
+    private IndexColorModel pendingColorModel;
+    private byte[] pendingIndices;
+    private int[] pendingPixels;
+    private int pendingDelay;
+    // The frame being pushed, swapped with the pending buffers once it becomes the pending frame
+    private byte[] nextIndices;
+    private int[] nextPixels;
+    // Changed area of the pending frame, max coordinates exclusive
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+
+    /**
+     * Queues the next full frame.
+     *
+     * @return the previous frame, now that its disposal is known, or {@code null}
+     */
+    Frame push(BufferedImage indexed, int delayMs) {
+        if (pendingColorModel == null) {
+            startCanvas(indexed, delayMs);
+            return null;
+        }
+        if (indexed.getWidth() != width || indexed.getHeight() != height) {
+            Frame ready = crop(DISPOSAL_KEEP, minX, minY, maxX, maxY);
+            startCanvas(indexed, delayMs);
+            return ready;
+        }
+        load(indexed, nextIndices, nextPixels);
+        int[] pixels = nextPixels;
+
+        // Compare the next frame against the canvas as it will be after the pending frame is drawn
+        int clearMinX = width, clearMinY = height, clearMaxX = 0, clearMaxY = 0;
+        boolean changed = false;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int i = row + x;
+                int shown = pendingPixels[i] != 0 ? pendingPixels[i] : canvas[i];
+                int next = pixels[i];
+                if (next == shown) {
+                    continue;
+                }
+                changed = true;
+                if (next == 0) {
+                    clearMinX = Math.min(clearMinX, x);
+                    clearMinY = Math.min(clearMinY, y);
+                    clearMaxX = Math.max(clearMaxX, x + 1);
+                    clearMaxY = Math.max(clearMaxY, y + 1);
+                }
+            }
+        }
+        if (!changed) {
+            pendingDelay = Math.min(MAX_DELAY_MS, pendingDelay + delayMs);
+            return null;
+        }
+
+        Frame ready;
+        if (clearMaxX == 0) {
+            ready = crop(DISPOSAL_KEEP, minX, minY, maxX, maxY);
+            drawPending();
+        } else {
+            int left = Math.min(minX, clearMinX);
+            int top = Math.min(minY, clearMinY);
+            int right = Math.max(maxX, clearMaxX);
+            int bottom = Math.max(maxY, clearMaxY);
+            ready = crop(DISPOSAL_RESTORE_BACKGROUND, left, top, right, bottom);
+            drawPending();
+            for (int y = top; y < bottom; y++) {
+                Arrays.fill(canvas, y * width + left, y * width + right, 0);
+            }
+        }
+        setPending((IndexColorModel) indexed.getColorModel(), delayMs);
+        return ready;
+    }
+
+    /** Returns the last queued frame, or {@code null} if nothing was pushed. */
+    Frame finish() {
+        if (pendingColorModel == null) {
+            return null;
+        }
+        Frame last = crop(DISPOSAL_KEEP, minX, minY, maxX, maxY);
+        pendingColorModel = null;
+        canvas = null;
+        pendingIndices = null;
+        pendingPixels = null;
+        nextIndices = null;
+        nextPixels = null;
+        return last;
+    }
+
+    private void startCanvas(BufferedImage indexed, int delayMs) {
+        width = indexed.getWidth();
+        height = indexed.getHeight();
+        int pixelCount = width * height;
+        canvas = new int[pixelCount];
+        pendingIndices = new byte[pixelCount];
+        pendingPixels = new int[pixelCount];
+        nextIndices = new byte[pixelCount];
+        nextPixels = new int[pixelCount];
+        load(indexed, pendingIndices, pendingPixels);
+        pendingColorModel = (IndexColorModel) indexed.getColorModel();
+        pendingDelay = delayMs;
+        // The first frame always covers the whole canvas
+        minX = 0;
+        minY = 0;
+        maxX = width;
+        maxY = height;
+    }
+
+    /** Makes the frame in the next buffers the pending one. */
+    private void setPending(IndexColorModel colorModel, int delayMs) {
+        byte[] indices = nextIndices;
+        nextIndices = pendingIndices;
+        pendingIndices = indices;
+        int[] pixels = nextPixels;
+        nextPixels = pendingPixels;
+        pendingPixels = pixels;
+        pendingColorModel = colorModel;
+        pendingDelay = delayMs;
+        minX = width;
+        minY = height;
+        maxX = 0;
+        maxY = 0;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                if (pixels[row + x] != canvas[row + x]) {
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x + 1);
+                    maxY = Math.max(maxY, y + 1);
+                }
+            }
+        }
+    }
+
+    /** Applies the pending frame's opaque pixels to {@link #canvas}. */
+    private void drawPending() {
+        for (int y = minY; y < maxY; y++) {
+            int row = y * width;
+            for (int x = minX; x < maxX; x++) {
+                if (pendingPixels[row + x] != 0) {
+                    canvas[row + x] = pendingPixels[row + x];
+                }
+            }
+        }
+    }
+
+    /**
+     * Cuts {@code [left, right) x [top, bottom)} out of the pending frame, marking
+     * pixels that match the canvas transparent. An empty area becomes a single
+     * pixel that leaves the canvas as it is.
+     */
+    private Frame crop(int disposal, int left, int top, int right, int bottom) {
+        if (right <= left || bottom <= top) {
+            left = 0;
+            top = 0;
+            right = 1;
+            bottom = 1;
+        }
+        IndexColorModel colorModel = pendingColorModel;
+        int[] palette = new int[colorModel.getMapSize()];
+        colorModel.getRGBs(palette);
+        int transparentIndex = FastGifEncoder.transparentIndex(colorModel, palette);
+        if (transparentIndex < 0 && palette.length < OctreeQuantizer.MAX_COLORS) {
+            colorModel = withTransparentEntry(palette);
+            transparentIndex = palette.length;
+        }
+
+        byte[] source = pendingIndices;
+        int cropWidth = right - left;
+        int cropHeight = bottom - top;
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(cropWidth, cropHeight);
+        byte[] target = ((DataBufferByte) raster.getDataBuffer()).getData();
+        for (int y = 0; y < cropHeight; y++) {
+            int from = (top + y) * width + left;
+            int to = y * cropWidth;
+            for (int x = 0; x < cropWidth; x++) {
+                int i = from + x;
+                target[to + x] = transparentIndex >= 0 && pendingPixels[i] == canvas[i] ? (byte) transparentIndex
+                        : source[i];
+            }
+        }
+        return new Frame(new BufferedImage(colorModel, raster, false, null), left, top, disposal, pendingDelay);
+    }
+
+    private static IndexColorModel withTransparentEntry(int[] palette) {
+        int size = palette.length + 1;
+        byte[] r = new byte[size];
+        byte[] g = new byte[size];
+        byte[] b = new byte[size];
+        for (int i = 0; i < palette.length; i++) {
+            r[i] = (byte) (palette[i] >> 16);
+            g[i] = (byte) (palette[i] >> 8);
+            b[i] = (byte) palette[i];
+        }
+        return new IndexColorModel(8, size, r, g, b, palette.length);
+    }
+
+    /**
+     * Copies the frame's indices into {@code indices}, and into {@code pixels} what a
+     * decoder draws for each of them: opaque ARGB, or 0 where the frame is
+     * transparent.
+     */
+    private void load(BufferedImage indexed, byte[] indices, int[] pixels) {
+        IndexColorModel colorModel = (IndexColorModel) indexed.getColorModel();
+        int[] palette = new int[colorModel.getMapSize()];
+        colorModel.getRGBs(palette);
+        int transparentIndex = FastGifEncoder.transparentIndex(colorModel, palette);
+        int[] lookup = new int[256];
+        for (int i = 0; i < palette.length; i++) {
+            lookup[i] = i == transparentIndex ? 0 : palette[i] | 0xFF000000;
+        }
+        ByteBuffer source = FrameArena.indices(indexed.getRaster(), width, height);
+        source.get(0, indices, 0, indices.length);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = lookup[indices[i] & 0xFF];
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.gifcreator;
+
+/** How pixels are mapped onto a palette that doesn't contain their exact colours. */
+public enum Dithering {
+    /** Each pixel takes the nearest palette colour. Gradients show bands. */
+    NONE,
+    /**
+     * An 8x8 Bayer matrix nudges each pixel before it is mapped, trading bands for a
+     * fine regular pattern. Every pixel is independent, so rows are mapped in
+     * parallel, and the pattern stays put between frames, which keeps delta frames
+     * small.
+     */
+    ORDERED,
+    /**
+     * Floyd–Steinberg error diffusion, in serpentine order: the closest result to
+     * the source, but every row depends on the one above, so a frame is mapped on
+     * one thread, and the noise changes between frames.
+     */
+    FLOYD_STEINBERG
+}
@@ -0,0 +1,452 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * GIF89a encoder that works directly on byte and int arrays.
+ *
+ * Non-indexed frames are reduced with {@link OctreeQuantizer} from their packed
+ * ARGB pixels into an index array kept for the next frame; indexed frames are
+ * written with their own palette as-is, or with no local colour table at all when
+ * they use the global palette given to
+ * {@link #start(OutputStream, int, IndexColorModel)}. Frames from a
+ * {@link FrameArena} are compressed straight from their off-heap buffer. With
+ * delta frames enabled, frames go through {@link DeltaFrames} and only changed
+ * areas are stored. The LZW hash table, the sub-block buffer and the output
+ * buffer are allocated once per encoder and reused for every frame, and bytes
+ * reach the underlying stream in large chunks only.
+ */
+final class FastGifEncoder implements GifEncoder {
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int DISPOSAL_UNSPECIFIED = 0;
+    private static final int DISPOSAL_RESTORE_BACKGROUND = 2;
+
+    private final byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+    private final LzwEncoder lzw = new LzwEncoder();
+    private final DeltaFrames delta;
+    // Indices of the last true-colour frame, reused while the frame size stays the same
+    private byte[] quantized;
+    private OutputStream out;
+    private int position;
+    private int loopCount;
+    private boolean headerWritten;
+    private IndexColorModel globalColorModel;
+    private int[] globalPalette;
+    private int globalTransparentIndex = -1;
+
+    FastGifEncoder() {
+        this(false);
+    }
+
+    FastGifEncoder(boolean deltaFrames) {
+        this.delta = deltaFrames ? new DeltaFrames() : null;
+    }
+
+    @Override
+    public void start(OutputStream out, int loopCount) throws IOException {
+        start(out, loopCount, null);
+    }
+
+    @Override
+    public void start(OutputStream out, int loopCount, IndexColorModel globalPalette) throws IOException {
+        if (this.out != null) {
+            throw new IllegalStateException("Encoder already started");
+        }
+        this.out = out;
+        this.loopCount = loopCount;
+        if (globalPalette != null) {
+            this.globalColorModel = globalPalette;
+            this.globalPalette = new int[globalPalette.getMapSize()];
+            globalPalette.getRGBs(this.globalPalette);
+            this.globalTransparentIndex = transparentIndex(globalPalette, this.globalPalette);
+        }
+    }
+
+    @Override
+    public void addFrame(BufferedImage frame, int delayMs) throws IOException {
+        if (out == null) {
+            throw new IllegalStateException("Encoder not started");
+        }
+        BufferedImage indexed = frame.getColorModel() instanceof IndexColorModel ? frame : quantize(frame);
+        if (!headerWritten) {
+            writeHeader(indexed.getWidth(), indexed.getHeight());
+            headerWritten = true;
+        }
+
+        if (delta == null) {
+            writeFrame(indexed, 0, 0, -1, delayMs);
+        } else {
+            writeFrame(delta.push(indexed, delayMs));
+        }
+    }
+
+    /** Quantizes a true-colour frame into {@link #quantized}, valid until the next frame. */
+    private BufferedImage quantize(BufferedImage frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (quantized == null || quantized.length != width * height) {
+            quantized = new byte[width * height];
+        }
+        IndexColorModel colorModel = new OctreeQuantizer().quantizeInto(Rasters.argbPixels(frame), width, height,
+                ByteBuffer.wrap(quantized));
+        WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(quantized, quantized.length), width,
+                height, width, 1, new int[] { 0 }, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private void writeFrame(DeltaFrames.Frame frame) throws IOException {
+        if (frame != null) {
+            writeFrame(frame.image, frame.left, frame.top, frame.disposal, frame.delayMs);
+        }
+    }
+
+    /** @param disposal GIF disposal method, or -1 to restore the background only if the frame has transparency */
+    private void writeFrame(BufferedImage indexed, int left, int top, int disposal, int delayMs)
+            throws IOException {
+        IndexColorModel colorModel = (IndexColorModel) indexed.getColorModel();
+        int width = indexed.getWidth();
+        int height = indexed.getHeight();
+
+        // Identity check: frames mapped by GlobalPalette all share its colour model
+        boolean global = colorModel == globalColorModel;
+        int[] palette;
+        int transparentIndex;
+        if (global) {
+            palette = null;
+            transparentIndex = globalTransparentIndex;
+        } else {
+            palette = new int[colorModel.getMapSize()];
+            colorModel.getRGBs(palette);
+            transparentIndex = transparentIndex(colorModel, palette);
+        }
+        if (disposal < 0) {
+            disposal = transparentIndex >= 0 ? DISPOSAL_RESTORE_BACKGROUND : DISPOSAL_UNSPECIFIED;
+        }
+
+        writeGraphicControl(disposal, transparentIndex, delayMs);
+        ByteBuffer pixels = FrameArena.indices(indexed.getRaster(), width, height);
+        if (global) {
+            writeImage(pixels, width, height, left, top, null, tableBits(globalPalette.length));
+        } else {
+            writeImage(pixels, width, height, left, top, palette, tableBits(palette.length));
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (out == null) {
+            throw new IllegalStateException("Encoder not started");
+        }
+        if (!headerWritten) {
+            writeHeader(1, 1);
+            headerWritten = true;
+        }
+        if (delta != null) {
+            writeFrame(delta.finish());
+        }
+        writeByte(0x3B);
+        flushBuffer();
+        out.flush();
+    }
+
+    private void writeHeader(int width, int height) throws IOException {
+        writeAscii("GIF89a");
+        writeShort(width);
+        writeShort(height);
+        if (globalPalette == null) {
+            writeByte(0x70); // 8-bit colour resolution, no global colour table
+            writeByte(0);
+            writeByte(0);
+        } else {
+            int tableBits = tableBits(globalPalette.length);
+            writeByte(0x80 | 0x70 | (tableBits - 1));
+            writeByte(0);
+            writeByte(0);
+            writeColorTable(globalPalette, tableBits);
+        }
+
+        if (loopCount >= 0) {
+            writeByte(0x21);
+            writeByte(0xFF);
+            writeByte(11);
+            writeAscii("NETSCAPE2.0");
+            writeByte(3);
+            writeByte(1);
+            writeShort(loopCount);
+            writeByte(0);
+        }
+    }
+
+    private void writeGraphicControl(int disposal, int transparentIndex, int delayMs) throws IOException {
+        writeByte(0x21);
+        writeByte(0xF9);
+        writeByte(4);
+        writeByte(disposal << 2 | (transparentIndex >= 0 ? 1 : 0));
+        writeShort(delayMs / 10);
+        writeByte(Math.max(transparentIndex, 0));
+        writeByte(0);
+    }
+
+    /** Writes an image descriptor, a local colour table unless {@code localPalette} is null, and the pixels. */
+    private void writeImage(ByteBuffer indices, int width, int height, int left, int top, int[] localPalette,
+            int tableBits) throws IOException {
+        writeByte(0x2C);
+        writeShort(left);
+        writeShort(top);
+        writeShort(width);
+        writeShort(height);
+        if (localPalette != null) {
+            writeByte(0x80 | (tableBits - 1));
+            writeColorTable(localPalette, tableBits);
+        } else {
+            writeByte(0);
+        }
+
+        int minCodeSize = Math.max(2, tableBits);
+        writeByte(minCodeSize);
+        lzw.encode(indices, width * height, minCodeSize);
+        writeByte(0);
+    }
+
+    private void writeColorTable(int[] palette, int tableBits) throws IOException {
+        for (int i = 0; i < 1 << tableBits; i++) {
+            int rgb = i < palette.length ? palette[i] : 0;
+            writeByte(rgb >> 16 & 0xFF);
+            writeByte(rgb >> 8 & 0xFF);
+            writeByte(rgb & 0xFF);
+        }
+    }
+
+    private static int tableBits(int paletteSize) {
+        int tableBits = 1;
+        while (1 << tableBits < paletteSize) {
+            tableBits++;
+        }
+        return tableBits;
+    }
+
+    static int transparentIndex(IndexColorModel colorModel, int[] palette) {
+        int transparent = colorModel.getTransparentPixel();
+        if (transparent >= 0) {
+            return transparent;
+        }
+        if (colorModel.hasAlpha()) {
+            for (int i = 0; i < palette.length; i++) {
+                if (palette[i] >>> 24 < 0x80) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** The palette indices of an indexed raster, without copying when it is a plain byte-per-pixel raster. */
+    static byte[] indices(Raster raster, int width, int height) {
+        if (raster.getDataBuffer() instanceof DataBufferByte && raster.getParent() == null
+                && raster.getSampleModel() instanceof ComponentSampleModel
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0) {
+            ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+            DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+            if (sampleModel.getPixelStride() == 1 && sampleModel.getScanlineStride() == width
+                    && dataBuffer.getOffset() == 0 && dataBuffer.getData().length == width * height) {
+                return dataBuffer.getData();
+            }
+        }
+        int[] samples = raster.getSamples(raster.getMinX(), raster.getMinY(), width, height, 0,
+                new int[width * height]);
+        byte[] indices = new byte[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            indices[i] = (byte) samples[i];
+        }
+        return indices;
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            writeByte(text.charAt(i));
+        }
+    }
+
+    private void writeShort(int value) throws IOException {
+        writeByte(value & 0xFF);
+        writeByte(value >> 8 & 0xFF);
+    }
+
+    private void writeByte(int value) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - position) {
+            flushBuffer();
+        }
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * Variable-length-code LZW as required by GIF, with the 12-bit code limit and
+     * a clear code whenever the table fills up. Follows the classic
+     * {@code compress} code-size schedule so any GIF decoder reads it back.
+     */
+    private final class LzwEncoder {
+        private static final int MAX_BITS = 12;
+        private static final int MAX_CODES = 1 << MAX_BITS;
+        private static final int HASH_BITS = 13;
+        private static final int HASH_SIZE = 1 << HASH_BITS;
+
+        private static final int CHUNK_SIZE = 64 * 1024;
+
+        // key + 1 so that 0 marks a free slot
+        private final int[] hashKeys = new int[HASH_SIZE];
+        private final short[] hashCodes = new short[HASH_SIZE];
+        private final byte[] block = new byte[255];
+        // Off-heap pixels are copied through this a chunk at a time
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private int blockLength;
+        private int bitBuffer;
+        private int bitCount;
+        private int codeSize;
+        private int maxCode;
+        private int nextCode;
+        private int clearCode;
+        private int initialCodeSize;
+        private boolean clearPending;
+
+        void encode(ByteBuffer pixels, int length, int minCodeSize) throws IOException {
+            initialCodeSize = minCodeSize + 1;
+            clearCode = 1 << minCodeSize;
+            int endCode = clearCode + 1;
+            resetTable();
+            codeSize = initialCodeSize;
+            maxCode = (1 << codeSize) - 1;
+            bitBuffer = 0;
+            bitCount = 0;
+            blockLength = 0;
+            clearPending = false;
+
+            output(clearCode);
+            if (length > 0) {
+                int prefix;
+                if (pixels.hasArray()) {
+                    byte[] array = pixels.array();
+                    int offset = pixels.arrayOffset();
+                    prefix = compress(array, offset + 1, offset + length, array[offset] & 0xFF);
+                } else {
+                    prefix = pixels.get(0) & 0xFF;
+                    for (int from = 1; from < length; from += CHUNK_SIZE) {
+                        int count = Math.min(CHUNK_SIZE, length - from);
+                        pixels.get(from, chunk, 0, count);
+                        prefix = compress(chunk, 0, count, prefix);
+                    }
+                }
+                output(prefix);
+            }
+            output(endCode);
+
+            if (bitCount > 0) {
+                appendToBlock(bitBuffer & 0xFF);
+            }
+            flushBlock();
+        }
+
+        /**
+         * Extends the string {@code prefix} with {@code pixels[from..to)}, writing a
+         * code each time the string leaves the table.
+         *
+         * @return the code of the string still being extended
+         */
+        private int compress(byte[] pixels, int from, int to, int prefix) throws IOException {
+            for (int i = from; i < to; i++) {
+                int pixel = pixels[i] & 0xFF;
+                int key = prefix << 8 | pixel;
+                int slot = (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+                int code = -1;
+                while (hashKeys[slot] != 0) {
+                    if (hashKeys[slot] == key + 1) {
+                        code = hashCodes[slot];
+                        break;
+                    }
+                    slot = (slot + 1) & (HASH_SIZE - 1);
+                }
+                if (code >= 0) {
+                    prefix = code;
+                    continue;
+                }
+
+                output(prefix);
+                prefix = pixel;
+                if (nextCode < MAX_CODES) {
+                    hashKeys[slot] = key + 1;
+                    hashCodes[slot] = (short) nextCode++;
+                } else {
+                    resetTable();
+                    clearPending = true;
+                    output(clearCode);
+                }
+            }
+            return prefix;
+        }
+
+        private void resetTable() {
+            Arrays.fill(hashKeys, 0);
+            nextCode = clearCode + 2;
+        }
+
+        private void output(int code) throws IOException {
+            bitBuffer |= code << bitCount;
+            bitCount += codeSize;
+            while (bitCount >= 8) {
+                appendToBlock(bitBuffer & 0xFF);
+                bitBuffer >>>= 8;
+                bitCount -= 8;
+            }
+
+            if (nextCode > maxCode || clearPending) {
+                if (clearPending) {
+                    codeSize = initialCodeSize;
+                    maxCode = (1 << codeSize) - 1;
+                    clearPending = false;
+                } else {
+                    codeSize++;
+                    maxCode = codeSize == MAX_BITS ? MAX_CODES : (1 << codeSize) - 1;
+                }
+            }
+        }
+
+        private void appendToBlock(int value) throws IOException {
+            block[blockLength++] = (byte) value;
+            if (blockLength == block.length) {
+                flushBlock();
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockLength > 0) {
+                writeByte(blockLength);
+                writeBytes(block, 0, blockLength);
+                blockLength = 0;
+            }
+        }
+    }
+}
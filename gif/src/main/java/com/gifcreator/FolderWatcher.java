@@ -0,0 +1,269 @@
+package com.gifcreator;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Modo observador de {@link MultiConvert#watch(String, long)}: acompanha a pasta
+ * de entrada com um {@link WatchService} e converte de novo só o que mudou.
+ *
+ * Cada pasta alterada espera até passar o tempo de silêncio sem novos eventos,
+ * o que dá tempo de o render terminar de gravar a sequência. Depois disso, no
+ * modo recursivo a pasta vira um GIF como em
+ * {@link MultiConvert#convertImagesToGif(String)}, e no modo sequencial só as
+ * sequências com quadros alterados são refeitas. Pastas criadas depois do início
+ * passam a ser observadas na hora, e a pasta de saída nunca é observada. Se o
+ * sistema perder eventos, todas as pastas observadas são conferidas de novo, o
+ * que o manifesto de build torna barato.
+ *
+ * As conversões rodam uma rodada por vez, numa thread própria.
+ */
+public final class FolderWatcher implements AutoCloseable {
+    /** Tempo padrão sem mudanças numa pasta até ela ser convertida. */
+    public static final long DEFAULT_QUIET_MILLIS = 2000;
+
+    private final MultiConvert converter;
+    private final File root;
+    private final File outputDir;
+    private final boolean recursive;
+    private final long quietNanos;
+    private final WatchService service;
+    // Só a thread do observador usa estes dois
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Map<Path, Pending> pending = new LinkedHashMap<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger upToDate = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger rounds = new AtomicInteger();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /** Bases alteradas de uma pasta desde a última conversão; {@code null} é a pasta inteira. */
+    private static final class Pending {
+        long lastEvent;
+        Set<String> baseNames = new HashSet<>();
+    }
+
+    private FolderWatcher(MultiConvert converter, File root, long quietMillis) throws IOException {
+        if (quietMillis < 0) {
+            throw new IllegalArgumentException("Tempo de silêncio inválido: " + quietMillis);
+        }
+        this.converter = converter;
+        this.root = root;
+        this.outputDir = converter.outputDirFor(root).getAbsoluteFile();
+        this.recursive = converter.getOptions().getMode() == MultiConvert.ProcessingMode.RECURSIVE;
+        this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+        this.service = root.toPath().getFileSystem().newWatchService();
+        this.thread = new Thread(this::run, "gifcreator-watch-" + root.getName());
+        this.thread.setDaemon(true);
+    }
+
+    static FolderWatcher start(MultiConvert converter, File root, long quietMillis) throws IOException {
+        FolderWatcher watcher = new FolderWatcher(converter, root, quietMillis);
+        try {
+            watcher.register(root.toPath(), false);
+        } catch (IOException e) {
+            watcher.service.close();
+            throw e;
+        }
+        watcher.thread.start();
+        return watcher;
+    }
+
+    /** Pasta observada. */
+    public File getRoot() {
+        return root;
+    }
+
+    /** Totais de todas as rodadas até agora, incluindo a conversão inicial. */
+    public ConversionSummary getSummary() {
+        return new ConversionSummary(outputDir, created.get(), upToDate.get(), failed.get());
+    }
+
+    /** Rodadas de conversão concluídas, incluindo a inicial. */
+    public int getRounds() {
+        return rounds.get();
+    }
+
+    /** Bloqueia até o observador ser encerrado por {@link #close()}. */
+    public void await() throws InterruptedException {
+        stopped.await();
+    }
+
+    /** Para de observar; a rodada em andamento termina e grava o manifesto antes. */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            service.close();
+        } catch (IOException e) {
+            System.err.println("Erro ao encerrar o observador: " + e.getMessage());
+        }
+        if (Thread.currentThread() != thread) {
+            try {
+                stopped.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            // As pastas já estão registradas: o que chegar durante a conversão inicial vira evento
+            record(converter.convertImagesToGif(root.getPath()));
+            while (!closed) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = service.take();
+                } else {
+                    long wait = nextDeadline() - System.nanoTime();
+                    key = wait > 0 ? service.poll(wait, TimeUnit.NANOSECONDS) : service.poll();
+                }
+                while (key != null) {
+                    handle(key);
+                    key = service.poll();
+                }
+                convertSettled();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Encerrado por close()
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private void handle(WatchKey key) {
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                for (Path watched : directories.values()) {
+                    changed(watched, null);
+                }
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (recursive && event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    register(child, true);
+                } catch (IOException e) {
+                    System.err.println("Erro ao observar " + child + ": " + e.getMessage());
+                }
+                continue;
+            }
+            String name = child.getFileName().toString();
+            if (!SequenceScanner.isImage(name)) {
+                continue;
+            }
+            if (recursive) {
+                changed(dir, null);
+            } else {
+                // A frame or a seed: the same base the batch gives the seed of its sequence
+                changed(dir, SequenceScanner.baseName(name, converter.getOptions().getSuffix())
+                        .toLowerCase(Locale.ROOT));
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+    }
+
+    /**
+     * Observa {@code start} e, no modo recursivo, as subpastas fora da pasta de
+     * saída. Pastas novas já podem ter quadros, então são marcadas como alteradas.
+     */
+    private void register(Path start, boolean isNew) throws IOException {
+        Path output = outputDir.toPath();
+        if (!recursive) {
+            directories.put(start.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), start);
+            return;
+        }
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.toAbsolutePath().startsWith(output)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                directories.put(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                if (isNew) {
+                    changed(dir, null);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void changed(Path dir, String baseName) {
+        Pending entry = pending.computeIfAbsent(dir, d -> new Pending());
+        entry.lastEvent = System.nanoTime();
+        if (baseName == null) {
+            entry.baseNames = null;
+        } else if (entry.baseNames != null) {
+            entry.baseNames.add(baseName);
+        }
+    }
+
+    private long nextDeadline() {
+        long deadline = Long.MAX_VALUE;
+        for (Pending entry : pending.values()) {
+            deadline = Math.min(deadline, entry.lastEvent + quietNanos);
+        }
+        return deadline;
+    }
+
+    /** Converte, numa só rodada, as pastas que ficaram em silêncio pelo tempo pedido. */
+    private void convertSettled() {
+        long now = System.nanoTime();
+        Map<File, Set<String>> ready = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Path, Pending> entry = it.next();
+            if (now - entry.getValue().lastEvent < quietNanos) {
+                continue;
+            }
+            it.remove();
+            // Uma pasta apagada não tem mais o que converter
+            if (Files.isDirectory(entry.getKey())) {
+                ready.put(entry.getKey().toFile(), entry.getValue().baseNames);
+            }
+        }
+        if (!ready.isEmpty() && !closed) {
+            record(converter.convertChanged(root, ready));
+        }
+    }
+
+    private void record(ConversionSummary summary) {
+        created.addAndGet(summary.getCreated());
+        upToDate.addAndGet(summary.getUpToDate());
+        failed.addAndGet(summary.getFailed());
+        rounds.incrementAndGet();
+    }
+}
@@ -0,0 +1,198 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap storage for indexed frames, shared by every GIF in the process.
+ *
+ * A 4K frame is 8 MB of palette indices, which as a heap array is a humongous
+ * allocation for G1, made and dropped for every frame. The arena hands out
+ * direct buffers instead: the quantizers write a frame's indices straight into
+ * one, and it comes back once the encoder has written the frame. Buffers go round
+ * between the GIFs of a batch and from one batch to the next, so index buffers
+ * are only allocated for as many frames as are ever in flight.
+ *
+ * Only the indices live here. The decoded source image and the ARGB composite
+ * each thread reuses stay on the heap, so the cap bounds the indexed frames in
+ * flight, not all the memory a frame takes.
+ *
+ * The direct memory the arena holds, lent out or waiting to be reused, is capped.
+ * When a frame needs more, free buffers too small for it are dropped to make
+ * room, and past the cap frames get plain heap buffers, which are not kept. A
+ * dropped buffer no longer counts, though its memory only goes once the JVM
+ * frees it. Frames leave the arena as
+ * {@link BufferedImage} views whose raster reads the buffer in place.
+ * {@link FastGifEncoder} and {@link DeltaFrames} get at the buffer directly;
+ * anything else, like the JDK GIF writer, takes a heap copy from {@link #onHeap},
+ * made in one bulk read rather than through the view's per-pixel calls.
+ *
+ * The process-wide arena takes its cap in megabytes from the
+ * {@code gifcreator.frameArena.mb} system property. Thread-safe: frames are
+ * filled on the frame pool and released by the threads that write the GIFs.
+ */
+final class FrameArena implements AutoCloseable {
+    static final long DEFAULT_MAX_DIRECT_BYTES = Math.min(512L << 20, Runtime.getRuntime().maxMemory() / 4);
+
+    private static final FrameArena SHARED = new FrameArena(
+            Long.getLong("gifcreator.frameArena.mb", DEFAULT_MAX_DIRECT_BYTES >> 20) << 20);
+
+    private final long maxDirectBytes;
+    // Guarded by this
+    private final List<ByteBuffer> free = new ArrayList<>();
+    // Capacity of the direct buffers lent out or in free
+    private long directBytes;
+    private boolean closed;
+
+    FrameArena(long maxDirectBytes) {
+        this.maxDirectBytes = maxDirectBytes;
+    }
+
+    /** The arena shared by the process. */
+    static FrameArena shared() {
+        return SHARED;
+    }
+
+    /**
+     * A buffer for the indices of a frame of {@code size} pixels, with its limit at
+     * {@code size}: the smallest free one that fits, a new direct one while the cap
+     * allows once smaller free ones are dropped, or else a heap one. Its contents
+     * are undefined.
+     */
+    synchronized ByteBuffer allocate(int size) {
+        int best = -1;
+        for (int i = 0; i < free.size(); i++) {
+            int capacity = free.get(i).capacity();
+            if (capacity >= size && (best < 0 || capacity < free.get(best).capacity())) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            return free.remove(best).clear().limit(size);
+        }
+        if (size <= maxDirectBytes) {
+            trim(maxDirectBytes - size);
+        }
+        if (directBytes + size <= maxDirectBytes) {
+            directBytes += size;
+            return ByteBuffer.allocateDirect(size);
+        }
+        return ByteBuffer.allocate(size);
+    }
+
+    /**
+     * Wraps {@code indices}, a buffer from {@link #allocate} holding a
+     * {@code width * height} frame, as an indexed image with {@code colorModel}.
+     */
+    BufferedImage indexed(ByteBuffer indices, int width, int height, IndexColorModel colorModel) {
+        ArenaBuffer data = new ArenaBuffer(indices, this);
+        WritableRaster raster = Raster.createWritableRaster(
+                new PixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, width, height, 1, width, new int[] { 0 }),
+                data, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * Takes back the buffer behind a frame made by {@link #indexed}, which must not
+     * be used afterwards. Any other image is left alone.
+     */
+    void release(BufferedImage frame) {
+        DataBuffer data = frame.getRaster().getDataBuffer();
+        if (data instanceof ArenaBuffer && ((ArenaBuffer) data).arena == this) {
+            release(((ArenaBuffer) data).buffer);
+        }
+    }
+
+    /** Takes back a buffer from {@link #allocate} that never became a frame. */
+    synchronized void release(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        if (closed) {
+            directBytes -= buffer.capacity();
+        } else {
+            free.add(buffer);
+        }
+    }
+
+    /** Drops the free buffers; their memory goes when the JVM frees them. */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        trim(0);
+    }
+
+    /** Drops free buffers, largest first, until the arena holds at most {@code bytes}. */
+    private void trim(long bytes) {
+        while (directBytes > bytes && !free.isEmpty()) {
+            int largest = 0;
+            for (int i = 1; i < free.size(); i++) {
+                if (free.get(i).capacity() > free.get(largest).capacity()) {
+                    largest = i;
+                }
+            }
+            directBytes -= free.remove(largest).capacity();
+        }
+    }
+
+    /**
+     * The palette indices of {@code raster} as a buffer: the arena's own for its
+     * frames, or the raster's samples otherwise. Read with absolute gets only.
+     */
+    static ByteBuffer indices(Raster raster, int width, int height) {
+        DataBuffer data = raster.getDataBuffer();
+        if (data instanceof ArenaBuffer && raster.getParent() == null && raster.getWidth() == width
+                && raster.getHeight() == height) {
+            return ((ArenaBuffer) data).buffer;
+        }
+        return ByteBuffer.wrap(FastGifEncoder.indices(raster, width, height));
+    }
+
+    /**
+     * {@code frame} itself, or for a frame made by {@link #indexed} a heap copy of
+     * it, so that code reading the raster a pixel at a time gets an ordinary array.
+     */
+    static BufferedImage onHeap(BufferedImage frame) {
+        DataBuffer data = frame.getRaster().getDataBuffer();
+        if (!(data instanceof ArenaBuffer)) {
+            return frame;
+        }
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        byte[] copy = new byte[width * height];
+        indices(frame.getRaster(), width, height).get(0, copy);
+        WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(copy, copy.length), width, height,
+                width, 1, new int[] { 0 }, null);
+        return new BufferedImage(frame.getColorModel(), raster, false, null);
+    }
+
+    /** One byte per pixel in an arena buffer; AWT reaches it through the slow per-element calls. */
+    private static final class ArenaBuffer extends DataBuffer {
+        final ByteBuffer buffer;
+        final FrameArena arena;
+
+        ArenaBuffer(ByteBuffer buffer, FrameArena arena) {
+            super(TYPE_BYTE, buffer.limit());
+            this.buffer = buffer;
+            this.arena = arena;
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            return buffer.get(i) & 0xFF;
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            buffer.put(i, (byte) val);
+        }
+    }
+}
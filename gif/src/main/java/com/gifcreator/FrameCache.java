@@ -0,0 +1,434 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decoded source frames, shared by everything in the process that reads them:
+ * the preview, conversions and re-runs of a batch. A frame is found again only
+ * while the file has the same path, size and modification time.
+ *
+ * Lookups go through a concurrent map and never wait for a lock. Eviction follows
+ * W-TinyLFU: a new frame enters a small LRU window, and when it leaves the window
+ * it only replaces the least recently used frame of the main region if it has
+ * been asked for more often, by a small frequency sketch. A long sequence read
+ * once therefore can't flush the frames that keep being reused. The policy and
+ * its budget cover the whole cache, so a 4K frame fits as long as the cache can
+ * hold it at all; they sit behind one lock that only inserts wait for. A lookup
+ * that finds the lock taken queues its use for whoever holds it, and drops it if
+ * too many have piled up. Eviction is by the bytes of pixel data, not the number
+ * of frames.
+ *
+ * Frames are kept in the layout the reader produced (3 or 4 bytes per pixel for
+ * most PNGs and JPEGs), either as the decoded image itself or, off-heap, as a copy
+ * of its pixel array in a direct buffer that is copied back into a new image on
+ * each hit. Images returned from the heap store are shared and must not be
+ * modified.
+ *
+ * The process-wide cache takes its size in megabytes from the
+ * {@code gifcreator.frameCache.mb} system property (0 turns it off) and moves
+ * pixels off-heap when {@code gifcreator.frameCache.offHeap} is {@code true}.
+ */
+final class FrameCache {
+    static final long DEFAULT_MAX_BYTES = Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 8);
+
+    private static final FrameCache SHARED = create(
+            Long.getLong("gifcreator.frameCache.mb", DEFAULT_MAX_BYTES >> 20) << 20,
+            Boolean.getBoolean("gifcreator.frameCache.offHeap"));
+
+    /** Identifies one version of a file. */
+    record Key(String path, long size, long modified) {
+    }
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Policy policy;
+    private final boolean offHeap;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    FrameCache(long maxBytes, boolean offHeap) {
+        this.policy = new Policy(maxBytes, entries);
+        this.offHeap = offHeap;
+    }
+
+    /** The cache shared by the process, or {@code null} if it was turned off. */
+    static FrameCache shared() {
+        return SHARED;
+    }
+
+    private static FrameCache create(long maxBytes, boolean offHeap) {
+        return maxBytes > 0 ? new FrameCache(maxBytes, offHeap) : null;
+    }
+
+    /** The key of the file as it is now, or {@code null} if it can't be read. */
+    static Key keyOf(File file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return new Key(file.getAbsolutePath(), attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** The frame, or {@code null}. Counts as a use of the key either way. */
+    BufferedImage get(Key key) {
+        Entry entry = entries.get(key);
+        policy.recordUse(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.image();
+    }
+
+    /** Whether the frame is cached, without counting a use. */
+    boolean contains(Key key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Offers a frame just decoded after {@link #get} missed it; the cache may keep
+     * it, or not.
+     */
+    void put(Key key, BufferedImage image) {
+        Entry entry = offHeap ? OffHeapEntry.of(image) : null;
+        if (entry == null) {
+            entry = new HeapEntry(image);
+        }
+        policy.put(key, entry);
+    }
+
+    /** Bytes of pixel data currently cached. */
+    long weightedSize() {
+        return policy.weightedSize();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Which frames stay, for the whole cache. Every change to {@code entries} is
+     * made here, under the lock.
+     */
+    private static final class Policy {
+        // Share of the cache given to the admission window
+        private static final int WINDOW_PERCENT = 10;
+        // Uses left waiting for the lock before further ones are dropped
+        private static final int MAX_PENDING_USES = 1024;
+
+        private final long windowMax;
+        private final long mainMax;
+        private final Map<Key, Entry> entries;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ConcurrentLinkedQueue<Key> pendingUses = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        // Guarded by lock
+        private final Map<Key, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<Key, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+        private long windowBytes;
+        private long mainBytes;
+
+        Policy(long maxBytes, Map<Key, Entry> entries) {
+            this.windowMax = maxBytes * WINDOW_PERCENT / 100;
+            this.mainMax = maxBytes - windowMax;
+            this.entries = entries;
+            // Sized for frames of about 256x256 pixels; bigger ones only make the sketch roomier
+            this.sketch = new FrequencySketch((int) Math.min(1 << 16, Math.max(1024, maxBytes / (256 * 256 * 4))));
+        }
+
+        /** Counts a lookup of {@code key} and, if it is cached, marks it as recently used. */
+        void recordUse(Key key) {
+            if (lock.tryLock()) {
+                try {
+                    applyPendingUses();
+                    use(key);
+                } finally {
+                    lock.unlock();
+                }
+            } else if (pendingCount.incrementAndGet() <= MAX_PENDING_USES) {
+                pendingUses.add(key);
+            } else {
+                pendingCount.decrementAndGet();
+            }
+        }
+
+        void put(Key key, Entry entry) {
+            lock.lock();
+            try {
+                applyPendingUses();
+                if (entry.weight() > windowMax + mainMax) {
+                    return;
+                }
+                remove(key);
+                window.put(key, entry);
+                entries.put(key, entry);
+                windowBytes += entry.weight();
+
+                Iterator<Map.Entry<Key, Entry>> leaving = window.entrySet().iterator();
+                while (windowBytes > windowMax && leaving.hasNext()) {
+                    Map.Entry<Key, Entry> candidate = leaving.next();
+                    leaving.remove();
+                    windowBytes -= candidate.getValue().weight();
+                    if (!admit(candidate.getKey(), candidate.getValue())) {
+                        entries.remove(candidate.getKey());
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long weightedSize() {
+            lock.lock();
+            try {
+                return windowBytes + mainBytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void applyPendingUses() {
+            Key key;
+            while ((key = pendingUses.poll()) != null) {
+                pendingCount.decrementAndGet();
+                use(key);
+            }
+        }
+
+        private void use(Key key) {
+            sketch.increment(key.hashCode());
+            if (window.get(key) == null) {
+                main.get(key);
+            }
+        }
+
+        /**
+         * Moves a frame out of the window into the main region if it wins against the
+         * frames it would evict; returns whether it did.
+         */
+        private boolean admit(Key key, Entry entry) {
+            int frequency = sketch.frequency(key.hashCode());
+            long needed = mainBytes + entry.weight() - mainMax;
+            Iterator<Map.Entry<Key, Entry>> victims = main.entrySet().iterator();
+            // Check first, so that a losing candidate doesn't cost the main region anything
+            long freed = 0;
+            while (freed < needed && victims.hasNext()) {
+                Map.Entry<Key, Entry> victim = victims.next();
+                if (sketch.frequency(victim.getKey().hashCode()) >= frequency) {
+                    return false;
+                }
+                freed += victim.getValue().weight();
+            }
+            if (freed < needed) {
+                return false;
+            }
+            victims = main.entrySet().iterator();
+            while (mainBytes + entry.weight() > mainMax) {
+                Map.Entry<Key, Entry> victim = victims.next();
+                mainBytes -= victim.getValue().weight();
+                entries.remove(victim.getKey());
+                victims.remove();
+            }
+            main.put(key, entry);
+            mainBytes += entry.weight();
+            return true;
+        }
+
+        private void remove(Key key) {
+            entries.remove(key);
+            Entry old = window.remove(key);
+            if (old != null) {
+                windowBytes -= old.weight();
+            }
+            old = main.remove(key);
+            if (old != null) {
+                mainBytes -= old.weight();
+            }
+        }
+    }
+
+    /**
+     * Approximate use counts of keys, four saturating 4-bit counters per key as in
+     * a count-min sketch. All counters are halved once the sketch has seen ten
+     * times as many uses as it has counters, so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = { 0x97CB3127, 0x2F3A8B61, 0x6F1E5C3D, 0x8B4D7A19 };
+        private static final int MAX_COUNT = 15;
+
+        private final byte[] counts;
+        private final int mask;
+        private final int resetAt;
+        private int additions;
+
+        FrequencySketch(int expectedKeys) {
+            int size = Integer.highestOneBit(Math.max(16, expectedKeys * 4 - 1)) << 1;
+            this.counts = new byte[size];
+            this.mask = size - 1;
+            this.resetAt = 10 * size;
+        }
+
+        void increment(int hash) {
+            for (int seed : SEEDS) {
+                int index = index(hash, seed);
+                if (counts[index] < MAX_COUNT) {
+                    counts[index]++;
+                }
+            }
+            if (++additions >= resetAt) {
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int seed : SEEDS) {
+                frequency = Math.min(frequency, counts[index(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int seed) {
+            int h = hash * seed;
+            return (h ^ h >>> 15) & mask;
+        }
+    }
+
+    private interface Entry {
+        BufferedImage image();
+
+        /** Bytes of pixel data. */
+        long weight();
+    }
+
+    private static final class HeapEntry implements Entry {
+        private final BufferedImage image;
+        private final long weight;
+
+        HeapEntry(BufferedImage image) {
+            this.image = image;
+            DataBuffer buffer = image.getRaster().getDataBuffer();
+            this.weight = (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType())
+                    / 8;
+        }
+
+        @Override
+        public BufferedImage image() {
+            return image;
+        }
+
+        @Override
+        public long weight() {
+            return weight;
+        }
+    }
+
+    /** The pixel array in a direct buffer; the image is rebuilt around a copy of it on each hit. */
+    private static final class OffHeapEntry implements Entry {
+        private final ColorModel colorModel;
+        private final SampleModel sampleModel;
+        private final int dataType;
+        private final int size;
+        private final ByteBuffer pixels;
+
+        private OffHeapEntry(ColorModel colorModel, SampleModel sampleModel, int dataType, int size,
+                ByteBuffer pixels) {
+            this.colorModel = colorModel;
+            this.sampleModel = sampleModel;
+            this.dataType = dataType;
+            this.size = size;
+            this.pixels = pixels;
+        }
+
+        /** Copies the image off-heap, or returns {@code null} if its raster isn't a plain single array. */
+        static OffHeapEntry of(BufferedImage image) {
+            WritableRaster raster = image.getRaster();
+            DataBuffer buffer = raster.getDataBuffer();
+            if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0
+                    || raster.getSampleModelTranslateY() != 0 || buffer.getNumBanks() != 1 || buffer.getOffset() != 0
+                    || image.getPropertyNames() != null) {
+                return null;
+            }
+            ByteBuffer pixels;
+            if (buffer instanceof DataBufferByte) {
+                byte[] data = ((DataBufferByte) buffer).getData();
+                pixels = ByteBuffer.allocateDirect(data.length);
+                pixels.put(data);
+            } else if (buffer instanceof DataBufferInt) {
+                int[] data = ((DataBufferInt) buffer).getData();
+                pixels = ByteBuffer.allocateDirect(data.length * 4).order(ByteOrder.nativeOrder());
+                pixels.asIntBuffer().put(data);
+            } else if (buffer instanceof DataBufferUShort) {
+                short[] data = ((DataBufferUShort) buffer).getData();
+                pixels = ByteBuffer.allocateDirect(data.length * 2).order(ByteOrder.nativeOrder());
+                pixels.asShortBuffer().put(data);
+            } else {
+                return null;
+            }
+            return new OffHeapEntry(image.getColorModel(), raster.getSampleModel(), buffer.getDataType(),
+                    buffer.getSize(), pixels);
+        }
+
+        @Override
+        public BufferedImage image() {
+            DataBuffer buffer;
+            switch (dataType) {
+                case DataBuffer.TYPE_BYTE: {
+                    byte[] data = new byte[size];
+                    pixels.duplicate().clear().get(data);
+                    buffer = new DataBufferByte(data, size);
+                    break;
+                }
+                case DataBuffer.TYPE_INT: {
+                    int[] data = new int[size];
+                    pixels.duplicate().order(ByteOrder.nativeOrder()).clear().asIntBuffer().get(data);
+                    buffer = new DataBufferInt(data, size);
+                    break;
+                }
+                default: {
+                    short[] data = new short[size];
+                    pixels.duplicate().order(ByteOrder.nativeOrder()).clear().asShortBuffer().get(data);
+                    buffer = new DataBufferUShort(data, size);
+                }
+            }
+            WritableRaster raster = Raster.createWritableRaster(sampleModel, buffer, null);
+            return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+        }
+
+        @Override
+        public long weight() {
+            return pixels.capacity();
+        }
+    }
+}
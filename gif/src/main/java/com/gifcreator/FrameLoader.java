@@ -0,0 +1,380 @@
+package com.gifcreator;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the source frames of one GIF.
+ *
+ * The bytes of the next few files are read ahead on virtual threads, so disk or
+ * network latency overlaps with decoding the current frame whether or not frames
+ * are decoded in parallel. Frames are decoded with a reader chosen once per file
+ * suffix and kept per thread; the JDK's own plugins come first, since the
+ * alternatives registered by other libraries are wrappers around them or slower.
+ *
+ * Images are decoded into the reader's native layout. Asking the PNG reader for a
+ * {@code TYPE_INT_ARGB} destination makes it convert pixel by pixel and doubles
+ * the decode time, while {@link Rasters#copyArgb} unpacks the native
+ * {@code TYPE_4BYTE_ABGR} and {@code TYPE_3BYTE_BGR} arrays directly.
+ *
+ * Decoded frames go through the {@link FrameCache}: a file it already holds is
+ * neither read ahead nor decoded again.
+ *
+ * For incremental builds the loader can also take the {@link BuildManifest} CRC
+ * of every file it reads, from the same bytes it decodes.
+ *
+ * {@link #load} may be called from several threads, in any order; files more than
+ * the read-ahead distance past the highest one requested so far are not touched.
+ */
+final class FrameLoader implements AutoCloseable {
+    static final int DEFAULT_READ_AHEAD = 4;
+
+    /** Where frame files are read; the threads only wait on the disk, so there is no point bounding them. */
+    static final ExecutorService IO = Executors.newVirtualThreadPerTaskExecutor();
+    private static final Map<String, Optional<ImageReaderSpi>> PREFERRED = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Map<ImageReaderSpi, ImageReader>> READERS = ThreadLocal
+            .withInitial(IdentityHashMap::new);
+
+    private final List<File> files;
+    private final Map<File, Integer> positions;
+    private final Future<byte[]>[] reads;
+    // Cache keys taken when the read was scheduled; null without a cache
+    private final FrameCache.Key[] keys;
+    private final FrameCache cache;
+    // BuildManifest CRCs of the files as read; null when not wanted
+    private final long[] checksums;
+    private final int readAhead;
+    private int scheduled;
+
+    FrameLoader(List<File> files, int readAhead) {
+        this(files, readAhead, FrameCache.shared());
+    }
+
+    /** @param cache where decoded frames are looked up and kept, or {@code null} for none */
+    FrameLoader(List<File> files, int readAhead, FrameCache cache) {
+        this(files, readAhead, cache, null);
+    }
+
+    /**
+     * @param checksums gets {@link BuildManifest#crc(byte[])} of each file read, at
+     *                  the file's index; entries of files served from the cache or
+     *                  not read at all are left alone. May be {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    FrameLoader(List<File> files, int readAhead, FrameCache cache, long[] checksums) {
+        this.files = files;
+        this.readAhead = Math.max(0, readAhead);
+        this.cache = cache;
+        this.checksums = checksums;
+        this.reads = new Future[files.size()];
+        this.keys = new FrameCache.Key[files.size()];
+        this.positions = new HashMap<>(files.size() * 2);
+        for (int i = files.size() - 1; i >= 0; i--) {
+            positions.put(files.get(i), i);
+        }
+    }
+
+    /**
+     * Decodes {@code file}, which must be one of the loader's files.
+     *
+     * @return the image, or {@code null} if it can't be read or decoded
+     */
+    BufferedImage load(File file) {
+        Integer position = positions.get(file);
+        if (position == null) {
+            return read(file, 0, 0, cache);
+        }
+        Future<byte[]> pending = claim(position);
+        FrameCache.Key key = keys[position];
+        if (key != null) {
+            BufferedImage cached = cache.get(key);
+            if (cached != null) {
+                if (pending != null) {
+                    pending.cancel(true);
+                }
+                return cached;
+            }
+        }
+        if (pending == null) {
+            // Cached when the read would have been scheduled but evicted since, claimed twice or closed
+            pending = IO.submit(() -> Files.readAllBytes(file.toPath()));
+        }
+        byte[] bytes;
+        try {
+            bytes = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            System.err.println("Erro ao ler imagem: " + file.getAbsolutePath());
+            return null;
+        }
+        if (checksums != null) {
+            checksums[position] = BuildManifest.crc(bytes);
+        }
+        BufferedImage image;
+        try {
+            image = decode(bytes, suffixOf(file));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Erro ao ler imagem: " + file.getAbsolutePath());
+            return null;
+        }
+        if (image != null && key != null) {
+            cache.put(key, image);
+        }
+        return image;
+    }
+
+    /** Cancels reads that were started ahead but never claimed. */
+    @Override
+    public synchronized void close() {
+        for (int i = 0; i < reads.length; i++) {
+            if (reads[i] != null) {
+                reads[i].cancel(true);
+                reads[i] = null;
+            }
+        }
+        scheduled = reads.length;
+    }
+
+    /**
+     * Schedules reads up to {@code readAhead} files past {@code position}, skipping
+     * files the cache holds, and takes that file's read.
+     *
+     * @return the read, or {@code null} if none was scheduled
+     */
+    private synchronized Future<byte[]> claim(int position) {
+        int until = Math.min(reads.length, position + readAhead + 1);
+        for (; scheduled < until; scheduled++) {
+            File next = files.get(scheduled);
+            FrameCache.Key key = cache == null ? null : FrameCache.keyOf(next);
+            keys[scheduled] = key;
+            if (key == null || !cache.contains(key)) {
+                reads[scheduled] = IO.submit(() -> Files.readAllBytes(next.toPath()));
+            }
+        }
+        Future<byte[]> read = reads[position];
+        reads[position] = null;
+        return read;
+    }
+
+    /** Reads and decodes one file on the calling thread, through the shared {@link FrameCache}. */
+    static BufferedImage read(File file) {
+        return read(file, 0, 0);
+    }
+
+    /**
+     * Reads {@code file} at no more than {@code maxWidth} x {@code maxHeight},
+     * skipping source rows and columns while decoding rather than scaling the
+     * full image afterwards. The result is between half and all of that size
+     * (for images larger than it), since the reader can only skip whole pixels.
+     * A bound of 0 reads the image at full size.
+     *
+     * A full-size frame already in the shared {@link FrameCache} is subsampled
+     * from there instead. Subsampled reads are not cached, but still count as a
+     * use of the frame, so previewing a sequence helps its frames into the cache
+     * when it is converted next.
+     */
+    static BufferedImage read(File file, int maxWidth, int maxHeight) {
+        return read(file, maxWidth, maxHeight, FrameCache.shared());
+    }
+
+    private static BufferedImage read(File file, int maxWidth, int maxHeight, FrameCache cache) {
+        boolean bounded = maxWidth > 0 && maxHeight > 0;
+        FrameCache.Key key = cache == null ? null : FrameCache.keyOf(file);
+        if (key != null) {
+            BufferedImage cached = cache.get(key);
+            if (cached != null) {
+                return bounded ? subsample(cached, maxWidth, maxHeight) : cached;
+            }
+        }
+        BufferedImage image;
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                throw new IIOException("Can't open " + file);
+            }
+            image = decode(input, suffixOf(file), maxWidth, maxHeight);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Erro ao ler imagem: " + file.getAbsolutePath());
+            return null;
+        }
+        if (image != null && key != null && !bounded) {
+            cache.put(key, image);
+        }
+        return image;
+    }
+
+    /** Every n-th pixel of a full-size frame, as the reader's source subsampling would pick them. */
+    private static BufferedImage subsample(BufferedImage image, int maxWidth, int maxHeight) {
+        int step = Math.max(Math.ceilDiv(image.getWidth(), maxWidth), Math.ceilDiv(image.getHeight(), maxHeight));
+        if (step <= 1) {
+            return image;
+        }
+        int width = Math.ceilDiv(image.getWidth(), step);
+        int height = Math.ceilDiv(image.getHeight(), step);
+        BufferedImage subsampled = Rasters.newArgb(width, height);
+        int[] pixels = Rasters.data(subsampled);
+        int[] row = new int[image.getWidth()];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y * step, row.length, 1, row, 0, row.length);
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = row[x * step];
+            }
+        }
+        return subsampled;
+    }
+
+    /** Decodes an image file already read into memory. */
+    static BufferedImage decode(byte[] bytes, String suffix) throws IOException {
+        return decode(new ByteArrayImageInputStream(bytes), suffix, 0, 0);
+    }
+
+    /**
+     * Decodes the first image of {@code input} with the preferred reader for
+     * {@code suffix}, or with whatever reader recognises the data if the suffix
+     * lies. Returns {@code null} when no reader does, like {@link ImageIO#read}.
+     */
+    private static BufferedImage decode(ImageInputStream input, String suffix, int maxWidth, int maxHeight)
+            throws IOException {
+        ImageReader reader = readerFor(input, suffix);
+        if (reader == null) {
+            return null;
+        }
+        try {
+            reader.setInput(input, true, true);
+            ImageReadParam param = null;
+            if (maxWidth > 0 && maxHeight > 0) {
+                int step = Math.max(Math.ceilDiv(reader.getWidth(0), maxWidth),
+                        Math.ceilDiv(reader.getHeight(0), maxHeight));
+                if (step > 1) {
+                    param = reader.getDefaultReadParam();
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+            }
+            return reader.read(0, param);
+        } finally {
+            reader.reset();
+        }
+    }
+
+    /**
+     * Width times height of the first image in {@code file}, read from its header
+     * without decoding any pixels, or -1 if no reader recognises it.
+     */
+    static long pixelCount(File file) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            ImageReader reader = input == null ? null : readerFor(input, suffixOf(file));
+            if (reader == null) {
+                return -1;
+            }
+            try {
+                reader.setInput(input, true, true);
+                return (long) reader.getWidth(0) * reader.getHeight(0);
+            } finally {
+                reader.reset();
+            }
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * This thread's reader for {@code suffix}, or for whatever format the data
+     * turns out to be if the suffix lies; {@code null} if no reader recognises it.
+     */
+    private static ImageReader readerFor(ImageInputStream input, String suffix) throws IOException {
+        ImageReaderSpi spi = PREFERRED.computeIfAbsent(suffix, FrameLoader::preferredReader).orElse(null);
+        if (spi == null || !spi.canDecodeInput(input)) {
+            spi = null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (readers.hasNext()) {
+                spi = readers.next().getOriginatingProvider();
+            }
+        }
+        if (spi == null) {
+            return null;
+        }
+
+        ImageReader reader = READERS.get().get(spi);
+        if (reader == null) {
+            reader = spi.createReaderInstance();
+            READERS.get().put(spi, reader);
+        }
+        return reader;
+    }
+
+    private static Optional<ImageReaderSpi> preferredReader(String suffix) {
+        ImageReaderSpi fallback = null;
+        Iterator<ImageReader> readers = ImageIO.getImageReadersBySuffix(suffix);
+        while (readers.hasNext()) {
+            ImageReaderSpi spi = readers.next().getOriginatingProvider();
+            if (spi.getClass().getName().startsWith("com.sun.imageio.")) {
+                return Optional.of(spi);
+            }
+            if (fallback == null) {
+                fallback = spi;
+            }
+        }
+        return Optional.ofNullable(fallback);
+    }
+
+    private static String suffixOf(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /** An {@link ImageInputStream} over bytes already in memory, without ImageIO's caching layer. */
+    private static final class ByteArrayImageInputStream extends ImageInputStreamImpl {
+        private final byte[] bytes;
+
+        ByteArrayImageInputStream(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            bitOffset = 0;
+            return streamPos < bytes.length ? bytes[(int) streamPos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            bitOffset = 0;
+            if (streamPos >= bytes.length) {
+                return -1;
+            }
+            int count = (int) Math.min(length, bytes.length - streamPos);
+            System.arraycopy(bytes, (int) streamPos, target, offset, count);
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return bytes.length;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.gifcreator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Runs a per-frame stage (decode, composite, quantize) on a pool while a single
+ * consumer receives the results strictly in input order.
+ *
+ * At most {@code window} frames are in flight at once: a new frame is only
+ * submitted after the oldest one has been handed to the consumer, so memory stays
+ * bounded no matter how long the sequence is. Pipelines of concurrent GIFs can
+ * also share a {@link Semaphore} of frame permits that caps the total across all
+ * of them.
+ *
+ * When a run fails, frames the consumer will never get go to a discard callback
+ * instead, so resources they hold, like {@link FrameArena} buffers, come back.
+ * That includes frames that were already done and ones still running, which are
+ * discarded by their own thread once they finish.
+ */
+final class FramePipeline<I, O> {
+
+    interface Stage<I, O> {
+        /** Returns {@code null} to drop the frame, e.g. when the file can't be decoded. */
+        O apply(I input) throws IOException;
+    }
+
+    interface Sink<O> {
+        void accept(O output) throws IOException;
+    }
+
+    private final ExecutorService executor;
+    private final int window;
+    private final Semaphore frameBudget;
+    private final ConversionMetrics metrics;
+
+    /**
+     * @param executor pool for the stage, or {@code null} to run everything on the
+     *                 calling thread
+     */
+    FramePipeline(ExecutorService executor, int window) {
+        this(executor, window, null);
+    }
+
+    /**
+     * @param frameBudget permits shared with other pipelines, one per frame in
+     *                    flight, or {@code null} for no global limit
+     */
+    FramePipeline(ExecutorService executor, int window, Semaphore frameBudget) {
+        this(executor, window, frameBudget, null);
+    }
+
+    /** @param metrics where the frames in flight are counted, or {@code null} */
+    FramePipeline(ExecutorService executor, int window, Semaphore frameBudget, ConversionMetrics metrics) {
+        this.executor = executor;
+        this.window = Math.max(1, window);
+        this.frameBudget = frameBudget;
+        this.metrics = metrics;
+    }
+
+    void run(List<I> inputs, Stage<I, O> stage, Sink<O> sink) throws IOException {
+        run(inputs, stage, sink, output -> {
+        });
+    }
+
+    /**
+     * @param discard takes each frame the stage produced that {@code sink} won't
+     *                get because the run failed; it may be called after this
+     *                method returns, from a pool thread
+     */
+    void run(List<I> inputs, Stage<I, O> stage, Sink<O> sink, Consumer<? super O> discard) throws IOException {
+        if (executor == null || window == 1) {
+            for (I input : inputs) {
+                O output = stage.apply(input);
+                if (output != null) {
+                    sink.accept(output);
+                }
+            }
+            return;
+        }
+
+        ArrayDeque<Pending<O>> inFlight = new ArrayDeque<>(window);
+        int next = 0;
+        try {
+            while (true) {
+                while (next < inputs.size() && inFlight.size() < window && reservePermit(inFlight.isEmpty())) {
+                    inFlight.add(submit(stage, inputs.get(next++), discard));
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+                O output;
+                try {
+                    output = await(inFlight.poll().future);
+                } finally {
+                    releasePermit();
+                }
+                if (output != null) {
+                    sink.accept(output);
+                }
+            }
+        } finally {
+            for (Pending<O> pending : inFlight) {
+                O done = pending.abandon();
+                pending.future.cancel(true);
+                if (done != null) {
+                    discard.accept(done);
+                }
+                releasePermit();
+            }
+        }
+    }
+
+    /** A frame in flight and, once the stage is done, its result. */
+    private static final class Pending<O> {
+        Future<O> future;
+        // Guarded by this
+        private O output;
+        private boolean abandoned;
+
+        /** Keeps the stage's result for the consumer, or discards it if the run gave up on it. */
+        synchronized boolean finished(O output) {
+            if (abandoned) {
+                return false;
+            }
+            this.output = output;
+            return true;
+        }
+
+        /** Gives up on the frame; returns its result if the stage had already produced one. */
+        synchronized O abandon() {
+            abandoned = true;
+            O done = output;
+            output = null;
+            return done;
+        }
+    }
+
+    /**
+     * Only blocks when this pipeline has nothing in flight. A pipeline that already
+     * holds frames keeps draining them instead, so permits always come back and
+     * pipelines sharing the budget can't deadlock on each other.
+     */
+    private boolean reservePermit(boolean mustWait) throws IOException {
+        if (frameBudget == null) {
+            return true;
+        }
+        if (!mustWait) {
+            return frameBudget.tryAcquire();
+        }
+        try {
+            frameBudget.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a frame slot", e);
+        }
+    }
+
+    private void releasePermit() {
+        if (frameBudget != null) {
+            frameBudget.release();
+        }
+        if (metrics != null) {
+            metrics.framesInFlight(-1);
+        }
+    }
+
+    private Pending<O> submit(Stage<I, O> stage, I input, Consumer<? super O> discard) {
+        if (metrics != null) {
+            metrics.framesInFlight(1);
+        }
+        Pending<O> pending = new Pending<>();
+        pending.future = executor.submit(() -> {
+            O output = stage.apply(input);
+            if (output != null && !pending.finished(output)) {
+                discard.accept(output);
+                return null;
+            }
+            return output;
+        });
+        return pending;
+    }
+
+    private static <O> O await(Future<O> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a frame", e);
+        } catch (CancellationException e) {
+            throw new IOException("Frame processing was cancelled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.nio.ByteBuffer;
+
+/**
+ * Reduces composited ARGB frames to indexed images with the {@link QuantizerType}
+ * and {@link Dithering} of a conversion.
+ *
+ * Frames with at most 256 distinct colours are always mapped exactly and never
+ * dithered. The default octree without dithering goes straight to
+ * {@link OctreeQuantizer}, whose histogram-bin mapping is faster than the
+ * nearest-colour cube of {@link PaletteMapper}.
+ */
+final class FrameQuantizer {
+    private final QuantizerType type;
+    private final ColorQuantizer quantizer;
+    private final Dithering dithering;
+
+    FrameQuantizer(QuantizerType type, Dithering dithering, int sampleFactor) {
+        this.type = type;
+        this.quantizer = type.create(sampleFactor);
+        this.dithering = dithering;
+    }
+
+    static FrameQuantizer of(ConversionOptions options) {
+        return new FrameQuantizer(options.getQuantizer(), options.getDithering(),
+                options.getNeuQuantSampleFactor());
+    }
+
+    ColorQuantizer colorQuantizer() {
+        return quantizer;
+    }
+
+    Dithering dithering() {
+        return dithering;
+    }
+
+    /** Whether frames come out exactly as {@link OctreeQuantizer} alone would make them. */
+    boolean isPlainOctree() {
+        return type == QuantizerType.OCTREE && dithering == Dithering.NONE;
+    }
+
+    BufferedImage quantize(BufferedImage image) {
+        return quantize(Rasters.argbPixels(image), image.getWidth(), image.getHeight());
+    }
+
+    /** Quantizes the first {@code width * height} pixels of {@code argb}. */
+    BufferedImage quantize(int[] argb, int width, int height) {
+        byte[] indices = new byte[width * height];
+        IndexColorModel colorModel = quantizeInto(argb, width, height, ByteBuffer.wrap(indices));
+        return OctreeQuantizer.toIndexedImage(indices, width, height, colorModel);
+    }
+
+    /**
+     * Like {@link #quantize(int[], int, int)}, writing the indices into the start
+     * of {@code indices}, which may be a reused buffer larger than the frame.
+     *
+     * @return the palette the indices refer to
+     */
+    IndexColorModel quantizeInto(int[] argb, int width, int height, ByteBuffer indices) {
+        if (isPlainOctree()) {
+            return new OctreeQuantizer().quantizeInto(argb, width, height, indices);
+        }
+        int pixelCount = width * height;
+        boolean hasTransparency = false;
+        for (int i = 0; i < pixelCount; i++) {
+            if (argb[i] >>> 24 < 0x80) {
+                hasTransparency = true;
+                break;
+            }
+        }
+        int colorLimit = hasTransparency ? OctreeQuantizer.MAX_COLORS - 1 : OctreeQuantizer.MAX_COLORS;
+
+        int[] palette = OctreeQuantizer.exactPalette(argb, pixelCount, colorLimit, indices);
+        boolean exact = palette != null;
+        if (!exact) {
+            palette = quantizer.palette(argb, pixelCount, colorLimit);
+        }
+
+        int transparentIndex = -1;
+        if (hasTransparency) {
+            transparentIndex = palette.length;
+            int[] withTransparent = new int[palette.length + 1];
+            System.arraycopy(palette, 0, withTransparent, 0, palette.length);
+            palette = withTransparent;
+        }
+        if (exact) {
+            if (hasTransparency) {
+                for (int i = 0; i < pixelCount; i++) {
+                    if (argb[i] >>> 24 < 0x80) {
+                        indices.put(i, (byte) transparentIndex);
+                    }
+                }
+            }
+        } else {
+            new PaletteMapper(palette, transparentIndex, dithering).map(argb, width, height, indices);
+        }
+        return OctreeQuantizer.colorModel(palette, transparentIndex);
+    }
+}
@@ -0,0 +1,53 @@
+package com.gifcreator;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * One GIF written by {@link MultiConvert}, for Flight Recorder. The event's own
+ * duration covers the whole GIF; the stage fields add up the time its frames
+ * spent in each stage, which exceeds the duration when frames run in parallel.
+ *
+ * Disabled unless a recording enables it, and then committed once per GIF, so
+ * it costs nothing per frame. Consume it with a {@code RecordingStream} or
+ * {@code jfr print --events com.gifcreator.GifConversion}.
+ */
+@Name("com.gifcreator.GifConversion")
+@Label("GIF Conversion")
+@Category("GIF Creator")
+@Description("A GIF written from an image sequence")
+final class GifConversionEvent extends Event {
+    @Label("Source")
+    String source;
+
+    @Label("Output")
+    String output;
+
+    @Label("Frames")
+    int frames;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytes;
+
+    @Label("Decode Time")
+    @Timespan
+    long decodeNanos;
+
+    @Label("Composite Time")
+    @Timespan
+    long compositeNanos;
+
+    @Label("Quantize Time")
+    @Timespan
+    long quantizeNanos;
+
+    @Label("Encode Time")
+    @Timespan
+    long encodeNanos;
+}
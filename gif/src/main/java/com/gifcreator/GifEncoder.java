@@ -0,0 +1,45 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an animated GIF one frame at a time. Implementations are single-use:
+ * {@link #start}, any number of {@link #addFrame} calls, then {@link #finish}.
+ *
+ * Frames may be {@code TYPE_BYTE_INDEXED} images, which are stored with their own
+ * palette, or any other type, which the encoder reduces to 256 colours first.
+ * Pixels with alpha below 128 become transparent.
+ */
+public interface GifEncoder {
+
+    /**
+     * @param out       destination; the encoder never closes it
+     * @param loopCount 0 to loop forever, N to repeat N times, negative to omit the
+     *                  NETSCAPE loop extension
+     */
+    void start(OutputStream out, int loopCount) throws IOException;
+
+    /**
+     * Like {@link #start(OutputStream, int)}, for a sequence whose frames are
+     * mostly indexed with {@code globalPalette} (see {@link GlobalPalette}). Encoders
+     * that support it store that palette once as the global colour table and write
+     * frames using exactly that colour model without a local one; the default
+     * ignores it.
+     */
+    default void start(OutputStream out, int loopCount, IndexColorModel globalPalette) throws IOException {
+        start(out, loopCount);
+    }
+
+    /**
+     * Writes or queues {@code frame}. Encoders don't keep the frame once this
+     * returns, so the caller may reuse or free its pixels, as {@link FrameArena}
+     * does.
+     */
+    void addFrame(BufferedImage frame, int delayMs) throws IOException;
+
+    /** Writes the trailer and flushes {@code out}. */
+    void finish() throws IOException;
+}
@@ -0,0 +1,24 @@
+package com.gifcreator;
+
+/** Available {@link GifEncoder} back ends. */
+public enum GifEncoderType {
+    /** In-house encoder working on primitive arrays, see {@link FastGifEncoder}. */
+    FAST,
+    /** The JDK {@code ImageWriter} driven through {@link GifSequenceWriter}. */
+    IMAGEIO;
+
+    public GifEncoder create() {
+        return create(false);
+    }
+
+    /** @param deltaFrames store only what changed between frames, see {@link DeltaFrames} */
+    public GifEncoder create(boolean deltaFrames) {
+        switch (this) {
+            case IMAGEIO:
+                return new ImageIoGifEncoder(deltaFrames);
+            case FAST:
+            default:
+                return new FastGifEncoder(deltaFrames);
+        }
+    }
+}
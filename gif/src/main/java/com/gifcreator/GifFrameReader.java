@@ -0,0 +1,279 @@
+package com.gifcreator;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Reads an animated GIF one frame at a time, composited the way a viewer shows
+ * it, instead of decoding the whole file up front like
+ * {@code com.madgag.gif.fmsware.GifDecoder} does.
+ *
+ * Frames come from the JDK's GIF {@link ImageReader} in forward-only mode, so the
+ * reader drops each frame's data once it has been read. Each frame is drawn onto
+ * one full-size canvas at its offset, honouring its transparent index and the
+ * previous frame's disposal method. Memory therefore holds the canvas, a second
+ * canvas for "restore to previous", and the frame being decoded, however many
+ * frames the GIF has. "Restore to background" clears to transparent, as browsers
+ * do.
+ *
+ * The image returned by {@link #next()} is the shared canvas and is only valid
+ * until the following call.
+ */
+final class GifFrameReader implements Closeable {
+    private static final int DISPOSAL_RESTORE_BACKGROUND = 2;
+    private static final int DISPOSAL_RESTORE_PREVIOUS = 3;
+
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int width;
+    private final int height;
+    private final BufferedImage canvas;
+    private final int[] pixels;
+    private int[] saved;
+    private int index;
+    private int loopCount = -1;
+    private int delayMs;
+    // How the frame returned last must be cleared before the next one is drawn
+    private int pendingDisposal;
+    private int pendingLeft;
+    private int pendingTop;
+    private int pendingWidth;
+    private int pendingHeight;
+
+    private GifFrameReader(ImageInputStream input, ImageReader reader) throws IOException {
+        this.input = input;
+        this.reader = reader;
+        reader.setInput(input, true, false);
+
+        int screenWidth = 0;
+        int screenHeight = 0;
+        IIOMetadata streamMetadata = reader.getStreamMetadata();
+        if (streamMetadata != null) {
+            IIOMetadataNode root = (IIOMetadataNode) streamMetadata
+                    .getAsTree(streamMetadata.getNativeMetadataFormatName());
+            IIOMetadataNode screen = child(root, "LogicalScreenDescriptor");
+            if (screen != null) {
+                screenWidth = intAttribute(screen, "logicalScreenWidth", 0);
+                screenHeight = intAttribute(screen, "logicalScreenHeight", 0);
+            }
+        }
+        // Some encoders leave the logical screen at 0x0 and rely on the first frame
+        if (screenWidth <= 0 || screenHeight <= 0) {
+            screenWidth = Math.max(screenWidth, reader.getWidth(0));
+            screenHeight = Math.max(screenHeight, reader.getHeight(0));
+        }
+        this.width = screenWidth;
+        this.height = screenHeight;
+        this.canvas = Rasters.newArgb(width, height);
+        this.pixels = Rasters.data(canvas);
+    }
+
+    /** Opens {@code file}; the caller must {@link #close()} the reader. */
+    static GifFrameReader open(File file) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            throw new IIOException("Não foi possível abrir: " + file.getAbsolutePath());
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("gif");
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IIOException("No GIF Image Readers Found");
+        }
+        ImageReader reader = readers.next();
+        try {
+            return new GifFrameReader(input, reader);
+        } catch (IOException | RuntimeException e) {
+            reader.dispose();
+            input.close();
+            throw e;
+        }
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    /**
+     * The NETSCAPE loop count of the GIF: 0 to loop forever, -1 if the file has
+     * no loop extension. Known once the first frame has been read.
+     */
+    int loopCount() {
+        return loopCount;
+    }
+
+    /** Delay of the frame returned last, in milliseconds. */
+    int delayMs() {
+        return delayMs;
+    }
+
+    /**
+     * Decodes the next frame onto the canvas.
+     *
+     * @return the canvas as a {@code TYPE_INT_ARGB} image, or {@code null} after
+     *         the last frame
+     */
+    BufferedImage next() throws IOException {
+        BufferedImage frame;
+        IIOMetadata metadata;
+        try {
+            metadata = reader.getImageMetadata(index);
+            frame = reader.read(index);
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+        index++;
+
+        dispose();
+
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(metadata.getNativeMetadataFormatName());
+        IIOMetadataNode descriptor = child(root, "ImageDescriptor");
+        int left = descriptor == null ? 0 : intAttribute(descriptor, "imageLeftPosition", 0);
+        int top = descriptor == null ? 0 : intAttribute(descriptor, "imageTopPosition", 0);
+        IIOMetadataNode control = child(root, "GraphicControlExtension");
+        int disposal = 0;
+        delayMs = 0;
+        if (control != null) {
+            disposal = disposalCode(control.getAttribute("disposalMethod"));
+            delayMs = intAttribute(control, "delayTime", 0) * 10;
+        }
+        if (index == 1) {
+            loopCount = loopCountOf(root);
+        }
+
+        int frameWidth = Math.min(frame.getWidth(), width - left);
+        int frameHeight = Math.min(frame.getHeight(), height - top);
+        if (disposal == DISPOSAL_RESTORE_PREVIOUS) {
+            if (saved == null) {
+                saved = new int[pixels.length];
+            }
+            System.arraycopy(pixels, 0, saved, 0, pixels.length);
+        }
+        draw(frame, left, top, frameWidth, frameHeight);
+
+        pendingDisposal = disposal;
+        pendingLeft = left;
+        pendingTop = top;
+        pendingWidth = Math.max(0, frameWidth);
+        pendingHeight = Math.max(0, frameHeight);
+        return canvas;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.dispose();
+        input.close();
+    }
+
+    /** Applies the disposal of the frame returned last. */
+    private void dispose() {
+        if (pendingDisposal == DISPOSAL_RESTORE_BACKGROUND) {
+            for (int y = pendingTop; y < pendingTop + pendingHeight; y++) {
+                Arrays.fill(pixels, y * width + pendingLeft, y * width + pendingLeft + pendingWidth, 0);
+            }
+        } else if (pendingDisposal == DISPOSAL_RESTORE_PREVIOUS && saved != null) {
+            System.arraycopy(saved, 0, pixels, 0, pixels.length);
+        }
+        pendingDisposal = 0;
+    }
+
+    /** Draws the opaque pixels of {@code frame} at {@code left}, {@code top}. */
+    private void draw(BufferedImage frame, int left, int top, int frameWidth, int frameHeight) {
+        if (frameWidth <= 0 || frameHeight <= 0) {
+            return;
+        }
+        if (frame.getColorModel() instanceof IndexColorModel) {
+            IndexColorModel colorModel = (IndexColorModel) frame.getColorModel();
+            int[] lookup = new int[256];
+            colorModel.getRGBs(lookup);
+            byte[] indices = FastGifEncoder.indices(frame.getRaster(), frame.getWidth(), frame.getHeight());
+            for (int y = 0; y < frameHeight; y++) {
+                int from = y * frame.getWidth();
+                int to = (top + y) * width + left;
+                for (int x = 0; x < frameWidth; x++) {
+                    int argb = lookup[indices[from + x] & 0xFF];
+                    if (argb >>> 24 != 0) {
+                        pixels[to + x] = argb;
+                    }
+                }
+            }
+            return;
+        }
+        int[] row = new int[frameWidth];
+        for (int y = 0; y < frameHeight; y++) {
+            frame.getRGB(0, y, frameWidth, 1, row, 0, frameWidth);
+            int to = (top + y) * width + left;
+            for (int x = 0; x < frameWidth; x++) {
+                if (row[x] >>> 24 != 0) {
+                    pixels[to + x] = row[x];
+                }
+            }
+        }
+    }
+
+    private static int loopCountOf(IIOMetadataNode root) {
+        IIOMetadataNode extensions = child(root, "ApplicationExtensions");
+        if (extensions == null) {
+            return -1;
+        }
+        for (int i = 0; i < extensions.getLength(); i++) {
+            IIOMetadataNode extension = (IIOMetadataNode) extensions.item(i);
+            if ("NETSCAPE".equals(extension.getAttribute("applicationID"))
+                    && extension.getUserObject() instanceof byte[]) {
+                byte[] data = (byte[]) extension.getUserObject();
+                if (data.length >= 3 && data[0] == 1) {
+                    return (data[1] & 0xFF) | (data[2] & 0xFF) << 8;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int disposalCode(String method) {
+        switch (method) {
+            case "doNotDispose":
+                return 1;
+            case "restoreToBackgroundColor":
+                return DISPOSAL_RESTORE_BACKGROUND;
+            case "restoreToPrevious":
+                return DISPOSAL_RESTORE_PREVIOUS;
+            default:
+                return 0;
+        }
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode parent, String name) {
+        for (int i = 0; i < parent.getLength(); i++) {
+            if (parent.item(i).getNodeName().equals(name)) {
+                return (IIOMetadataNode) parent.item(i);
+            }
+        }
+        return null;
+    }
+
+    private static int intAttribute(IIOMetadataNode node, String name, int fallback) {
+        String value = node.getAttribute(name);
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.gifcreator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Where encoded GIF bytes go. The encoders emit many small writes (block headers,
+ * 255-byte LZW sub-blocks, metadata), so output is gathered in a large buffer
+ * and handed to the OS in full chunks: one write call per {@value #BUFFER_SIZE}
+ * bytes of GIF, which matters most on network filesystems.
+ */
+final class GifOutput {
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    // Direct buffers are costly to allocate and free, so idle ones are kept for the next file
+    private static final BlockingQueue<ByteBuffer> POOL = new ArrayBlockingQueue<>(
+            2 * Runtime.getRuntime().availableProcessors());
+
+    private GifOutput() {
+    }
+
+    /**
+     * Opens {@code path} for writing, replacing any previous contents, through a
+     * {@link FileChannel} and a pooled direct buffer. Closing the stream writes
+     * what is left and gives the buffer back.
+     */
+    static OutputStream toFile(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        return new ChannelStream(channel, buffer);
+    }
+
+    private static final class ChannelStream extends OutputStream {
+        private final FileChannel channel;
+        private ByteBuffer buffer;
+
+        ChannelStream(FileChannel channel, ByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int chunk = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        /** Only drains the buffer; GIFs are written whole, so there is no point forcing data to disk. */
+        @Override
+        public void flush() throws IOException {
+            if (buffer == null) {
+                throw new IOException("Stream closed");
+            }
+            drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer == null) {
+                return;
+            }
+            try {
+                drain();
+            } finally {
+                channel.close();
+                buffer.clear();
+                POOL.offer(buffer);
+                buffer = null;
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Counts the bytes passed on to another stream. Not thread-safe: a GIF is
+     * only ever written by one thread at a time.
+     */
+    static final class Counted extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        Counted(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        long count() {
+            return count;
+        }
+    }
+
+    /**
+     * Collects a GIF in memory, for callers that upload or cache it instead of
+     * writing a file. {@link #toByteBuffer()} exposes the bytes without copying.
+     */
+    static final class Memory extends OutputStream {
+        private byte[] bytes;
+        private int size;
+
+        Memory() {
+            this(64 * 1024);
+        }
+
+        Memory(int initialCapacity) {
+            bytes = new byte[Math.max(16, initialCapacity)];
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(size + 1);
+            bytes[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] source, int offset, int length) {
+            ensureCapacity(size + length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /** A read-only view of the bytes written so far. */
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(bytes, 0, size).slice().asReadOnlyBuffer();
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+    }
+}
@@ -5,60 +5,213 @@ import javax.imageio.metadata.*;
 import javax.imageio.stream.*;
 import java.awt.image.*;
 import java.io.*;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 public class GifSequenceWriter {
+    // Names used by the javax_imageio_gif_image_1.0 metadata, indexed by GIF disposal code
+    private static final String[] DISPOSAL_METHODS = { "none", "doNotDispose", "restoreToBackgroundColor",
+            "restoreToPrevious" };
+
+    // Idle writers kept by pooled(); more than this many are simply dropped
+    private static final int POOL_CAPACITY = 2 * Runtime.getRuntime().availableProcessors();
+    private static final BlockingQueue<Resources> POOL = new ArrayBlockingQueue<>(POOL_CAPACITY);
+    private static final int MAX_TEMPLATES = 64;
+
     protected ImageWriter gifWriter;
     protected ImageWriteParam imageWriteParam;
     protected IIOMetadata imageMetaData;
     protected ImageOutputStream outputStream;
+    private final Resources resources;
+    private final boolean pooled;
+    private final int imageType;
+    private final int loopCount;
 
     public GifSequenceWriter(ImageOutputStream outputStream, int imageType, int timeBetweenFramesMS, boolean loop)
             throws IOException {
+        this(outputStream, imageType, timeBetweenFramesMS, loop ? 0 : 1);
+    }
+
+    /**
+     * @param loopCount 0 to loop forever, N to play N times, negative to leave out
+     *                  the NETSCAPE application extension
+     */
+    public GifSequenceWriter(ImageOutputStream outputStream, int imageType, int timeBetweenFramesMS, int loopCount)
+            throws IOException {
+        this(outputStream, imageType, timeBetweenFramesMS, loopCount, new Resources(getWriter()), false);
+    }
+
+    private GifSequenceWriter(ImageOutputStream outputStream, int imageType, int timeBetweenFramesMS,
+            int loopCount, Resources resources, boolean pooled) throws IOException {
         this.outputStream = outputStream;
-        gifWriter = getWriter();
+        this.imageType = imageType;
+        this.loopCount = loopCount;
+        this.resources = resources;
+        this.pooled = pooled;
+        gifWriter = resources.writer;
         gifWriter.setOutput(outputStream); // Set the output for gifWriter
-        imageWriteParam = gifWriter.getDefaultWriteParam();
-        ImageTypeSpecifier imageTypeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(imageType);
+        imageWriteParam = resources.writeParam;
 
-        imageMetaData = gifWriter.getDefaultImageMetadata(imageTypeSpecifier, imageWriteParam);
-
-        configureRootMetadata(timeBetweenFramesMS, loop);
+        imageMetaData = metadataFor(timeBetweenFramesMS, -1, 0, 0, 0, 1, 1);
 
         gifWriter.prepareWriteSequence(null);
     }
 
+    /**
+     * Like the constructor, but takes the {@link ImageWriter} and the frame metadata
+     * templates built for earlier GIFs from a shared pool, and gives them back on
+     * {@link #close()}. Saves the service lookup and the metadata tree round trips
+     * that otherwise dominate when writing many short GIFs.
+     */
+    static GifSequenceWriter pooled(ImageOutputStream outputStream, int imageType, int timeBetweenFramesMS,
+            int loopCount) throws IOException {
+        Resources resources = POOL.poll();
+        if (resources == null) {
+            resources = new Resources(getWriter());
+        }
+        return new GifSequenceWriter(outputStream, imageType, timeBetweenFramesMS, loopCount, resources, true);
+    }
+
     public void writeToSequence(BufferedImage img) throws IOException {
         gifWriter.writeToSequence(new IIOImage(img, null, imageMetaData), imageWriteParam);
     }
 
+    /**
+     * Writes a frame with its own delay. Indexed frames whose colour model has a
+     * transparent entry are written with that index marked transparent and are
+     * cleared to the background afterwards.
+     */
+    public void writeToSequence(BufferedImage img, int delayMS) throws IOException {
+        int transparentIndex = transparentIndexOf(img);
+        writeToSequence(img, 0, 0, delayMS, transparentIndex >= 0 ? 2 : 0);
+    }
+
+    /**
+     * Writes a frame placed at {@code left}, {@code top} of the canvas with an
+     * explicit GIF disposal method (0 unspecified, 1 keep, 2 restore to background,
+     * 3 restore to previous). The transparent index comes from the colour model of
+     * indexed frames.
+     */
+    public void writeToSequence(BufferedImage img, int left, int top, int delayMS, int disposal)
+            throws IOException {
+        imageMetaData = metadataFor(delayMS, transparentIndexOf(img), disposal, left, top, img.getWidth(),
+                img.getHeight());
+        writeToSequence(img);
+    }
+
+    private static int transparentIndexOf(BufferedImage img) {
+        if (img.getColorModel() instanceof IndexColorModel) {
+            return ((IndexColorModel) img.getColorModel()).getTransparentPixel();
+        }
+        return -1;
+    }
+
     public void close() throws IOException {
         gifWriter.endWriteSequence();
         // Do not close the outputStream here
+        if (pooled) {
+            gifWriter.reset();
+            POOL.offer(resources);
+        }
     }
 
-    private void configureRootMetadata(int timeBetweenFramesMS, boolean loop) throws IIOInvalidTreeException {
-        String metaFormatName = imageMetaData.getNativeMetadataFormatName();
-        IIOMetadataNode root = (IIOMetadataNode) imageMetaData.getAsTree(metaFormatName);
+    /**
+     * The metadata for a frame, built once per (delay, loop, disposal,
+     * transparency) and kept with the writer. Only the frame bounds are patched in
+     * place, through a merge of the image descriptor alone, and only when they
+     * differ from the last frame written with the template.
+     */
+    private IIOMetadata metadataFor(int delayMS, int transparentIndex, int disposal, int left, int top, int width,
+            int height) throws IIOInvalidTreeException {
+        TemplateKey key = new TemplateKey(imageType, delayMS, loopCount, disposal, transparentIndex);
+        Template template = resources.templates.get(key);
+        if (template == null) {
+            if (resources.templates.size() == MAX_TEMPLATES) {
+                resources.templates.clear();
+            }
+            template = new Template(buildMetadata(key));
+            resources.templates.put(key, template);
+        }
+        if (template.left != left || template.top != top || template.width != width
+                || template.height != height) {
+            String metaFormatName = template.metadata.getNativeMetadataFormatName();
+            IIOMetadataNode root = new IIOMetadataNode(metaFormatName);
+            IIOMetadataNode imageDescriptorNode = new IIOMetadataNode("ImageDescriptor");
+            imageDescriptorNode.setAttribute("imageLeftPosition", Integer.toString(left));
+            imageDescriptorNode.setAttribute("imageTopPosition", Integer.toString(top));
+            imageDescriptorNode.setAttribute("imageWidth", Integer.toString(width));
+            imageDescriptorNode.setAttribute("imageHeight", Integer.toString(height));
+            imageDescriptorNode.setAttribute("interlaceFlag", "FALSE");
+            root.appendChild(imageDescriptorNode);
+            template.metadata.mergeTree(metaFormatName, root);
+            template.left = left;
+            template.top = top;
+            template.width = width;
+            template.height = height;
+        }
+        return template.metadata;
+    }
+
+    private IIOMetadata buildMetadata(TemplateKey key) throws IIOInvalidTreeException {
+        ImageTypeSpecifier imageTypeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(key.imageType());
+        IIOMetadata metadata = gifWriter.getDefaultImageMetadata(imageTypeSpecifier, imageWriteParam);
+        String metaFormatName = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(metaFormatName);
 
         IIOMetadataNode graphicsControlExtensionNode = getNode(root, "GraphicControlExtension");
-        graphicsControlExtensionNode.setAttribute("disposalMethod", "none");
+        boolean transparent = key.transparentIndex() >= 0;
+        graphicsControlExtensionNode.setAttribute("disposalMethod", DISPOSAL_METHODS[key.disposal()]);
         graphicsControlExtensionNode.setAttribute("userInputFlag", "FALSE");
-        graphicsControlExtensionNode.setAttribute("transparentColorFlag", "FALSE");
-        graphicsControlExtensionNode.setAttribute("delayTime", Integer.toString(timeBetweenFramesMS / 10));
-        graphicsControlExtensionNode.setAttribute("transparentColorIndex", "0");
+        graphicsControlExtensionNode.setAttribute("transparentColorFlag", transparent ? "TRUE" : "FALSE");
+        graphicsControlExtensionNode.setAttribute("transparentColorIndex",
+                Integer.toString(Math.max(key.transparentIndex(), 0)));
+        graphicsControlExtensionNode.setAttribute("delayTime", Integer.toString(key.delayMS() / 10));
+
+        if (key.loopCount() >= 0) {
+            IIOMetadataNode appExtensionsNode = getNode(root, "ApplicationExtensions");
+            IIOMetadataNode child = new IIOMetadataNode("ApplicationExtension");
+            child.setAttribute("applicationID", "NETSCAPE");
+            child.setAttribute("authenticationCode", "2.0");
+
+            int loopCount = key.loopCount();
+            child.setUserObject(
+                    new byte[] { 0x1, (byte) (loopCount & 0xFF), (byte) ((loopCount >> 8) & 0xFF) });
+            appExtensionsNode.appendChild(child);
+        }
 
-        IIOMetadataNode appExtensionsNode = getNode(root, "ApplicationExtensions");
-        IIOMetadataNode child = new IIOMetadataNode("ApplicationExtension");
-        child.setAttribute("applicationID", "NETSCAPE");
-        child.setAttribute("authenticationCode", "2.0");
+        metadata.setFromTree(metaFormatName, root);
+        return metadata;
+    }
 
-        int loopContinuously = loop ? 0 : 1;
-        child.setUserObject(
-                new byte[] { 0x1, (byte) (loopContinuously & 0xFF), (byte) ((loopContinuously >> 8) & 0xFF) });
-        appExtensionsNode.appendChild(child);
+    private record TemplateKey(int imageType, int delayMS, int loopCount, int disposal, int transparentIndex) {
+    }
 
-        imageMetaData.setFromTree(metaFormatName, root);
+    private static final class Template {
+        final IIOMetadata metadata;
+        // Bounds in the metadata; the defaults describe no frame, so the first use always patches them
+        int left = -1;
+        int top = -1;
+        int width;
+        int height;
+
+        Template(IIOMetadata metadata) {
+            this.metadata = metadata;
+        }
+    }
+
+    /** What a pooled writer carries from one GIF to the next. */
+    private static final class Resources {
+        final ImageWriter writer;
+        final ImageWriteParam writeParam;
+        final Map<TemplateKey, Template> templates = new HashMap<>();
+
+        Resources(ImageWriter writer) {
+            this.writer = writer;
+            this.writeParam = writer.getDefaultWriteParam();
+        }
     }
 
     private static IIOMetadataNode getNode(IIOMetadataNode rootNode, String nodeName) {
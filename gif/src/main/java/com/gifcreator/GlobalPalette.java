@@ -0,0 +1,195 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+
+/**
+ * One palette shared by every frame of a GIF, built once from a sample of the
+ * sequence's pixels instead of quantizing each frame on its own.
+ *
+ * Pixels are mapped through an inverse-colour cube: one byte per 5-bit-per-channel
+ * colour cell, holding the palette entry nearest to the cell centre. When the
+ * sampled frames use few enough colours the palette is exact, and pixels that
+ * match a palette colour keep it even if the cube cell points elsewhere. A
+ * transparent entry is reserved if the samples contain transparent pixels or the
+ * caller asks for one (delta frames need it for unchanged pixels); otherwise
+ * transparent pixels are mapped by their colour.
+ *
+ * With a {@link Dithering} other than {@link Dithering#NONE}, frames are mapped
+ * through a {@link PaletteMapper} instead, unless the palette is exact.
+ *
+ * Every image returned by {@link #map} shares {@link #colorModel()}, which lets
+ * {@link GifEncoder#start(java.io.OutputStream, int, IndexColorModel)} store the
+ * palette once as the global colour table.
+ */
+final class GlobalPalette {
+    private static final int EXACT_TABLE_SIZE = 1024;
+
+    private final int[] palette;
+    private final int transparentIndex;
+    private final IndexColorModel colorModel;
+    private final byte[] cube;
+    // Null when pixels go through the cube and exact table directly
+    private final PaletteMapper mapper;
+    // Open-addressing rgb -> index table, only for exact palettes
+    private final int[] exactKeys;
+    private final byte[] exactIndices;
+
+    private GlobalPalette(int[] colors, boolean exact, boolean transparent, Dithering dithering) {
+        int colorCount = colors.length;
+        this.transparentIndex = transparent ? colorCount : -1;
+        this.palette = new int[transparent ? colorCount + 1 : colorCount];
+        System.arraycopy(colors, 0, palette, 0, colorCount);
+
+        this.cube = PaletteMapper.inverseCube(colors, colorCount);
+        this.mapper = exact || dithering == Dithering.NONE ? null
+                : new PaletteMapper(palette, transparentIndex, dithering);
+        if (exact) {
+            exactKeys = new int[EXACT_TABLE_SIZE];
+            exactIndices = new byte[EXACT_TABLE_SIZE];
+            for (int i = 0; i < colorCount; i++) {
+                int slot = exactSlot(colors[i]);
+                while (exactKeys[slot] != 0) {
+                    slot = (slot + 1) & (EXACT_TABLE_SIZE - 1);
+                }
+                exactKeys[slot] = (colors[i] & 0xFFFFFF) + 1;
+                exactIndices[slot] = (byte) i;
+            }
+        } else {
+            exactKeys = null;
+            exactIndices = null;
+        }
+
+        byte[] r = new byte[palette.length];
+        byte[] g = new byte[palette.length];
+        byte[] b = new byte[palette.length];
+        for (int i = 0; i < palette.length; i++) {
+            r[i] = (byte) (palette[i] >> 16);
+            g[i] = (byte) (palette[i] >> 8);
+            b[i] = (byte) palette[i];
+        }
+        this.colorModel = new IndexColorModel(8, palette.length, r, g, b, transparentIndex);
+    }
+
+    /**
+     * Builds the palette from {@code count} ARGB samples, typically a strided
+     * subset of several frames.
+     */
+    static GlobalPalette fromSamples(int[] samples, int count, boolean reserveTransparent) {
+        return fromSamples(samples, count, reserveTransparent, new OctreeQuantizer(), Dithering.NONE);
+    }
+
+    /**
+     * Builds the palette from {@code count} ARGB samples with {@code quantizer},
+     * unless they fit in an exact palette, and maps frames with {@code dithering}.
+     */
+    static GlobalPalette fromSamples(int[] samples, int count, boolean reserveTransparent,
+            ColorQuantizer quantizer, Dithering dithering) {
+        boolean transparent = reserveTransparent;
+        for (int i = 0; i < count; i++) {
+            if (samples[i] >>> 24 < 0x80) {
+                transparent = true;
+                break;
+            }
+        }
+        int limit = transparent ? OctreeQuantizer.MAX_COLORS - 1 : OctreeQuantizer.MAX_COLORS;
+        int[] colors = OctreeQuantizer.exactPalette(samples, count, limit, null);
+        boolean exact = colors != null;
+        if (!exact) {
+            colors = quantizer.palette(samples, count, limit);
+        }
+        return new GlobalPalette(colors, exact, transparent, dithering);
+    }
+
+    /**
+     * Samples up to {@code maxSamplesPerFrame} evenly strided pixels from each of at
+     * most {@code maxFrames} frames spread over the sequence, and builds the palette
+     * from them.
+     */
+    static GlobalPalette fromFrames(BufferedImage[] frames, int maxFrames, int maxSamplesPerFrame,
+            boolean reserveTransparent) {
+        return fromFrames(frames, maxFrames, maxSamplesPerFrame, reserveTransparent, new OctreeQuantizer(),
+                Dithering.NONE);
+    }
+
+    static GlobalPalette fromFrames(BufferedImage[] frames, int maxFrames, int maxSamplesPerFrame,
+            boolean reserveTransparent, ColorQuantizer quantizer, Dithering dithering) {
+        int sampled = Math.min(maxFrames, frames.length);
+        int[] samples = new int[sampled * maxSamplesPerFrame];
+        int count = 0;
+        for (int i = 0; i < sampled; i++) {
+            BufferedImage frame = frames[i * frames.length / sampled];
+            count = sample(Rasters.argbPixels(frame), frame.getWidth() * frame.getHeight(), maxSamplesPerFrame,
+                    samples, count);
+        }
+        return fromSamples(samples, count, reserveTransparent, quantizer, dithering);
+    }
+
+    /** Appends at most {@code max} evenly strided pixels of {@code argb} to {@code samples}. */
+    static int sample(int[] argb, int pixelCount, int max, int[] samples, int offset) {
+        int step = Math.max(1, (pixelCount + max - 1) / max);
+        for (int i = 0; i < pixelCount && offset < samples.length; i += step) {
+            samples[offset++] = argb[i];
+        }
+        return offset;
+    }
+
+    IndexColorModel colorModel() {
+        return colorModel;
+    }
+
+    BufferedImage map(BufferedImage image) {
+        return map(Rasters.argbPixels(image), image.getWidth(), image.getHeight());
+    }
+
+    /** Maps the first {@code width * height} pixels of {@code argb}. */
+    BufferedImage map(int[] argb, int width, int height) {
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(width, height);
+        mapInto(argb, width, height, ByteBuffer.wrap(((DataBufferByte) raster.getDataBuffer()).getData()));
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * Like {@link #map(int[], int, int)}, writing the indices into the start of
+     * {@code indices}, which may be a reused buffer larger than the frame.
+     *
+     * @return {@link #colorModel()}
+     */
+    IndexColorModel mapInto(int[] argb, int width, int height, ByteBuffer indices) {
+        int pixelCount = width * height;
+        if (mapper != null) {
+            mapper.map(argb, width, height, indices);
+            return colorModel;
+        }
+        for (int i = 0; i < pixelCount; i++) {
+            indices.put(i, indexOf(argb[i]));
+        }
+        return colorModel;
+    }
+
+    private byte indexOf(int pixel) {
+        if (transparentIndex >= 0 && pixel >>> 24 < 0x80) {
+            return (byte) transparentIndex;
+        }
+        byte index = cube[OctreeQuantizer.binOf(pixel)];
+        int rgb = pixel & 0xFFFFFF;
+        if (exactKeys == null || palette[index & 0xFF] == rgb) {
+            return index;
+        }
+        int slot = exactSlot(rgb);
+        while (exactKeys[slot] != 0) {
+            if (exactKeys[slot] == rgb + 1) {
+                return exactIndices[slot];
+            }
+            slot = (slot + 1) & (EXACT_TABLE_SIZE - 1);
+        }
+        return index;
+    }
+
+    private static int exactSlot(int rgb) {
+        return ((rgb & 0xFFFFFF) * 0x9E3779B1) >>> 22 & (EXACT_TABLE_SIZE - 1);
+    }
+}
@@ -0,0 +1,93 @@
+package com.gifcreator;
+
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link GifEncoder} backed by the JDK GIF {@code ImageWriter} through
+ * {@link GifSequenceWriter}. Opaque true-colour frames are passed through so the
+ * JDK does its own colour reduction, as before; frames with transparent pixels are
+ * quantized here because the writer can't honour transparency on them. With
+ * delta frames enabled every frame is quantized and passed through
+ * {@link DeltaFrames}. Writers come from the {@link GifSequenceWriter#pooled}
+ * pool.
+ */
+final class ImageIoGifEncoder implements GifEncoder {
+    private ImageOutputStream output;
+    private GifSequenceWriter writer;
+    private int loopCount;
+    private final DeltaFrames delta;
+
+    ImageIoGifEncoder() {
+        this(false);
+    }
+
+    ImageIoGifEncoder(boolean deltaFrames) {
+        this.delta = deltaFrames ? new DeltaFrames() : null;
+    }
+
+    @Override
+    public void start(OutputStream out, int loopCount) throws IOException {
+        if (output != null) {
+            throw new IllegalStateException("Encoder already started");
+        }
+        this.output = new MemoryCacheImageOutputStream(out);
+        this.loopCount = loopCount;
+    }
+
+    @Override
+    public void addFrame(BufferedImage frame, int delayMs) throws IOException {
+        if (output == null) {
+            throw new IllegalStateException("Encoder not started");
+        }
+        if (!(frame.getColorModel() instanceof IndexColorModel)
+                && (delta != null || frame.getColorModel().hasAlpha() && hasTransparentPixel(frame))) {
+            frame = new OctreeQuantizer().quantize(frame);
+        }
+        if (writer == null) {
+            writer = GifSequenceWriter.pooled(output, BufferedImage.TYPE_INT_ARGB, delayMs, loopCount);
+        }
+        if (delta == null) {
+            // The writer reads the raster a pixel at a time, which an arena frame answers slowly
+            writer.writeToSequence(FrameArena.onHeap(frame), delayMs);
+        } else {
+            writeFrame(delta.push(frame, delayMs));
+        }
+        // Push the frame to the destination so the memory cache never holds more than one
+        output.flush();
+    }
+
+    private void writeFrame(DeltaFrames.Frame frame) throws IOException {
+        if (frame != null) {
+            writer.writeToSequence(frame.image, frame.left, frame.top, frame.delayMs, frame.disposal);
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (output == null) {
+            throw new IllegalStateException("Encoder not started");
+        }
+        if (writer != null) {
+            if (delta != null) {
+                writeFrame(delta.finish());
+            }
+            writer.close();
+        }
+        // Closing the cache stream flushes it without closing the destination
+        output.close();
+    }
+
+    private static boolean hasTransparentPixel(BufferedImage frame) {
+        for (int pixel : Rasters.argbPixels(frame)) {
+            if (pixel >>> 24 < 0x80) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
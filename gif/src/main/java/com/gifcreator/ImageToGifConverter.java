@@ -1,20 +1,24 @@
 package com.gifcreator;
 
 import javax.imageio.ImageIO;
-import javax.imageio.stream.FileImageOutputStream;
-import javax.imageio.stream.ImageOutputStream;
-import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Comparator;
 
 public class ImageToGifConverter {
 
     public static void convertImagesToGif(String imageDir) {
+        convertImagesToGif(imageDir, GifEncoderType.FAST);
+    }
+
+    /** @return the number of GIFs written to the "processed" folder */
+    public static int convertImagesToGif(String imageDir, GifEncoderType encoderType) {
+        int created = 0;
         try {
             // Create the output directory inside the input directory
             String outputGifDir = imageDir + File.separator + "processed";
@@ -32,8 +36,8 @@ public class ImageToGifConverter {
             });
 
             if (imageFiles == null || imageFiles.length == 0) {
-                System.out.println("No images found in the directory.");
-                return;
+                System.err.println("No images found in the directory.");
+                return 0;
             }
 
             // Sort files by name
@@ -49,14 +53,14 @@ public class ImageToGifConverter {
                     File imageFile;
                     imageFile = new File(imageDir + File.separator + baseName + "-" + imageCount + ".png");
                     if (!imageFile.exists()) {
-                        System.out.println("Image file not found: " + imageFile.getAbsolutePath());
+                        System.err.println("Image file not found: " + imageFile.getAbsolutePath());
                         break;
                     }
 
                     imageCount++;
                 }
 
-                System.out.println("Number of images found for base name " + baseName + ": " + (imageCount - 1));
+                System.err.println("Number of images found for base name " + baseName + ": " + (imageCount - 1));
 
                 // Read images and create GIF
                 BufferedImage[] images = new BufferedImage[imageCount - 1];
@@ -67,35 +71,37 @@ public class ImageToGifConverter {
                 }
 
                 String outputGifPath = outputGifDir + File.separator + baseName + ".gif";
-                createGif(images, outputGifPath, 50); // 50ms delay between frames
-                System.out.println("GIF created successfully at: " + outputGifPath);
-                System.out.println("Number of images in the GIF: " + (imageCount - 1));
+                createGif(images, outputGifPath, 50, encoderType); // 50ms delay between frames
+                created++;
+                System.err.println("GIF created successfully at: " + outputGifPath);
+                System.err.println("Number of images in the GIF: " + (imageCount - 1));
             }
 
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return created;
     }
 
     public static void createGif(BufferedImage[] images, String outputPath, int delayBetweenFrames) throws IOException {
-        try (ImageOutputStream output = new FileImageOutputStream(new File(outputPath))) {
-            GifSequenceWriter writer = new GifSequenceWriter(output, BufferedImage.TYPE_INT_ARGB, delayBetweenFrames,
-                    true);
+        createGif(images, outputPath, delayBetweenFrames, GifEncoderType.FAST);
+    }
+
+    public static void createGif(BufferedImage[] images, String outputPath, int delayBetweenFrames,
+            GifEncoderType encoderType) throws IOException {
+        try (OutputStream output = GifOutput.toFile(Paths.get(outputPath))) {
+            GifEncoder encoder = encoderType.create();
+            encoder.start(output, 0);
 
             for (BufferedImage image : images) {
                 if (image != null) {
-                    BufferedImage convertedImage = new BufferedImage(image.getWidth(), image.getHeight(),
-                            BufferedImage.TYPE_INT_ARGB);
-                    Graphics2D g2d = convertedImage.createGraphics();
-                    g2d.setColor(new Color(0, 255, 0)); // Set the color to lime green
-                    g2d.fillRect(0, 0, convertedImage.getWidth(), convertedImage.getHeight());
-                    g2d.drawImage(image, 0, 0, null);
-                    g2d.dispose();
-                    writer.writeToSequence(convertedImage);
+                    // Composite over lime green
+                    BufferedImage convertedImage = PixelOps.get().compositeOver(image, 0x00FF00);
+                    encoder.addFrame(convertedImage, delayBetweenFrames);
                 }
             }
 
-            writer.close();
+            encoder.finish();
         }
     }
-}
\ No newline at end of file
+}
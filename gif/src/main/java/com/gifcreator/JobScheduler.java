@@ -0,0 +1,201 @@
+package com.gifcreator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Orders the GIFs of one batch and admits them against a heap budget.
+ *
+ * Jobs are collected first and estimated before any of them runs. Each estimate
+ * reads only the header of the first frame that has one, on the I/O executor
+ * since it waits on the disk, and takes every frame of the sequence to be that
+ * size: the CPU cost is pixels times frames, and the peak heap is what one GIF
+ * holds while its frames stream through, which grows with the frame size and the
+ * pipeline window but not with the frame count.
+ *
+ * Whenever a worker is free, the costliest waiting job whose peak fits in what
+ * the running jobs leave of the budget starts, so a long sequence is never left
+ * to run alone at the end while the other workers sit idle. A job that doesn't
+ * fit yet lets smaller ones past rather than holding up workers that have room
+ * for them; one larger than the whole budget waits until it can run alone.
+ *
+ * Schedulers may also share a {@link Budget}, as the batches of the
+ * {@link ConversionServer} do, so the GIFs of concurrent batches together stay
+ * within it while each batch also keeps to its own.
+ *
+ * Not thread-safe: jobs are added and run from the thread that walks the input.
+ */
+final class JobScheduler {
+    /** Bytes per pixel of every frame in flight: the decoded frame and its indexed copy. */
+    static final int BYTES_PER_FRAME_PIXEL = 4 + 1;
+    /** Bytes per pixel of a GIF whatever its window: the composition buffer and the encoder's previous frame. */
+    static final int BYTES_PER_GIF_PIXEL = 4 + 1;
+    // Frames tried for a readable header before a job is taken to be empty
+    private static final int HEADER_ATTEMPTS = 3;
+
+    private final long budgetKib;
+    private final Budget shared;
+    private final int framesInFlight;
+    private final Executor io;
+    private final ConversionMetrics metrics;
+    private final List<Job> jobs = new ArrayList<>();
+    // Guarded by shared: what the running jobs leave of the workers and of this batch's budget
+    private int freeSlots;
+    private long freeKib;
+
+    /**
+     * @param framesInFlight decoded frames one GIF holds at most, the window of its
+     *                       {@link FramePipeline}
+     * @param io             where the frame headers are read
+     */
+    JobScheduler(long budgetBytes, int framesInFlight, Executor io, ConversionMetrics metrics) {
+        this(budgetBytes, new Budget(budgetBytes), framesInFlight, io, metrics);
+    }
+
+    /** @param shared heap that other schedulers' running jobs also take from */
+    JobScheduler(long budgetBytes, Budget shared, int framesInFlight, Executor io, ConversionMetrics metrics) {
+        this.budgetKib = Math.min(kib(budgetBytes), shared.totalKib);
+        this.shared = shared;
+        this.framesInFlight = framesInFlight;
+        this.io = io;
+        this.metrics = metrics;
+    }
+
+    /** Heap that the running jobs of every scheduler built on it hold together. */
+    static final class Budget {
+        final long totalKib;
+        // Guarded by this
+        private long freeKib;
+
+        Budget(long bytes) {
+            this.totalKib = kib(bytes);
+            this.freeKib = totalKib;
+        }
+    }
+
+    /** Queues a GIF made of {@code frames}; it runs only from {@link #runAll}. */
+    void add(List<File> frames, Runnable work) {
+        jobs.add(new Job(frames, work));
+        metrics.jobsQueued(1);
+    }
+
+    /**
+     * Estimates and orders the queued jobs and hands them to {@code executor} as
+     * workers and budget free up, returning once the last one has finished. The
+     * executor must have {@code workers} threads for them; it may be shared with
+     * other batches, since only these jobs are waited for.
+     */
+    void runAll(Executor executor, int workers) throws InterruptedException {
+        List<Job> waiting = new ArrayList<>(jobs);
+        jobs.clear();
+        CompletableFuture<?>[] estimates = new CompletableFuture<?>[waiting.size()];
+        for (int i = 0; i < estimates.length; i++) {
+            Job job = waiting.get(i);
+            estimates[i] = CompletableFuture.runAsync(() -> estimate(job), io);
+        }
+        CompletableFuture.allOf(estimates).join();
+        waiting.sort(Comparator.comparingLong((Job job) -> job.cost).reversed());
+
+        for (Job job : waiting) {
+            job.reservedKib = Math.min(budgetKib, Math.max(1, Math.ceilDiv(job.peakBytes, 1024)));
+        }
+        synchronized (shared) {
+            freeSlots = workers;
+            freeKib = budgetKib;
+        }
+        while (!waiting.isEmpty()) {
+            Job job;
+            synchronized (shared) {
+                while ((job = takeFitting(waiting)) == null) {
+                    shared.wait();
+                }
+                freeSlots--;
+                freeKib -= job.reservedKib;
+                shared.freeKib -= job.reservedKib;
+            }
+            // Handed over outside the lock: a pool that runs rejected jobs on this thread would hold it throughout
+            Job started = job;
+            try {
+                executor.execute(() -> {
+                    metrics.jobsQueued(-1);
+                    try {
+                        started.work.run();
+                    } finally {
+                        finished(started);
+                    }
+                });
+            } catch (RuntimeException e) {
+                finished(started);
+                throw e;
+            }
+        }
+        synchronized (shared) {
+            while (freeSlots < workers) {
+                shared.wait();
+            }
+        }
+    }
+
+    /** Removes and returns the costliest job of {@code waiting} that can start now, or {@code null}. */
+    private Job takeFitting(List<Job> waiting) {
+        if (freeSlots == 0) {
+            return null;
+        }
+        for (Iterator<Job> it = waiting.iterator(); it.hasNext();) {
+            Job job = it.next();
+            if (job.reservedKib <= freeKib && job.reservedKib <= shared.freeKib) {
+                it.remove();
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private void finished(Job job) {
+        synchronized (shared) {
+            freeSlots++;
+            freeKib += job.reservedKib;
+            shared.freeKib += job.reservedKib;
+            shared.notifyAll();
+        }
+    }
+
+    private void estimate(Job job) {
+        long pixels = -1;
+        for (int i = 0; i < Math.min(HEADER_ATTEMPTS, job.frames.size()) && pixels < 0; i++) {
+            pixels = FrameLoader.pixelCount(job.frames.get(i));
+        }
+        pixels = Math.max(0, pixels);
+        job.cost = pixels * job.frames.size();
+        job.peakBytes = peakBytes(pixels, job.frames.size(), framesInFlight);
+    }
+
+    private static long kib(long bytes) {
+        return Math.max(1, bytes >> 10);
+    }
+
+    /** Heap one GIF of {@code frames} frames of {@code pixels} pixels holds at its peak. */
+    static long peakBytes(long pixels, int frames, int framesInFlight) {
+        return pixels * (BYTES_PER_GIF_PIXEL + (long) BYTES_PER_FRAME_PIXEL * Math.min(frames, framesInFlight));
+    }
+
+    private static final class Job {
+        final List<File> frames;
+        final Runnable work;
+        // Set by estimate() before the jobs are ordered
+        long cost;
+        long peakBytes;
+        // Share of the budget held while it runs, in KiB
+        long reservedKib;
+
+        Job(List<File> frames, Runnable work) {
+            this.frames = frames;
+            this.work = work;
+        }
+    }
+}
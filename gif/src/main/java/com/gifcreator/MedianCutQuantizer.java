@@ -0,0 +1,164 @@
+package com.gifcreator;
+
+import java.util.Arrays;
+
+/**
+ * Heckbert's median cut over a 5-bit-per-channel histogram of the opaque pixels.
+ *
+ * Starting from one box around every occupied histogram bin, the box with the
+ * most pixels times the length of its longest side is split across that side at
+ * the pixel median, until there are {@code limit} boxes or none can be split.
+ * Each box becomes the average colour of the pixels in it, from exact per-bin
+ * sums rather than the bin centres.
+ */
+final class MedianCutQuantizer implements ColorQuantizer {
+    private static final int BITS = 5;
+    private static final int BINS = 1 << (3 * BITS);
+
+    @Override
+    public int[] palette(int[] argb, int pixelCount, int limit) {
+        int[] histogram = new int[BINS];
+        long[] sumR = new long[BINS];
+        long[] sumG = new long[BINS];
+        long[] sumB = new long[BINS];
+        int occupied = 0;
+        for (int i = 0; i < pixelCount; i++) {
+            int pixel = argb[i];
+            if (pixel >>> 24 < 0x80) {
+                continue;
+            }
+            int bin = OctreeQuantizer.binOf(pixel);
+            if (histogram[bin]++ == 0) {
+                occupied++;
+            }
+            sumR[bin] += pixel >> 16 & 0xFF;
+            sumG[bin] += pixel >> 8 & 0xFF;
+            sumB[bin] += pixel & 0xFF;
+        }
+        if (occupied == 0) {
+            return new int[1];
+        }
+
+        int[] bins = new int[occupied];
+        for (int bin = 0, n = 0; bin < BINS; bin++) {
+            if (histogram[bin] != 0) {
+                bins[n++] = bin;
+            }
+        }
+
+        // Boxes are ranges [start[i], end[i]) of bins
+        int[] start = new int[limit];
+        int[] end = new int[limit];
+        long[] pixels = new long[limit];
+        int[] widest = new int[limit];
+        long[] score = new long[limit];
+        end[0] = occupied;
+        pixels[0] = pixelsIn(bins, 0, occupied, histogram);
+        score(0, bins, start, end, pixels, widest, score);
+        int boxes = 1;
+        long[] keys = new long[occupied];
+        while (boxes < limit) {
+            int best = -1;
+            for (int box = 0; box < boxes; box++) {
+                if (score[box] > 0 && (best < 0 || score[box] > score[best])) {
+                    best = box;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            int bestChannel = widest[best];
+
+            int from = start[best];
+            int to = end[best];
+            for (int i = from; i < to; i++) {
+                keys[i] = (long) channel(bins[i], bestChannel) << 32 | bins[i];
+            }
+            Arrays.sort(keys, from, to);
+            for (int i = from; i < to; i++) {
+                bins[i] = (int) keys[i];
+            }
+            // First bin past half of the box's pixels, keeping at least one bin on each side
+            long half = pixels[best] / 2;
+            long seen = 0;
+            int split = from;
+            while (split < to - 1 && seen + histogram[bins[split]] <= half) {
+                seen += histogram[bins[split++]];
+            }
+            if (split == from) {
+                seen += histogram[bins[split++]];
+            }
+            start[boxes] = split;
+            end[boxes] = to;
+            pixels[boxes] = pixels[best] - seen;
+            end[best] = split;
+            pixels[best] = seen;
+            score(best, bins, start, end, pixels, widest, score);
+            score(boxes, bins, start, end, pixels, widest, score);
+            boxes++;
+        }
+
+        int[] palette = new int[boxes];
+        for (int box = 0; box < boxes; box++) {
+            long r = 0;
+            long g = 0;
+            long b = 0;
+            for (int i = start[box]; i < end[box]; i++) {
+                r += sumR[bins[i]];
+                g += sumG[bins[i]];
+                b += sumB[bins[i]];
+            }
+            long n = pixels[box];
+            palette[box] = (int) ((r + n / 2) / n) << 16 | (int) ((g + n / 2) / n) << 8 | (int) ((b + n / 2) / n);
+        }
+        return palette;
+    }
+
+    /** Pixels times the longest side, or 0 for a box of a single bin, which can't be split. */
+    private static void score(int box, int[] bins, int[] start, int[] end, long[] pixels, int[] widest,
+            long[] score) {
+        if (end[box] - start[box] < 2) {
+            score[box] = 0;
+            return;
+        }
+        widest[box] = widestChannel(bins, start[box], end[box]);
+        score[box] = pixels[box] * (range(bins, start[box], end[box], widest[box]) + 1);
+    }
+
+    private static long pixelsIn(int[] bins, int from, int to, int[] histogram) {
+        long pixels = 0;
+        for (int i = from; i < to; i++) {
+            pixels += histogram[bins[i]];
+        }
+        return pixels;
+    }
+
+    private static int widestChannel(int[] bins, int from, int to) {
+        int widest = 0;
+        int widestRange = -1;
+        for (int channel = 0; channel < 3; channel++) {
+            int range = range(bins, from, to, channel);
+            if (range > widestRange) {
+                widestRange = range;
+                widest = channel;
+            }
+        }
+        return widest;
+    }
+
+    private static int range(int[] bins, int from, int to, int channel) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            int value = channel(bins[i], channel);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return max - min;
+    }
+
+    /** Channel 0 is red, 1 green and 2 blue, as 5-bit bin coordinates. */
+    private static int channel(int bin, int channel) {
+        return bin >> (BITS * (2 - channel)) & (1 << BITS) - 1;
+    }
+}
@@ -1,323 +1,746 @@
 package com.gifcreator;
 
-import javax.imageio.ImageIO;
-import javax.imageio.stream.FileImageOutputStream;
-import javax.imageio.stream.ImageOutputStream;
-import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 public class MultiConvert {
-    private static int frameDelay = 100;
 
-    public static void setFrameDelay(int delay) {
-        frameDelay = delay;
+    public enum ProcessingMode {
+        RECURSIVE, // Processa todas as imagens em pastas recursivamente
+        SEQUENTIAL // Processa sequências de imagens com base em sufixo
+    }
+
+    // Color.GREEN sem carregar java.awt.Color, para rodar headless sem tocar no AWT
+    static final int GREEN_RGB = 0xFF00FF00;
+
+    // Quadros lidos para montar a paleta global e quantos pixels cada um contribui
+    private static final int GLOBAL_PALETTE_SAMPLE_FRAMES = 8;
+    private static final int GLOBAL_PALETTE_SAMPLES_PER_FRAME = 32 * 1024;
+
+    private final ConversionOptions options;
+    private final ConversionMetrics metrics = new ConversionMetrics();
+    private final FrameQuantizer quantizer;
+    // Emprestados por quem criou a instância, ou null para criar novos a cada chamada
+    private final ConversionPools sharedPools;
+    // Orçamento de memória dividido com outras instâncias, ou null se cada lote tem só o seu
+    private final JobScheduler.Budget sharedBudget;
+
+    public MultiConvert(ConversionOptions options) {
+        this(options, null, null);
+    }
+
+    /**
+     * Converte nos pools de {@code sharedPools}, que continuam abertos depois de
+     * cada chamada, em vez de criar pools próprios. Os GIFs em andamento de todas
+     * as instâncias que recebem o mesmo {@code sharedBudget} cabem nele juntos,
+     * e os de cada lote também no orçamento das próprias opções.
+     */
+    MultiConvert(ConversionOptions options, ConversionPools sharedPools, JobScheduler.Budget sharedBudget) {
+        this.options = options;
+        this.quantizer = FrameQuantizer.of(options);
+        this.sharedPools = sharedPools;
+        this.sharedBudget = sharedBudget;
+    }
+
+    public ConversionOptions getOptions() {
+        return options;
+    }
+
+    /** Contadores de todas as conversões feitas por esta instância. */
+    public ConversionMetrics getMetrics() {
+        return metrics;
     }
 
-    public static File generatePreview(String inputPath) {
+    /**
+     * Os quadros do primeiro GIF que a pasta geraria: as imagens da própria pasta
+     * no modo recursivo, ou a primeira sequência no modo sequencial. Vazia se não
+     * houver nenhuma.
+     */
+    List<File> previewFiles(String inputPath) {
         File dir = new File(inputPath);
         if (!dir.isDirectory())
-            return null;
+            return Collections.emptyList();
 
-        File tempDir = new File(System.getProperty("java.io.tmpdir"), "gifcreator_preview");
-        if (!tempDir.exists())
-            tempDir.mkdirs();
+        SequenceScanner scan = SequenceScanner.scan(dir);
+        if (options.getMode() == ProcessingMode.RECURSIVE)
+            return scan.images();
 
-        try {
-            BufferedImage[] previewImages;
-            if (currentMode == ProcessingMode.RECURSIVE) {
-                File[] images = dir.listFiles((d, name) -> name.toLowerCase().matches(".*\\.(png|jpg|jpeg)"));
-                if (images == null || images.length == 0)
-                    return null;
+        List<File> seedFiles = scan.seeds(options.getSuffix());
+        if (seedFiles.isEmpty())
+            return Collections.emptyList();
 
-                previewImages = new BufferedImage[images.length];
-                for (int i = 0; i < previewImages.length; i++) {
-                    previewImages[i] = createImageWithBackground(ImageIO.read(images[i]));
-                }
+        return scan.sequence(SequenceScanner.baseName(seedFiles.get(0).getName(), options.getSuffix()));
+    }
+
+    public ConversionSummary convertImagesToGif(String imageDir) {
+        File dir = new File(imageDir);
+        if (!dir.isDirectory()) {
+            System.err.println("Não é um diretório: " + imageDir);
+            return new ConversionSummary(null, 0, 0, 1);
+        }
+
+        return runBatch(dir, batch -> {
+            if (options.getMode() == ProcessingMode.RECURSIVE) {
+                batch.processDirectoryRecursive(dir);
             } else {
-                File[] seedFiles = dir.listFiles((d, name) -> name.toLowerCase().matches(".*\\.(png|jpg|jpeg)") &&
-                        name.contains(targetSuffix));
-                if (seedFiles == null || seedFiles.length == 0)
-                    return null;
+                batch.processDirectorySequential(dir);
+            }
+        });
+    }
 
-                String baseName = extractBaseName(seedFiles[0].getName());
-                List<File> sequence = findImageSequence(dir, baseName);
-                if (sequence.isEmpty())
-                    return null;
+    /**
+     * Acompanha a pasta e converte cada sequência quando seus quadros param de
+     * chegar, em vez de percorrer a árvore toda de novo. Os GIFs que já existem são
+     * atualizados antes, como em {@link #convertImagesToGif(String)}.
+     *
+     * @param quietMillis tempo sem mudanças numa pasta até ela ser convertida
+     * @return o observador já iniciado; {@link FolderWatcher#close()} o encerra
+     */
+    public FolderWatcher watch(String imageDir, long quietMillis) throws IOException {
+        File dir = new File(imageDir);
+        if (!dir.isDirectory()) {
+            throw new IOException("Não é um diretório: " + imageDir);
+        }
+        return FolderWatcher.start(this, dir.getAbsoluteFile(), quietMillis);
+    }
+
+    /** Como {@link #watch(String, long)}, com {@link FolderWatcher#DEFAULT_QUIET_MILLIS}. */
+    public FolderWatcher watch(String imageDir) throws IOException {
+        return watch(imageDir, FolderWatcher.DEFAULT_QUIET_MILLIS);
+    }
+
+    File outputDirFor(File dir) {
+        return options.getOutputDir() != null ? options.getOutputDir()
+                : new File(dir.getAbsoluteFile().getParentFile(), "processed");
+    }
 
-                previewImages = new BufferedImage[sequence.size()];
-                for (int i = 0; i < previewImages.length; i++) {
-                    previewImages[i] = createImageWithBackground(ImageIO.read(sequence.get(i)));
+    /**
+     * Converte só o que mudou sob {@code root}: cada pasta do mapa inteira no modo
+     * recursivo, ou, no sequencial, as sequências cujos nomes de base (em minúsculas)
+     * estão no conjunto; um conjunto {@code null} vale por todas as da pasta.
+     */
+    ConversionSummary convertChanged(File root, Map<File, Set<String>> changes) {
+        return runBatch(root, batch -> {
+            for (Map.Entry<File, Set<String>> change : changes.entrySet()) {
+                if (options.getMode() == ProcessingMode.RECURSIVE) {
+                    batch.processSingleDirectory(change.getKey());
+                } else {
+                    batch.processSequences(change.getKey(), change.getValue());
                 }
             }
+        });
+    }
+
+    private ConversionSummary runBatch(File dir, Consumer<Batch> work) {
+        File outputDir = outputDirFor(dir);
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
 
-            File previewFile = new File(tempDir, "preview.gif");
-            createGif(previewImages, previewFile.getAbsolutePath(), frameDelay);
-            return previewFile;
-        } catch (IOException e) {
+        ConversionPools pools = pools();
+        BuildManifest manifest = options.isIncremental() ? BuildManifest.load(outputDir) : null;
+        Batch batch = new Batch(dir, outputDir, pools, manifest);
+        try {
+            work.accept(batch);
+            batch.runScheduled();
+        } catch (Exception e) {
             e.printStackTrace();
-            return null;
+        } finally {
+            release(pools);
+            saveQuietly(manifest);
         }
+        return batch.summary();
     }
 
-    private static BufferedImage createImageWithBackground(BufferedImage original) throws IOException {
-        BufferedImage newImage = new BufferedImage(
-                original.getWidth(),
-                original.getHeight(),
-                BufferedImage.TYPE_INT_ARGB);
+    private static void saveQuietly(BuildManifest manifest) {
+        if (manifest != null) {
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                System.err.println("Erro ao gravar o manifesto de build: " + e.getMessage());
+            }
+        }
+    }
 
-        Graphics2D g2d = newImage.createGraphics();
-        g2d.setColor(Color.GREEN); // Fundo verde
-        g2d.fillRect(0, 0, newImage.getWidth(), newImage.getHeight());
-        g2d.drawImage(original, 0, 0, null);
-        g2d.dispose();
+    /** Os pools emprestados à instância, ou novos, só para esta chamada. */
+    private ConversionPools pools() {
+        return sharedPools != null ? sharedPools
+                : new ConversionPools(options.getParallelism(), options.getFrameParallelism(),
+                        options.getParallelism());
+    }
 
-        return newImage;
+    /** Fecha os pools de uma chamada; os emprestados continuam abertos. */
+    private void release(ConversionPools pools) {
+        if (pools != sharedPools) {
+            pools.close();
+        }
     }
 
-    public enum ProcessingMode {
-        RECURSIVE, // Processa todas as imagens em pastas recursivamente
-        SEQUENTIAL // Processa sequências de imagens com base em sufixo
+    private FramePipeline<File, BufferedImage> newFramePipeline(ForkJoinPool framePool, Semaphore frameBudget) {
+        return new FramePipeline<>(framePool, 2 * options.getFrameParallelism(), frameBudget, metrics);
     }
 
-    private static File rootOutputDir;
-    private static File rootInputDir;
-    private static ProcessingMode currentMode = ProcessingMode.RECURSIVE;
-    private static String targetSuffix = "-0"; // Sufixo padrão para modo sequencial
+    /**
+     * Estado de uma única chamada a {@link #convertImagesToGif(String)}, ou de uma
+     * rodada do {@link FolderWatcher}. Os métodos {@code process*} só agendam os
+     * GIFs, e {@link #runScheduled()} os envia ao pool depois de estimar o custo de
+     * cada um. Os jobs só leem estes campos, então podem rodar em paralelo.
+     */
+    private final class Batch {
+        private final File rootInputDir;
+        private final File rootOutputDir;
+        private final ConversionPools pools;
+        // Limita os quadros decodificados somando todos os GIFs em andamento
+        private final Semaphore frameBudget;
+        private final JobScheduler scheduler;
+        // null quando a execução não é incremental
+        private final BuildManifest manifest;
+        private final AtomicInteger created = new AtomicInteger();
+        private final AtomicInteger upToDate = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        Batch(File rootInputDir, File rootOutputDir, ConversionPools pools, BuildManifest manifest) {
+            this.rootInputDir = rootInputDir;
+            this.rootOutputDir = rootOutputDir;
+            this.pools = pools;
+            this.frameBudget = new Semaphore(2 * options.getFrameParallelism());
+            this.scheduler = sharedBudget == null
+                    ? new JobScheduler(options.getMemoryBudget(), 2 * options.getFrameParallelism(), FrameLoader.IO,
+                            metrics)
+                    : new JobScheduler(options.getMemoryBudget(), sharedBudget, 2 * options.getFrameParallelism(),
+                            FrameLoader.IO, metrics);
+            this.manifest = manifest;
+        }
 
-    public static void setProcessingMode(ProcessingMode mode, String suffix) {
-        currentMode = mode;
-        if (suffix != null) {
-            targetSuffix = suffix;
+        ConversionSummary summary() {
+            return new ConversionSummary(rootOutputDir, created.get(), upToDate.get(), failed.get());
         }
-    }
 
-    public static void convertImagesToGif(String imageDir) {
-        File dir = new File(imageDir);
-        if (!dir.isDirectory()) {
-            System.out.println("Não é um diretório: " + imageDir);
-            return;
+        /**
+         * Roda os GIFs encontrados, do mais caro ao mais barato, dentro do
+         * orçamento de memória das opções.
+         */
+        void runScheduled() {
+            try {
+                scheduler.runAll(pools.workers, Math.min(options.getParallelism(), pools.parallelism()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
 
-        // Configura diretórios apenas na primeira chamada
-        if (rootOutputDir == null) {
-            rootInputDir = dir;
-            rootOutputDir = new File(dir.getParentFile(), "processed");
-            if (!rootOutputDir.exists()) {
-                rootOutputDir.mkdirs();
+        void processDirectoryRecursive(File dir) {
+            // Processa o diretório atual
+            processSingleDirectory(dir);
+
+            // Processa subdiretórios recursivamente
+            File[] subDirs = dir.listFiles(file -> file.isDirectory() && !file.equals(rootOutputDir));
+            if (subDirs != null) {
+                for (File subDir : subDirs) {
+                    processDirectoryRecursive(subDir);
+                }
             }
         }
 
-        try {
-            if (currentMode == ProcessingMode.RECURSIVE) {
-                processDirectoryRecursive(dir);
-            } else {
-                processDirectorySequential(dir);
+        void processDirectorySequential(File dir) {
+            String targetSuffix = options.getSuffix();
+
+            if (processSequences(dir, null) == 0) {
+                System.err.println(
+                        "Nenhuma imagem com sufixo '" + targetSuffix + "' encontrada em: " + dir.getAbsolutePath());
             }
+        }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+        /**
+         * Envia as sequências da pasta cujas bases, em minúsculas, estão em
+         * {@code baseNames}, ou todas se for {@code null}.
+         *
+         * @return quantas sementes a pasta tem
+         */
+        int processSequences(File dir, Set<String> baseNames) {
+            // Uma única listagem da pasta serve para achar as sementes e todas as sequências
+            SequenceScanner scan = SequenceScanner.scan(dir);
+            List<File> seedFiles = scan.seeds(options.getSuffix());
+
+            // Para cada imagem semente, encontra a sequência completa; sementes da mesma sequência geram um GIF só
+            Set<List<File>> submitted = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (File seedFile : seedFiles) {
+                String baseName = SequenceScanner.baseName(seedFile.getName(), options.getSuffix());
+                if (baseNames != null && !baseNames.contains(baseName.toLowerCase(Locale.ROOT))) {
+                    continue;
+                }
+                List<File> sequence = scan.sequence(baseName);
+
+                if (!sequence.isEmpty() && submitted.add(sequence)) {
+                    scheduler.add(sequence, () -> createGifFromSequence(sequence, dir, baseName));
+                }
+            }
+            return seedFiles.size();
         }
-    }
 
-    private static void processDirectoryRecursive(File dir) {
-        // Processa o diretório atual
-        processSingleDirectory(dir);
+        /** Agenda o GIF de todas as imagens da pasta, se houver alguma. */
+        void processSingleDirectory(File dir) {
+            List<File> imageFiles = SequenceScanner.scan(dir).images();
+            if (!imageFiles.isEmpty()) {
+                scheduler.add(imageFiles, () -> createGifFromDirectory(imageFiles, dir));
+            }
+        }
 
-        // Processa subdiretórios recursivamente
-        File[] subDirs = dir.listFiles(file -> file.isDirectory() && !file.equals(rootOutputDir));
-        if (subDirs != null) {
-            for (File subDir : subDirs) {
-                processDirectoryRecursive(subDir);
+        private void createGifFromDirectory(List<File> imageFiles, File dir) {
+            Path relativePath = rootInputDir.toPath().relativize(dir.toPath());
+            File outputFolder = outputFolderFor(relativePath);
+            String baseName;
+            if (relativePath.toString().isEmpty()) {
+                baseName = rootInputDir.getName();
+            } else if (options.getOutputLayout() == OutputLayout.MIRROR) {
+                baseName = dir.getName();
+            } else {
+                baseName = relativePath.toString().replace(File.separatorChar, '-');
+            }
+
+            try {
+                File gif = buildGif(dir.getAbsolutePath(), imageFiles, outputFolder, baseName, 100);
+                if (gif != null) {
+                    System.err.println("GIF criado: " + gif.getAbsolutePath());
+                }
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                options.getListener().gifFailed(dir.getAbsolutePath(), e.getMessage());
+                System.err.println("Erro ao criar GIF: " + e.getMessage());
             }
         }
-    }
 
-    private static void processDirectorySequential(File dir) {
-        // Encontra todas as imagens com o sufixo alvo
-        File[] seedFiles = dir.listFiles((d, name) -> {
-            String lowerName = name.toLowerCase();
-            return (lowerName.endsWith(".png") || lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg"))
-                    && name.contains(targetSuffix);
-        });
+        /** @param sequenceName a base da semente que achou a sequência */
+        private void createGifFromSequence(List<File> imageFiles, File sourceDir, String sequenceName) {
+            Path relativePath = rootInputDir.toPath().relativize(sourceDir.toPath());
+            File outputFolder = outputFolderFor(relativePath);
+            String baseName;
+            if (relativePath.toString().isEmpty()) {
+                baseName = rootInputDir.getName();
+            } else if (options.getOutputLayout() == OutputLayout.MIRROR) {
+                baseName = sequenceName;
+            } else {
+                baseName = relativePath.toString().replace(File.separatorChar, '-') + "-" + sequenceName;
+            }
 
-        if (seedFiles == null || seedFiles.length == 0) {
-            System.out.println(
-                    "Nenhuma imagem com sufixo '" + targetSuffix + "' encontrada em: " + dir.getAbsolutePath());
-            return;
+            String key = new File(sourceDir, sequenceName).getAbsolutePath();
+            try {
+                File gif = buildGif(key, imageFiles, outputFolder, baseName, options.getFrameDelay());
+                if (gif != null) {
+                    System.err.println("GIF sequencial criado: " + gif.getAbsolutePath());
+                }
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                options.getListener().gifFailed(key, e.getMessage());
+                System.err.println("Erro ao criar GIF sequencial: " + e.getMessage());
+            }
         }
 
-        // Para cada imagem semente, encontra a sequência completa
-        for (File seedFile : seedFiles) {
-            String baseName = extractBaseName(seedFile.getName());
-            List<File> sequence = findImageSequence(dir, baseName);
+        /**
+         * Gera o GIF de uma sequência, a não ser que o manifesto mostre que o GIF
+         * existente já foi gerado a partir desses mesmos quadros e configurações.
+         * Uma sequência alterada é regravada no mesmo arquivo de antes.
+         *
+         * @param key identifica a sequência de origem entre execuções
+         * @return o GIF gravado, ou {@code null} se estava atualizado ou nada pôde ser lido
+         */
+        private File buildGif(String key, List<File> imageFiles, File outputFolder, String baseName, int delay)
+                throws IOException {
+            String settings = settingsKey(delay);
+            List<BuildManifest.Stamp> stamps = null;
+            File previous = null;
+            if (manifest != null) {
+                File current = manifest.currentOutput(key, imageFiles, settings);
+                if (current != null) {
+                    System.err.println("GIF já atualizado: " + current.getAbsolutePath());
+                    upToDate.incrementAndGet();
+                    options.getListener().gifUpToDate(key, current);
+                    return null;
+                }
+                stamps = manifest.stamp(key, imageFiles);
+                previous = manifest.previousOutput(key);
+            }
+            // Os CRCs dos quadros novos saem dos bytes lidos para codificá-los
+            long[] checksums = null;
+            if (manifest != null) {
+                checksums = new long[imageFiles.size()];
+                Arrays.fill(checksums, BuildManifest.UNKNOWN_CRC);
+            }
 
-            if (!sequence.isEmpty()) {
-                createGifFromSequence(sequence, dir);
+            if (previous == null) {
+                Files.createDirectories(outputFolder.toPath());
+            }
+            File target = previous;
+            File gif = streamGif(imageFiles, key,
+                    target != null ? () -> target : () -> reserveUniqueFile(outputFolder, baseName), delay,
+                    newFramePipeline(pools.frames, frameBudget), checksums);
+            if (gif == null) {
+                failed.incrementAndGet();
+                options.getListener().gifFailed(key, "Nenhuma imagem pôde ser lida");
+                return null;
             }
+            created.incrementAndGet();
+            options.getListener().gifCreated(key, gif);
+            if (manifest != null) {
+                manifest.record(key, gif, BuildManifest.withChecksums(stamps, checksums), settings);
+            }
+            return gif;
         }
-    }
 
-    private static String extractBaseName(String fileName) {
-        int suffixIndex = fileName.indexOf(targetSuffix);
-        return suffixIndex > 0 ? fileName.substring(0, suffixIndex)
-                : fileName.replace(".png", "").replace(".jpg", "").replace(".jpeg", "");
+        /**
+         * Pasta de saída de uma subpasta da entrada: a própria raiz no layout FLAT,
+         * ou a mesma subpasta recriada sob a raiz no layout MIRROR.
+         */
+        private File outputFolderFor(Path relativePath) {
+            if (options.getOutputLayout() != OutputLayout.MIRROR || relativePath.toString().isEmpty()) {
+                return rootOutputDir;
+            }
+            return new File(rootOutputDir, relativePath.toString());
+        }
     }
 
-    private static List<File> findImageSequence(File dir, String baseName) {
-        List<File> sequence = new ArrayList<>();
+    /** Tudo o que muda os bytes do GIF gerado; entra no manifesto junto com os quadros. */
+    private String settingsKey(int delay) {
+        return options.getEncoder() + "|" + options.getPaletteMode() + "|" + options.isDeltaFrames() + "|" + delay
+                + "|" + options.getBackground() + "|" + options.getQuantizer() + "|" + options.getDithering()
+                + (options.getQuantizer() == QuantizerType.NEUQUANT ? "|" + options.getNeuQuantSampleFactor() : "");
+    }
 
-        // Padrão para encontrar imagens sequenciais (baseName-0, baseName-1, etc.)
-        Pattern pattern = Pattern.compile(Pattern.quote(baseName) + "-(\\d+)\\.(png|jpg|jpeg)",
-                Pattern.CASE_INSENSITIVE);
+    /** Destino de um GIF, resolvido apenas quando o primeiro quadro é lido. */
+    private interface OutputTarget {
+        File open() throws IOException;
+    }
 
-        // Primeiro encontre todos os arquivos que correspondem ao padrão
-        File[] allFiles = dir.listFiles((d, name) -> pattern.matcher(name).matches());
+    /** Abre o fluxo em que o GIF é gravado. */
+    private interface StreamOpener {
+        OutputStream open() throws IOException;
+    }
 
-        if (allFiles != null && allFiles.length > 0) {
-            // Ordenar os arquivos pelo número sequencial
-            Arrays.sort(allFiles, (f1, f2) -> {
-                Matcher m1 = pattern.matcher(f1.getName());
-                Matcher m2 = pattern.matcher(f2.getName());
-                m1.find();
-                m2.find();
-                return Integer.compare(Integer.parseInt(m1.group(1)),
-                        Integer.parseInt(m2.group(1)));
-            });
+    /**
+     * Lê, compõe e grava um quadro de cada vez, de modo que apenas os quadros da
+     * janela do pipeline ficam em memória independentemente do tamanho da
+     * sequência. Decodificação, composição e quantização rodam em paralelo; o
+     * {@link GifEncoder} recebe quadros já indexados, na ordem original, e só faz a
+     * compressão LZW. O {@link FrameLoader} lê do disco os próximos arquivos
+     * enquanto o quadro atual é decodificado. O arquivo de saída só é criado quando
+     * o primeiro quadro válido é decodificado.
+     *
+     * No modo {@link PaletteMode#GLOBAL} alguns quadros espalhados pela sequência
+     * são lidos antes para montar uma única paleta, e cada quadro passa a ser apenas
+     * mapeado nela em vez de quantizado.
+     *
+     * @param checksums recebe o CRC de cada arquivo lido, para o {@link BuildManifest}, ou {@code null}
+     * @return o GIF gravado, ou {@code null} se nenhuma imagem pôde ser lida
+     */
+    private File streamGif(List<File> imageFiles, String source, OutputTarget target, int delay,
+            FramePipeline<File, BufferedImage> pipeline, long[] checksums) throws IOException {
+        GifRun run = new GifRun(source);
+        run.checksums = checksums;
+        encodeFrames(imageFiles, run, () -> {
+            run.output = target.open();
+            return GifOutput.toFile(run.output.toPath());
+        }, delay, pipeline);
+        return run.output;
+    }
 
-            // Adicionar à sequência mantendo a ordem
-            Collections.addAll(sequence, allFiles);
+    /**
+     * Gera o GIF de uma sequência de imagens em memória, com o atraso de quadro das
+     * opções, sem criar arquivo nenhum. O buffer é somente leitura.
+     *
+     * @return o GIF, ou {@code null} se nenhuma imagem pôde ser lida
+     */
+    public ByteBuffer encodeToMemory(List<File> imageFiles) throws IOException {
+        GifOutput.Memory memory = new GifOutput.Memory();
+        ConversionPools pools = pools();
+        try {
+            String source = imageFiles.isEmpty() ? "" : imageFiles.get(0).getAbsoluteFile().getParent();
+            boolean written = encodeFrames(imageFiles, new GifRun(source), () -> memory, options.getFrameDelay(),
+                    newFramePipeline(pools.frames, null));
+            return written ? memory.toByteBuffer() : null;
+        } finally {
+            release(pools);
         }
+    }
 
-        return sequence;
+    /**
+     * O tempo de cada etapa vai para as {@link ConversionMetrics}, o progresso para
+     * o {@link ConversionListener} das opções, e o GIF inteiro vira um
+     * {@link GifConversionEvent} quando o Flight Recorder está gravando.
+     *
+     * @return se algum quadro foi gravado
+     */
+    private boolean encodeFrames(List<File> imageFiles, GifRun run, StreamOpener opener, int delay,
+            FramePipeline<File, BufferedImage> pipeline) throws IOException {
+        GifConversionEvent event = new GifConversionEvent();
+        event.begin();
+        options.getListener().framesQueued(run.source, imageFiles.size());
+        GlobalPalette palette = options.getPaletteMode() == PaletteMode.GLOBAL
+                ? sampleGlobalPalette(imageFiles, options.getBackground(), options.isDeltaFrames(), quantizer)
+                : null;
+        FrameArena arena = FrameArena.shared();
+        LazyGifWriter writer = new LazyGifWriter(opener, delay, options.getEncoder().create(options.isDeltaFrames()),
+                palette == null ? null : palette.colorModel(), arena, run);
+        try (FrameLoader loader = new FrameLoader(imageFiles, FrameLoader.DEFAULT_READ_AHEAD, FrameCache.shared(),
+                run.checksums)) {
+            pipeline.run(imageFiles, imageFile -> prepareFrame(imageFile, loader, palette, arena, run), writer,
+                    arena::release);
+            writer.finish();
+        } finally {
+            writer.closeOutput();
+        }
+        if (writer.output == null) {
+            return false;
+        }
+        metrics.gifWritten(writer.output.count());
+        if (event.shouldCommit()) {
+            event.source = run.source;
+            event.output = run.output == null ? null : run.output.getAbsolutePath();
+            event.frames = run.frames;
+            event.bytes = writer.output.count();
+            event.decodeNanos = run.nanos(ConversionMetrics.Stage.DECODE);
+            event.compositeNanos = run.nanos(ConversionMetrics.Stage.COMPOSITE);
+            event.quantizeNanos = run.nanos(ConversionMetrics.Stage.QUANTIZE);
+            event.encodeNanos = run.nanos(ConversionMetrics.Stage.ENCODE);
+            event.commit();
+        }
+        return true;
     }
 
-    private static void processSingleDirectory(File dir) {
-        Path relativePath = rootInputDir.toPath().relativize(dir.toPath());
-        String baseName = relativePath.toString().isEmpty() ? rootInputDir.getName()
-                : relativePath.toString().replace(File.separatorChar, '-');
+    /**
+     * Um GIF sendo gerado: de onde vêm os quadros e quanto tempo eles passaram em
+     * cada etapa. As etapas rodam em várias threads; {@link #frames} só é mudado
+     * pela thread que grava o GIF.
+     */
+    private final class GifRun {
+        final String source;
+        final LongAdder[] stageNanos = new LongAdder[ConversionMetrics.Stage.values().length];
+        // CRC de cada quadro lido, para o manifesto; null fora dos builds incrementais
+        long[] checksums;
+        File output;
+        int frames;
+
+        GifRun(String source) {
+            this.source = source;
+            for (int i = 0; i < stageNanos.length; i++) {
+                stageNanos[i] = new LongAdder();
+            }
+        }
 
-        File[] imageFiles = dir.listFiles((d, name) -> {
-            String lowerName = name.toLowerCase();
-            return lowerName.endsWith(".png") || lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg");
-        });
+        /** Registra a etapa que começou em {@code start} e devolve o instante atual. */
+        long record(ConversionMetrics.Stage stage, long start) {
+            long now = System.nanoTime();
+            metrics.record(stage, now - start);
+            stageNanos[stage.ordinal()].add(now - start);
+            return now;
+        }
 
-        List<BufferedImage> frames = new ArrayList<>();
-        if (imageFiles != null && imageFiles.length > 0) {
-            Arrays.sort(imageFiles, new NumericFileComparator());
-
-            for (File imageFile : imageFiles) {
-                try {
-                    BufferedImage image = ImageIO.read(imageFile);
-                    if (image != null) {
-                        frames.add(convertImageWithGreenBackground(image));
-                    }
-                } catch (IOException e) {
-                    System.err.println("Erro ao ler imagem: " + imageFile.getAbsolutePath());
-                }
+        long nanos(ConversionMetrics.Stage stage) {
+            return stageNanos[stage.ordinal()].sum();
+        }
+    }
+
+    private static GlobalPalette sampleGlobalPalette(List<File> imageFiles, Background background,
+            boolean reserveTransparent, FrameQuantizer quantizer) {
+        int frames = Math.min(GLOBAL_PALETTE_SAMPLE_FRAMES, imageFiles.size());
+        int[] samples = new int[frames * GLOBAL_PALETTE_SAMPLES_PER_FRAME];
+        int count = 0;
+        for (int i = 0; i < frames; i++) {
+            BufferedImage image = FrameLoader.read(imageFiles.get(i * imageFiles.size() / frames));
+            if (image != null) {
+                int pixelCount = image.getWidth() * image.getHeight();
+                int[] composed = composeIntoScratch(image, background);
+                count = GlobalPalette.sample(composed, pixelCount, GLOBAL_PALETTE_SAMPLES_PER_FRAME, samples, count);
             }
+        }
+        return count > 0 ? GlobalPalette.fromSamples(samples, count, reserveTransparent, quantizer.colorQuantizer(),
+                quantizer.dithering()) : null;
+    }
 
-            if (!frames.isEmpty()) {
-                String uniqueName = generateUniqueName(baseName);
-                String outputPath = new File(rootOutputDir, uniqueName).getAbsolutePath();
-                try {
-                    createGif(frames.toArray(new BufferedImage[0]), outputPath, 100);
-                    System.out.println("GIF criado: " + outputPath);
-                } catch (IOException e) {
-                    System.err.println("Erro ao criar GIF: " + e.getMessage());
-                }
+    /**
+     * O quadro composto sobre o verde vai para o buffer reaproveitado da thread e
+     * só sai dali já indexado, sem alocar uma imagem ARGB por quadro. Com
+     * {@link Background#TRANSPARENT} o quadro é copiado com o alfa original, e os
+     * quantizadores dão o índice transparente aos pixels abaixo de meia opacidade.
+     * Os índices vão direto para um buffer da {@link FrameArena}, fora do heap,
+     * que volta para ela assim que o encoder grava o quadro, ou que o pipeline
+     * descarta se a conversão falhar antes disso.
+     */
+    private BufferedImage prepareFrame(File imageFile, FrameLoader loader, GlobalPalette palette, FrameArena arena,
+            GifRun run) {
+        long start = System.nanoTime();
+        BufferedImage image = loader.load(imageFile);
+        if (image == null) {
+            options.getListener().frameSkipped(run.source);
+            return null;
+        }
+        start = run.record(ConversionMetrics.Stage.DECODE, start);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] composed = composeIntoScratch(image, options.getBackground());
+        start = run.record(ConversionMetrics.Stage.COMPOSITE, start);
+        ByteBuffer indices = arena.allocate(width * height);
+        BufferedImage indexed = null;
+        try {
+            IndexColorModel colorModel = palette != null ? palette.mapInto(composed, width, height, indices)
+                    : quantizer.quantizeInto(composed, width, height, indices);
+            indexed = arena.indexed(indices, width, height, colorModel);
+        } finally {
+            if (indexed == null) {
+                arena.release(indices);
             }
         }
+        run.record(ConversionMetrics.Stage.QUANTIZE, start);
+        return indexed;
     }
 
-    private static void createGifFromSequence(List<File> imageFiles, File sourceDir) {
-        Path relativePath = rootInputDir.toPath().relativize(sourceDir.toPath());
-        String baseName = relativePath.toString().isEmpty() ? rootInputDir.getName()
-                : relativePath.toString().replace(File.separatorChar, '-') + "-"
-                        + extractBaseName(imageFiles.get(0).getName());
+    private static int[] composeIntoScratch(BufferedImage image, Background background) {
+        int[] pixels = Rasters.scratchArgb(image.getWidth() * image.getHeight());
+        if (background == Background.TRANSPARENT) {
+            Rasters.copyArgb(image, pixels);
+        } else {
+            PixelOps.get().compositeOver(image, GREEN_RGB, pixels);
+        }
+        return pixels;
+    }
+
+    /**
+     * Abre o arquivo e inicia o {@link GifEncoder} apenas quando chega o primeiro
+     * quadro. Cada quadro volta para a {@link FrameArena} depois de gravado, mesmo
+     * quando a gravação falha.
+     */
+    private final class LazyGifWriter implements FramePipeline.Sink<BufferedImage> {
+        private final StreamOpener opener;
+        private final int delay;
+        private final GifEncoder encoder;
+        private final IndexColorModel globalPalette;
+        private final FrameArena arena;
+        private final GifRun run;
+        private GifOutput.Counted output;
+
+        LazyGifWriter(StreamOpener opener, int delay, GifEncoder encoder, IndexColorModel globalPalette,
+                FrameArena arena, GifRun run) {
+            this.opener = opener;
+            this.delay = delay;
+            this.encoder = encoder;
+            this.globalPalette = globalPalette;
+            this.arena = arena;
+            this.run = run;
+        }
 
-        List<BufferedImage> frames = new ArrayList<>();
-        for (File imageFile : imageFiles) {
+        @Override
+        public void accept(BufferedImage frame) throws IOException {
+            long start = System.nanoTime();
             try {
-                BufferedImage image = ImageIO.read(imageFile);
-                if (image != null) {
-                    frames.add(convertImageWithGreenBackground(image));
+                if (output == null) {
+                    output = new GifOutput.Counted(opener.open());
+                    encoder.start(output, 0, globalPalette);
                 }
-            } catch (IOException e) {
-                System.err.println("Erro ao ler imagem: " + imageFile.getAbsolutePath());
+                encoder.addFrame(frame, delay);
+            } finally {
+                arena.release(frame);
             }
+            run.record(ConversionMetrics.Stage.ENCODE, start);
+            run.frames++;
+            options.getListener().frameWritten(run.source);
         }
 
-        if (!frames.isEmpty()) {
-            String uniqueName = generateUniqueName(baseName);
-            String outputPath = new File(rootOutputDir, uniqueName).getAbsolutePath();
-            try {
-                createGif(frames.toArray(new BufferedImage[0]), outputPath, frameDelay);
-                System.out.println("GIF sequencial criado: " + outputPath);
-            } catch (IOException e) {
-                System.err.println("Erro ao criar GIF sequencial: " + e.getMessage());
+        void finish() throws IOException {
+            if (output != null) {
+                encoder.finish();
+            }
+        }
+
+        void closeOutput() throws IOException {
+            if (output != null) {
+                output.close();
             }
         }
     }
 
-    private static BufferedImage convertImageWithGreenBackground(BufferedImage original) {
-        BufferedImage converted = new BufferedImage(
-                original.getWidth(), original.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = converted.createGraphics();
-        g2d.setColor(Color.GREEN);
-        g2d.fillRect(0, 0, converted.getWidth(), converted.getHeight());
-        g2d.drawImage(original, 0, 0, null);
-        g2d.dispose();
-        return converted;
+    static BufferedImage convertImageWithGreenBackground(BufferedImage original) {
+        return PixelOps.get().compositeOver(original, GREEN_RGB);
     }
 
-    private static class NumericFileComparator implements Comparator<File> {
-        @Override
-        public int compare(File f1, File f2) {
-            int n1 = extractNumber(f1.getName());
-            int n2 = extractNumber(f2.getName());
-            return Integer.compare(n1, n2);
+    /**
+     * Reserva atomicamente {@code baseName.gif} (ou {@code baseName_N.gif}) criando o
+     * arquivo vazio. Dois jobs concorrentes nunca recebem o mesmo nome, ao contrário
+     * de um teste {@code exists()} seguido da escrita.
+     */
+    private static File reserveUniqueFile(File outputDir, String baseName) throws IOException {
+        for (int counter = 0;; counter++) {
+            String name = counter == 0 ? baseName + ".gif" : baseName + "_" + counter + ".gif";
+            File targetFile = new File(outputDir, name);
+            try {
+                Files.createFile(targetFile.toPath());
+                return targetFile;
+            } catch (FileAlreadyExistsException e) {
+                // Nome já ocupado, tenta o próximo sufixo
+            }
         }
+    }
 
-        private int extractNumber(String name) {
-            String num = name.replaceAll("\\D+", "");
-            return num.isEmpty() ? 0 : Integer.parseInt(num);
-        }
+    public static void createGif(BufferedImage[] images, String outputPath, int delayBetweenFrames) throws IOException {
+        createGif(images, outputPath, delayBetweenFrames, GifEncoderType.FAST);
     }
 
-    private static String generateUniqueName(String baseName) {
-        String baseFile = baseName + ".gif";
-        File targetFile = new File(rootOutputDir, baseFile);
+    public static void createGif(BufferedImage[] images, String outputPath, int delayBetweenFrames,
+            GifEncoderType encoderType) throws IOException {
+        createGif(images, outputPath, delayBetweenFrames, ConversionOptions.builder().encoder(encoderType).build());
+    }
 
-        if (!targetFile.exists()) {
-            return baseFile;
+    /** Grava {@code images} com o encoder, o modo de paleta e a opção de quadros delta de {@code options}. */
+    public static void createGif(BufferedImage[] images, String outputPath, int delayBetweenFrames,
+            ConversionOptions options) throws IOException {
+        try (OutputStream output = GifOutput.toFile(Paths.get(outputPath))) {
+            writeGif(images, output, delayBetweenFrames, options);
         }
+    }
 
-        int counter = 1;
-        String newName;
-        do {
-            newName = baseName + "_" + counter + ".gif";
-            targetFile = new File(rootOutputDir, newName);
-            counter++;
-        } while (targetFile.exists());
-
-        return newName;
+    /**
+     * Como {@link #createGif(BufferedImage[], String, int, ConversionOptions)}, mas
+     * devolve o GIF em memória, para quem vai enviá-lo ou guardá-lo em cache em vez
+     * de gravar um arquivo. O buffer é somente leitura e não é copiado.
+     */
+    public static ByteBuffer createGifInMemory(BufferedImage[] images, int delayBetweenFrames,
+            ConversionOptions options) throws IOException {
+        GifOutput.Memory output = new GifOutput.Memory();
+        writeGif(images, output, delayBetweenFrames, options);
+        return output.toByteBuffer();
     }
 
-    public static void createGif(BufferedImage[] images, String outputPath, int delayBetweenFrames) throws IOException {
-        try (ImageOutputStream output = new FileImageOutputStream(new File(outputPath))) {
-            GifSequenceWriter writer = new GifSequenceWriter(output, BufferedImage.TYPE_INT_ARGB, delayBetweenFrames,
-                    true);
-            for (BufferedImage image : images) {
-                writer.writeToSequence(image);
+    private static void writeGif(BufferedImage[] images, OutputStream output, int delayBetweenFrames,
+            ConversionOptions options) throws IOException {
+        FrameQuantizer quantizer = FrameQuantizer.of(options);
+        GlobalPalette palette = options.getPaletteMode() == PaletteMode.GLOBAL && images.length > 0
+                ? GlobalPalette.fromFrames(images, GLOBAL_PALETTE_SAMPLE_FRAMES, GLOBAL_PALETTE_SAMPLES_PER_FRAME,
+                        options.isDeltaFrames(), quantizer.colorQuantizer(), quantizer.dithering())
+                : null;
+        GifEncoder encoder = options.getEncoder().create(options.isDeltaFrames());
+        encoder.start(output, 0, palette == null ? null : palette.colorModel());
+        for (BufferedImage image : images) {
+            BufferedImage frame = image;
+            if (palette != null) {
+                frame = palette.map(image);
+            } else if (!quantizer.isPlainOctree()) {
+                // Os encoders só conhecem a octree; outro quantizador indexa o quadro antes
+                frame = quantizer.quantize(image);
             }
-            writer.close();
+            encoder.addFrame(frame, delayBetweenFrames);
         }
+        encoder.finish();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,216 @@
+package com.gifcreator;
+
+/**
+ * Anthony Dekker's NeuQuant (1994): a one-dimensional self-organising map of
+ * {@code limit} neurons is trained on a sample of the opaque pixels, and the
+ * neurons become the palette.
+ *
+ * The sample factor sets how many pixels are skipped between training samples:
+ * 1 learns from every pixel, 10 (the usual default) from one in ten, 30 is the
+ * fastest. Pixels are visited with a prime stride so the sample is spread over
+ * the whole frame. The network lives in one {@code int[]} in fixed point, as in
+ * the original.
+ */
+final class NeuQuantQuantizer implements ColorQuantizer {
+    static final int DEFAULT_SAMPLE_FACTOR = 10;
+    static final int MAX_SAMPLE_FACTOR = 30;
+
+    private static final int CYCLES = 100;
+    private static final int NET_BIAS_SHIFT = 4;
+    private static final int INT_BIAS_SHIFT = 16;
+    private static final int INT_BIAS = 1 << INT_BIAS_SHIFT;
+    private static final int GAMMA_SHIFT = 10;
+    private static final int BETA_SHIFT = 10;
+    private static final int BETA = INT_BIAS >> BETA_SHIFT;
+    private static final int BETA_GAMMA = INT_BIAS << (GAMMA_SHIFT - BETA_SHIFT);
+    private static final int RADIUS_BIAS_SHIFT = 6;
+    private static final int RADIUS_BIAS = 1 << RADIUS_BIAS_SHIFT;
+    private static final int RADIUS_DEC = 30;
+    private static final int ALPHA_BIAS_SHIFT = 10;
+    private static final int INIT_ALPHA = 1 << ALPHA_BIAS_SHIFT;
+    private static final int RAD_BIAS_SHIFT = 8;
+    private static final int RAD_BIAS = 1 << RAD_BIAS_SHIFT;
+    private static final int ALPHA_RAD_BIAS = 1 << (ALPHA_BIAS_SHIFT + RAD_BIAS_SHIFT);
+    private static final int[] PRIMES = { 499, 491, 487, 503 };
+
+    private final int sampleFactor;
+
+    NeuQuantQuantizer() {
+        this(DEFAULT_SAMPLE_FACTOR);
+    }
+
+    NeuQuantQuantizer(int sampleFactor) {
+        if (sampleFactor < 1 || sampleFactor > MAX_SAMPLE_FACTOR) {
+            throw new IllegalArgumentException("sampleFactor must be between 1 and 30: " + sampleFactor);
+        }
+        this.sampleFactor = sampleFactor;
+    }
+
+    @Override
+    public int[] palette(int[] argb, int pixelCount, int limit) {
+        int[] opaque = new int[pixelCount];
+        int count = 0;
+        for (int i = 0; i < pixelCount; i++) {
+            if (argb[i] >>> 24 >= 0x80) {
+                opaque[count++] = argb[i];
+            }
+        }
+        if (count == 0) {
+            return new int[1];
+        }
+        // Fewer colours than neurons: the exact palette is better than anything learned
+        int[] exact = OctreeQuantizer.exactPalette(opaque, count, limit, null);
+        if (exact != null) {
+            return exact;
+        }
+        return new Network(limit).learn(opaque, count, count < 3 * PRIMES[3] ? 1 : sampleFactor);
+    }
+
+    /** Neuron {@code i} is {@code b, g, r} at {@code 3 * i}, shifted left by {@link #NET_BIAS_SHIFT}. */
+    private static final class Network {
+        private final int size;
+        private final int[] neurons;
+        private final int[] frequency;
+        private final int[] bias;
+        private final int[] radiusPower;
+
+        Network(int size) {
+            this.size = size;
+            this.neurons = new int[size * 3];
+            this.frequency = new int[size];
+            this.bias = new int[size];
+            this.radiusPower = new int[size >> 3];
+            for (int i = 0; i < size; i++) {
+                int value = (i << (NET_BIAS_SHIFT + 8)) / size;
+                neurons[3 * i] = value;
+                neurons[3 * i + 1] = value;
+                neurons[3 * i + 2] = value;
+                frequency[i] = INT_BIAS / size;
+            }
+        }
+
+        int[] learn(int[] pixels, int count, int sampleFactor) {
+            int alphaDecrease = 30 + (sampleFactor - 1) / 3;
+            int samples = Math.max(1, count / sampleFactor);
+            int delta = Math.max(1, samples / CYCLES);
+            int alpha = INIT_ALPHA;
+            int radius = (size >> 3) * RADIUS_BIAS;
+            int rad = radiusOf(radius);
+            computeRadiusPower(alpha, rad);
+
+            int step = 1;
+            for (int prime : PRIMES) {
+                if (count % prime != 0) {
+                    step = prime;
+                    break;
+                }
+            }
+
+            int position = 0;
+            for (int i = 1; i <= samples; i++) {
+                int pixel = pixels[position];
+                int b = (pixel & 0xFF) << NET_BIAS_SHIFT;
+                int g = (pixel >> 8 & 0xFF) << NET_BIAS_SHIFT;
+                int r = (pixel >> 16 & 0xFF) << NET_BIAS_SHIFT;
+                int winner = contest(b, g, r);
+                alterSingle(alpha, winner, b, g, r);
+                if (rad > 0) {
+                    alterNeighbours(rad, winner, b, g, r);
+                }
+                position += step;
+                if (position >= count) {
+                    position -= count;
+                }
+                if (i % delta == 0) {
+                    alpha -= alpha / alphaDecrease;
+                    radius -= radius / RADIUS_DEC;
+                    rad = radiusOf(radius);
+                    computeRadiusPower(alpha, rad);
+                }
+            }
+
+            int[] palette = new int[size];
+            for (int i = 0; i < size; i++) {
+                int b = clamp(neurons[3 * i] + (1 << NET_BIAS_SHIFT - 1) >> NET_BIAS_SHIFT);
+                int g = clamp(neurons[3 * i + 1] + (1 << NET_BIAS_SHIFT - 1) >> NET_BIAS_SHIFT);
+                int r = clamp(neurons[3 * i + 2] + (1 << NET_BIAS_SHIFT - 1) >> NET_BIAS_SHIFT);
+                palette[i] = r << 16 | g << 8 | b;
+            }
+            return palette;
+        }
+
+        private static int radiusOf(int radius) {
+            int rad = radius >> RADIUS_BIAS_SHIFT;
+            return rad <= 1 ? 0 : rad;
+        }
+
+        private void computeRadiusPower(int alpha, int rad) {
+            for (int i = 0; i < rad && i < radiusPower.length; i++) {
+                radiusPower[i] = alpha * (((rad * rad - i * i) * RAD_BIAS) / (rad * rad));
+            }
+        }
+
+        /**
+         * Finds the neuron closest to the colour and, for the one that wins after
+         * the frequency bias, makes it less likely to win again.
+         */
+        private int contest(int b, int g, int r) {
+            int bestDistance = Integer.MAX_VALUE;
+            int bestBiasDistance = Integer.MAX_VALUE;
+            int best = -1;
+            int bestBiased = -1;
+            for (int i = 0; i < size; i++) {
+                int distance = Math.abs(neurons[3 * i] - b) + Math.abs(neurons[3 * i + 1] - g)
+                        + Math.abs(neurons[3 * i + 2] - r);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = i;
+                }
+                int biasDistance = distance - (bias[i] >> (INT_BIAS_SHIFT - NET_BIAS_SHIFT));
+                if (biasDistance < bestBiasDistance) {
+                    bestBiasDistance = biasDistance;
+                    bestBiased = i;
+                }
+                int betaFrequency = frequency[i] >> BETA_SHIFT;
+                frequency[i] -= betaFrequency;
+                bias[i] += betaFrequency << GAMMA_SHIFT;
+            }
+            frequency[best] += BETA;
+            bias[best] -= BETA_GAMMA;
+            return bestBiased;
+        }
+
+        private void alterSingle(int alpha, int i, int b, int g, int r) {
+            neurons[3 * i] -= alpha * (neurons[3 * i] - b) / INIT_ALPHA;
+            neurons[3 * i + 1] -= alpha * (neurons[3 * i + 1] - g) / INIT_ALPHA;
+            neurons[3 * i + 2] -= alpha * (neurons[3 * i + 2] - r) / INIT_ALPHA;
+        }
+
+        private void alterNeighbours(int rad, int i, int b, int g, int r) {
+            int low = Math.max(i - rad, -1);
+            int high = Math.min(i + rad, size);
+            int up = i + 1;
+            int down = i - 1;
+            int m = 1;
+            while (up < high || down > low) {
+                int power = radiusPower[m++];
+                if (up < high) {
+                    moveTowards(up++, power, b, g, r);
+                }
+                if (down > low) {
+                    moveTowards(down--, power, b, g, r);
+                }
+            }
+        }
+
+        private void moveTowards(int j, int power, int b, int g, int r) {
+            neurons[3 * j] -= (int) ((long) power * (neurons[3 * j] - b) / ALPHA_RAD_BIAS);
+            neurons[3 * j + 1] -= (int) ((long) power * (neurons[3 * j + 1] - g) / ALPHA_RAD_BIAS);
+            neurons[3 * j + 2] -= (int) ((long) power * (neurons[3 * j + 2] - r) / ALPHA_RAD_BIAS);
+        }
+
+        private static int clamp(int value) {
+            return Math.max(0, Math.min(255, value));
+        }
+    }
+}
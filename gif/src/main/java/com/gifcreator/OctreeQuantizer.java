@@ -0,0 +1,373 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reduces an ARGB frame to an 8-bit indexed image that GIF writers can store
+ * without any further colour analysis.
+ *
+ * Frames with at most {@code maxColors} distinct colours are mapped exactly.
+ * Otherwise the pixels are binned into a 5-bit-per-channel histogram, an octree
+ * is built over the occupied bins and reduced to {@code maxColors} leaves, and
+ * every pixel is mapped through a bin-to-leaf table. Pixels with alpha below 128
+ * share one transparent index.
+ */
+final class OctreeQuantizer implements ColorQuantizer {
+    static final int MAX_COLORS = 256;
+
+    private static final int BITS = 5;
+    private static final int BINS = 1 << (3 * BITS);
+
+    private final int maxColors;
+
+    OctreeQuantizer() {
+        this(MAX_COLORS);
+    }
+
+    OctreeQuantizer(int maxColors) {
+        if (maxColors < 2 || maxColors > MAX_COLORS) {
+            throw new IllegalArgumentException("maxColors must be between 2 and 256: " + maxColors);
+        }
+        this.maxColors = maxColors;
+    }
+
+    BufferedImage quantize(BufferedImage image) {
+        return quantize(Rasters.argbPixels(image), image.getWidth(), image.getHeight());
+    }
+
+    BufferedImage quantize(int[] argb, int width, int height) {
+        byte[] indices = new byte[width * height];
+        IndexColorModel colorModel = quantizeInto(argb, width, height, ByteBuffer.wrap(indices));
+        return toIndexedImage(indices, width, height, colorModel);
+    }
+
+    /**
+     * Quantizes the first {@code width * height} pixels of {@code argb} into the
+     * start of {@code indices}, which may be a reused buffer larger than the frame
+     * and, like a {@link FrameArena} buffer, off the heap. Its position is ignored.
+     *
+     * @return the palette the indices refer to
+     */
+    IndexColorModel quantizeInto(int[] argb, int width, int height, ByteBuffer indices) {
+        int pixelCount = width * height;
+        boolean hasTransparency = false;
+        for (int i = 0; i < pixelCount; i++) {
+            if (argb[i] >>> 24 < 0x80) {
+                hasTransparency = true;
+                break;
+            }
+        }
+        int colorLimit = hasTransparency ? maxColors - 1 : maxColors;
+
+        int[] palette = exactPalette(argb, pixelCount, colorLimit, indices);
+        if (palette == null) {
+            palette = new Octree(argb, pixelCount, colorLimit).mapInto(indices);
+        }
+
+        int transparentIndex = -1;
+        if (hasTransparency) {
+            transparentIndex = palette.length;
+            int[] withTransparent = new int[palette.length + 1];
+            System.arraycopy(palette, 0, withTransparent, 0, palette.length);
+            palette = withTransparent;
+            for (int i = 0; i < pixelCount; i++) {
+                if (argb[i] >>> 24 < 0x80) {
+                    indices.put(i, (byte) transparentIndex);
+                }
+            }
+        }
+        return colorModel(palette, transparentIndex);
+    }
+
+    /**
+     * Maps every opaque pixel to an exact palette entry if the frame uses no more
+     * than {@code limit} colours, otherwise returns {@code null}. {@code indices}
+     * may be {@code null} when only the palette is needed.
+     */
+    static int[] exactPalette(int[] argb, int pixelCount, int limit, ByteBuffer indices) {
+        int tableSize = 1024;
+        int mask = tableSize - 1;
+        int[] keys = new int[tableSize];
+        byte[] slots = new byte[tableSize];
+        boolean[] used = new boolean[tableSize];
+        int[] palette = new int[limit];
+        int size = 0;
+
+        for (int i = 0; i < pixelCount; i++) {
+            int pixel = argb[i];
+            if (pixel >>> 24 < 0x80) {
+                continue;
+            }
+            int rgb = pixel & 0xFFFFFF;
+            int slot = (rgb * 0x9E3779B1) >>> 22 & mask;
+            while (used[slot] && keys[slot] != rgb) {
+                slot = (slot + 1) & mask;
+            }
+            if (!used[slot]) {
+                if (size == limit) {
+                    return null;
+                }
+                used[slot] = true;
+                keys[slot] = rgb;
+                slots[slot] = (byte) size;
+                palette[size++] = rgb;
+            }
+            if (indices != null) {
+                indices.put(i, slots[slot]);
+            }
+        }
+
+        int[] trimmed = new int[Math.max(size, 1)];
+        System.arraycopy(palette, 0, trimmed, 0, size);
+        return trimmed;
+    }
+
+    @Override
+    public int[] palette(int[] argb, int pixelCount, int limit) {
+        return octreePalette(argb, pixelCount, limit);
+    }
+
+    /** The octree palette of the opaque pixels in {@code argb}, without mapping them. */
+    static int[] octreePalette(int[] argb, int pixelCount, int limit) {
+        return new Octree(argb, pixelCount, limit).palette();
+    }
+
+    static BufferedImage toIndexedImage(byte[] indices, int width, int height, int[] palette, int transparentIndex) {
+        return toIndexedImage(indices, width, height, colorModel(palette, transparentIndex));
+    }
+
+    /** A new indexed image holding a copy of the first {@code width * height} entries of {@code indices}. */
+    static BufferedImage toIndexedImage(byte[] indices, int width, int height, IndexColorModel colorModel) {
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(width, height);
+        byte[] target = ((DataBufferByte) raster.getDataBuffer()).getData();
+        System.arraycopy(indices, 0, target, 0, target.length);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    static IndexColorModel colorModel(int[] palette, int transparentIndex) {
+        int size = palette.length;
+        byte[] r = new byte[size];
+        byte[] g = new byte[size];
+        byte[] b = new byte[size];
+        for (int i = 0; i < size; i++) {
+            r[i] = (byte) (palette[i] >> 16);
+            g[i] = (byte) (palette[i] >> 8);
+            b[i] = (byte) palette[i];
+        }
+        return new IndexColorModel(8, size, r, g, b, transparentIndex);
+    }
+
+    static int binOf(int rgb) {
+        return (rgb >> 9 & 0x7C00) | (rgb >> 6 & 0x3E0) | (rgb >> 3 & 0x1F);
+    }
+
+    /**
+     * Octree over the occupied histogram bins. Nodes live in parallel arrays; the
+     * tree is at most {@link #BITS} levels deep so it never holds more than
+     * {@code BINS} leaves.
+     */
+    private static final class Octree {
+        private final int[] children;
+        private final long[] count;
+        private final long[] sumR;
+        private final long[] sumG;
+        private final long[] sumB;
+        private final boolean[] leaf;
+        private final int[] paletteIndex;
+        private final int[] histogram = new int[BINS];
+        private final int[][] levelNodes = new int[BITS][];
+        private final int[] levelSizes = new int[BITS];
+        private int nodeCount;
+        private int leafCount;
+        private final int limit;
+        private final int[] argb;
+        private final int pixelCount;
+
+        Octree(int[] argb, int pixelCount, int limit) {
+            this.argb = argb;
+            this.pixelCount = pixelCount;
+            this.limit = limit;
+
+            long[] binR = new long[BINS];
+            long[] binG = new long[BINS];
+            long[] binB = new long[BINS];
+            int occupied = 0;
+            for (int i = 0; i < pixelCount; i++) {
+                int pixel = argb[i];
+                if (pixel >>> 24 < 0x80) {
+                    continue;
+                }
+                int bin = binOf(pixel);
+                if (histogram[bin]++ == 0) {
+                    occupied++;
+                }
+                binR[bin] += pixel >> 16 & 0xFF;
+                binG[bin] += pixel >> 8 & 0xFF;
+                binB[bin] += pixel & 0xFF;
+            }
+
+            int capacity = 1 + occupied * BITS;
+            children = new int[capacity * 8];
+            count = new long[capacity];
+            sumR = new long[capacity];
+            sumG = new long[capacity];
+            sumB = new long[capacity];
+            leaf = new boolean[capacity];
+            paletteIndex = new int[capacity];
+            for (int level = 0; level < BITS; level++) {
+                levelNodes[level] = new int[Math.min(capacity, 1 << (3 * level))];
+            }
+
+            nodeCount = 1;
+            levelNodes[0][levelSizes[0]++] = 0;
+            for (int bin = 0; bin < BINS; bin++) {
+                if (histogram[bin] != 0) {
+                    insert(bin, histogram[bin], binR[bin], binG[bin], binB[bin]);
+                }
+            }
+            reduce();
+        }
+
+        private void insert(int bin, long pixels, long r, long g, long b) {
+            int node = 0;
+            for (int level = 0; level < BITS; level++) {
+                int slot = node * 8 + octant(bin, level);
+                int child = children[slot];
+                if (child == 0) {
+                    child = nodeCount++;
+                    children[slot] = child;
+                    if (level + 1 < BITS) {
+                        levelNodes[level + 1][levelSizes[level + 1]++] = child;
+                    } else {
+                        leaf[child] = true;
+                        leafCount++;
+                    }
+                }
+                node = child;
+            }
+            count[node] += pixels;
+            sumR[node] += r;
+            sumG[node] += g;
+            sumB[node] += b;
+        }
+
+        /** Folds the least populated deepest nodes into their parents until few enough leaves remain. */
+        private void reduce() {
+            for (int level = BITS - 1; level >= 0 && leafCount > limit; level--) {
+                int size = levelSizes[level];
+                long[] order = new long[size];
+                for (int i = 0; i < size; i++) {
+                    int node = levelNodes[level][i];
+                    long pixels = 0;
+                    for (int octant = 0; octant < 8; octant++) {
+                        int child = children[node * 8 + octant];
+                        if (child != 0) {
+                            pixels += count[child];
+                        }
+                    }
+                    count[node] = pixels;
+                    order[i] = pixels << 24 | node;
+                }
+                Arrays.sort(order);
+                for (int i = 0; i < size && leafCount > limit; i++) {
+                    merge((int) (order[i] & 0xFFFFFF));
+                }
+            }
+        }
+
+        private void merge(int node) {
+            long pixels = 0;
+            long r = 0;
+            long g = 0;
+            long b = 0;
+            int merged = 0;
+            for (int octant = 0; octant < 8; octant++) {
+                int slot = node * 8 + octant;
+                int child = children[slot];
+                if (child != 0) {
+                    pixels += count[child];
+                    r += sumR[child];
+                    g += sumG[child];
+                    b += sumB[child];
+                    children[slot] = 0;
+                    merged++;
+                }
+            }
+            count[node] = pixels;
+            sumR[node] = r;
+            sumG[node] = g;
+            sumB[node] = b;
+            leaf[node] = true;
+            leafCount -= merged - 1;
+        }
+
+        int[] mapInto(ByteBuffer indices) {
+            int[] palette = palette();
+
+            int[] binToIndex = new int[BINS];
+            for (int bin = 0; bin < BINS; bin++) {
+                if (histogram[bin] != 0) {
+                    binToIndex[bin] = paletteIndex[leafFor(bin)];
+                }
+            }
+            for (int i = 0; i < pixelCount; i++) {
+                int pixel = argb[i];
+                if (pixel >>> 24 >= 0x80) {
+                    indices.put(i, (byte) binToIndex[binOf(pixel)]);
+                }
+            }
+            return palette;
+        }
+
+        int[] palette() {
+            int[] palette = new int[leafCount];
+            int size = assignPalette(0, palette, 0);
+            if (size == palette.length) {
+                return palette;
+            }
+            int[] trimmed = new int[Math.max(size, 1)];
+            System.arraycopy(palette, 0, trimmed, 0, size);
+            return trimmed;
+        }
+
+        /** Walks the leaves still linked from the root, giving each the average colour of its pixels. */
+        private int assignPalette(int node, int[] palette, int size) {
+            if (leaf[node]) {
+                long pixels = count[node];
+                if (pixels > 0) {
+                    int r = (int) ((sumR[node] + pixels / 2) / pixels);
+                    int g = (int) ((sumG[node] + pixels / 2) / pixels);
+                    int b = (int) ((sumB[node] + pixels / 2) / pixels);
+                    paletteIndex[node] = size;
+                    palette[size++] = r << 16 | g << 8 | b;
+                }
+                return size;
+            }
+            for (int octant = 0; octant < 8; octant++) {
+                int child = children[node * 8 + octant];
+                if (child != 0) {
+                    size = assignPalette(child, palette, size);
+                }
+            }
+            return size;
+        }
+
+        private int leafFor(int bin) {
+            int node = 0;
+            for (int level = 0; level < BITS && !leaf[node]; level++) {
+                node = children[node * 8 + octant(bin, level)];
+            }
+            return node;
+        }
+    }
+
+    private static int octant(int bin, int level) {
+        int shift = BITS - 1 - level;
+        return ((bin >> (10 + shift)) & 1) << 2 | ((bin >> (5 + shift)) & 1) << 1 | ((bin >> shift) & 1);
+    }
+}
@@ -0,0 +1,9 @@
+package com.gifcreator;
+
+/** Where {@link MultiConvert} puts the GIFs of nested input folders. */
+public enum OutputLayout {
+    /** Every GIF directly in the output folder, named after its relative path joined with '-'. */
+    FLAT,
+    /** The input folder tree is recreated under the output folder. */
+    MIRROR
+}
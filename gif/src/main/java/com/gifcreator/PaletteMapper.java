@@ -0,0 +1,182 @@
+package com.gifcreator;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Maps ARGB pixels onto a fixed palette, optionally dithered.
+ *
+ * Lookups go through an inverse-colour cube: one byte per 5-bit-per-channel
+ * colour cell, holding the palette entry nearest to the cell centre, so a pixel
+ * costs one array read whatever the palette size. Without dithering and with
+ * ordered dithering every pixel is independent, and frames of at least
+ * {@value #PARALLEL_PIXELS} pixels are mapped in bands of rows on the current
+ * fork/join pool (the frame pool when called from the frame pipeline).
+ * Floyd–Steinberg carries error from row to row and always runs on the calling
+ * thread.
+ */
+final class PaletteMapper {
+    static final int PARALLEL_PIXELS = 1 << 18;
+
+    private static final int BITS = 5;
+    private static final int CELLS = 1 << (3 * BITS);
+    private static final int BAND_ROWS = 64;
+
+    // 8x8 Bayer matrix, values 0..63
+    private static final int[] BAYER = {
+            0, 32, 8, 40, 2, 34, 10, 42,
+            48, 16, 56, 24, 50, 18, 58, 26,
+            12, 44, 4, 36, 14, 46, 6, 38,
+            60, 28, 52, 20, 62, 30, 54, 22,
+            3, 35, 11, 43, 1, 33, 9, 41,
+            51, 19, 59, 27, 49, 17, 57, 25,
+            15, 47, 7, 39, 13, 45, 5, 37,
+            63, 31, 55, 23, 61, 29, 53, 21 };
+
+    private final int[] palette;
+    private final byte[] cube;
+    private final int transparentIndex;
+    private final Dithering dithering;
+    private final int[] bayerOffsets = new int[BAYER.length];
+
+    /**
+     * @param palette          RGB colours; the entry at {@code transparentIndex}, if
+     *                         any, is never chosen for an opaque pixel
+     * @param transparentIndex index for pixels with alpha below 128, or -1 to map
+     *                         them by colour
+     */
+    PaletteMapper(int[] palette, int transparentIndex, Dithering dithering) {
+        this.palette = palette;
+        this.transparentIndex = transparentIndex;
+        this.dithering = dithering;
+        int colors = transparentIndex >= 0 ? palette.length - 1 : palette.length;
+        this.cube = inverseCube(palette, colors);
+        // Spread the threshold over about the distance between neighbouring palette colours
+        int spread = (int) Math.round(255 / Math.cbrt(Math.max(2, colors)));
+        for (int i = 0; i < BAYER.length; i++) {
+            bayerOffsets[i] = (2 * BAYER[i] + 1) * spread / 128 - spread / 2;
+        }
+    }
+
+    /**
+     * The nearest of the first {@code colors} entries of {@code palette}, by squared
+     * RGB distance, for the centre of every cell. Transparent entries are expected
+     * past {@code colors}.
+     */
+    static byte[] inverseCube(int[] palette, int colors) {
+        byte[] cube = new byte[CELLS];
+        int half = 1 << (7 - BITS);
+        for (int cell = 0; cell < CELLS; cell++) {
+            int r = (cell >> (2 * BITS)) << (8 - BITS) | half;
+            int g = (cell >> BITS & (1 << BITS) - 1) << (8 - BITS) | half;
+            int b = (cell & (1 << BITS) - 1) << (8 - BITS) | half;
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < colors; i++) {
+                int dr = (palette[i] >> 16 & 0xFF) - r;
+                int dg = (palette[i] >> 8 & 0xFF) - g;
+                int db = (palette[i] & 0xFF) - b;
+                int distance = dr * dr + dg * dg + db * db;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = i;
+                }
+            }
+            cube[cell] = (byte) best;
+        }
+        return cube;
+    }
+
+    /** Maps the first {@code width * height} pixels of {@code argb} into {@code indices}. */
+    void map(int[] argb, int width, int height, ByteBuffer indices) {
+        if (dithering == Dithering.FLOYD_STEINBERG) {
+            diffuse(argb, width, height, indices);
+            return;
+        }
+        int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+        if ((long) width * height < PARALLEL_PIXELS || bands < 2) {
+            mapRows(argb, width, 0, height, indices);
+            return;
+        }
+        IntStream.range(0, bands).parallel().forEach(band -> mapRows(argb, width, band * BAND_ROWS,
+                Math.min(height, (band + 1) * BAND_ROWS), indices));
+    }
+
+    private void mapRows(int[] argb, int width, int fromRow, int toRow, ByteBuffer indices) {
+        boolean ordered = dithering == Dithering.ORDERED;
+        for (int y = fromRow; y < toRow; y++) {
+            int row = y * width;
+            int bayerRow = (y & 7) << 3;
+            for (int x = 0; x < width; x++) {
+                int pixel = argb[row + x];
+                if (transparentIndex >= 0 && pixel >>> 24 < 0x80) {
+                    indices.put(row + x, (byte) transparentIndex);
+                } else if (ordered) {
+                    int offset = bayerOffsets[bayerRow | x & 7];
+                    indices.put(row + x, cube[cell(clamp((pixel >> 16 & 0xFF) + offset),
+                            clamp((pixel >> 8 & 0xFF) + offset), clamp((pixel & 0xFF) + offset))]);
+                } else {
+                    indices.put(row + x, cube[OctreeQuantizer.binOf(pixel)]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Floyd–Steinberg, left to right on even rows and right to left on odd ones.
+     * Errors are kept in sixteenths in two rows of {@code (width + 2) * 3} ints,
+     * with a guard column on each side.
+     */
+    private void diffuse(int[] argb, int width, int height, ByteBuffer indices) {
+        int stride = (width + 2) * 3;
+        int[] current = new int[stride];
+        int[] next = new int[stride];
+        for (int y = 0; y < height; y++) {
+            boolean forward = (y & 1) == 0;
+            int direction = forward ? 1 : -1;
+            int row = y * width;
+            for (int i = 0; i < width; i++) {
+                int x = forward ? i : width - 1 - i;
+                int pixel = argb[row + x];
+                if (transparentIndex >= 0 && pixel >>> 24 < 0x80) {
+                    indices.put(row + x, (byte) transparentIndex);
+                    continue;
+                }
+                int e = (x + 1) * 3;
+                int r = clamp((pixel >> 16 & 0xFF) + (current[e] + 8 >> 4));
+                int g = clamp((pixel >> 8 & 0xFF) + (current[e + 1] + 8 >> 4));
+                int b = clamp((pixel & 0xFF) + (current[e + 2] + 8 >> 4));
+                int index = cube[cell(r, g, b)] & 0xFF;
+                indices.put(row + x, (byte) index);
+
+                int chosen = palette[index];
+                spread(r - (chosen >> 16 & 0xFF), e, direction, current, next);
+                spread(g - (chosen >> 8 & 0xFF), e + 1, direction, current, next);
+                spread(b - (chosen & 0xFF), e + 2, direction, current, next);
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0);
+        }
+    }
+
+    /** 7/16 ahead, then 3/16, 5/16 and 1/16 on the next row, behind to ahead. */
+    private static void spread(int error, int e, int direction, int[] current, int[] next) {
+        int ahead = e + 3 * direction;
+        int behind = e - 3 * direction;
+        current[ahead] += error * 7;
+        next[behind] += error * 3;
+        next[e] += error * 5;
+        next[ahead] += error;
+    }
+
+    private static int cell(int r, int g, int b) {
+        return (r >> 3) << 10 | (g >> 3) << 5 | b >> 3;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+}
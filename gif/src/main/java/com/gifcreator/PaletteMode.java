@@ -0,0 +1,9 @@
+package com.gifcreator;
+
+/** How the 256-colour palettes of a GIF are chosen. */
+public enum PaletteMode {
+    /** Each frame is quantized on its own and carries a local colour table. */
+    LOCAL,
+    /** One palette is built from a sample of the whole sequence, see {@link GlobalPalette}. */
+    GLOBAL
+}
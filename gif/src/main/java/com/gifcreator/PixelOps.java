@@ -0,0 +1,71 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Bulk pixel kernels over packed ARGB arrays. {@link #get()} returns a SIMD
+ * implementation built on the Vector API when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}, and a plain scalar loop otherwise.
+ * Both produce exactly the same output.
+ */
+abstract class PixelOps {
+
+    /** Set to {@code false} to force the scalar kernels even when the Vector API is available. */
+    static final String SIMD_PROPERTY = "gifcreator.simd";
+
+    private static final PixelOps INSTANCE = select();
+
+    static PixelOps get() {
+        return INSTANCE;
+    }
+
+    /** Short name of the active implementation, for logs and benchmarks. */
+    abstract String name();
+
+    /**
+     * Composites each pixel of {@code pixels[from, to)} over the opaque colour
+     * {@code backgroundRgb}, in place, leaving every pixel fully opaque.
+     */
+    abstract void compositeOver(int[] pixels, int from, int to, int backgroundRgb);
+
+    /** See {@link ChromaKey} for the keying rule. */
+    abstract void keyGreen(int[] pixels, int from, int to, int threshold);
+
+    /** Returns a new {@code TYPE_INT_ARGB} image of {@code image} drawn over a solid background. */
+    BufferedImage compositeOver(BufferedImage image, int backgroundRgb) {
+        BufferedImage composited = Rasters.newArgb(image.getWidth(), image.getHeight());
+        compositeOver(image, backgroundRgb, Rasters.data(composited));
+        return composited;
+    }
+
+    /**
+     * Writes {@code image} drawn over a solid background into the first
+     * {@code width * height} entries of {@code target}, which may be larger.
+     */
+    void compositeOver(BufferedImage image, int backgroundRgb, int[] target) {
+        Rasters.copyArgb(image, target);
+        compositeOver(target, 0, image.getWidth() * image.getHeight(), backgroundRgb);
+    }
+
+    /**
+     * {@code round(a * b / 255)} the way Java2D's blending tables compute it, so
+     * compositing matches what {@code Graphics2D.drawImage} produced before.
+     * The intermediate product exceeds 2^31, hence the unsigned shift.
+     */
+    static int mul8(int a, int b) {
+        return (a * b * 0x010101 + 0x800000) >>> 24;
+    }
+
+    private static PixelOps select() {
+        if (Boolean.parseBoolean(System.getProperty(SIMD_PROPERTY, "true"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (PixelOps) Class.forName("com.gifcreator.VectorPixelOps")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall through to the scalar kernels
+            }
+        }
+        return new ScalarPixelOps();
+    }
+}
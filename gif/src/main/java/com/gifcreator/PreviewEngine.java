@@ -0,0 +1,108 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Frames for the live preview in {@link App}, decoded straight at the size of the
+ * preview panel instead of converting the sequence to a GIF and scaling that.
+ *
+ * Each file is read with source subsampling (see
+ * {@link FrameLoader#read(File, int, int)}) and composited the way the GIF would
+ * be. Thumbnails are kept in an LRU cache keyed by path, modification time, size,
+ * bounds and background, so previewing the same folder again, or going back to
+ * it after another one, only decodes files that changed. The cache and a single
+ * preview are both bounded by a pixel budget; a sequence too long to fit shows
+ * every n-th frame for n times as long, so it still plays at the right speed.
+ */
+final class PreviewEngine {
+    static final long DEFAULT_PIXEL_BUDGET = 16L * 1024 * 1024;
+
+    private record Key(String path, long modified, long length, int maxWidth, int maxHeight,
+            Background background) {
+    }
+
+    private final long pixelBudget;
+    private final Map<Key, BufferedImage> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedPixels;
+
+    PreviewEngine(long pixelBudget) {
+        this.pixelBudget = pixelBudget;
+    }
+
+    /**
+     * How many source frames each preview frame stands for, so that a preview of
+     * {@code count} frames at this size fits the pixel budget.
+     */
+    int stepFor(int count, int maxWidth, int maxHeight) {
+        long perFrame = Math.max(1L, (long) maxWidth * maxHeight);
+        long fit = Math.max(1L, pixelBudget / perFrame);
+        return (int) Math.max(1L, (count + fit - 1) / fit);
+    }
+
+    /**
+     * Decodes every {@code step}-th file to fit {@code maxWidth} x
+     * {@code maxHeight}, handing each frame to {@code frames} as soon as it is
+     * ready. Files that can't be read are left out. Stops early if the calling
+     * thread is interrupted.
+     */
+    void load(List<File> files, int step, int maxWidth, int maxHeight, Background background,
+            Consumer<BufferedImage> frames) {
+        for (int i = 0; i < files.size() && !Thread.currentThread().isInterrupted(); i += step) {
+            BufferedImage thumbnail = thumbnail(files.get(i), maxWidth, maxHeight, background);
+            if (thumbnail != null) {
+                frames.accept(thumbnail);
+            }
+        }
+    }
+
+    /** One frame of the preview, from the cache when the file hasn't changed. */
+    BufferedImage thumbnail(File file, int maxWidth, int maxHeight, Background background) {
+        Key key = new Key(file.getAbsolutePath(), file.lastModified(), file.length(), maxWidth, maxHeight,
+                background);
+        synchronized (this) {
+            BufferedImage cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        BufferedImage source = FrameLoader.read(file, maxWidth, maxHeight);
+        if (source == null) {
+            return null;
+        }
+        BufferedImage thumbnail;
+        if (background == Background.TRANSPARENT) {
+            thumbnail = Rasters.newArgb(source.getWidth(), source.getHeight());
+            Rasters.copyArgb(source, Rasters.data(thumbnail));
+        } else {
+            thumbnail = PixelOps.get().compositeOver(source, MultiConvert.GREEN_RGB);
+        }
+
+        synchronized (this) {
+            if (cache.put(key, thumbnail) == null) {
+                cachedPixels += pixels(thumbnail);
+            }
+            Iterator<BufferedImage> eldest = cache.values().iterator();
+            while (cachedPixels > pixelBudget && eldest.hasNext()) {
+                cachedPixels -= pixels(eldest.next());
+                eldest.remove();
+            }
+        }
+        return thumbnail;
+    }
+
+    /** Pixels currently held by the cache. */
+    synchronized long cachedPixels() {
+        return cachedPixels;
+    }
+
+    private static long pixels(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight();
+    }
+}
@@ -0,0 +1,31 @@
+package com.gifcreator;
+
+/** How the colours of a frame, or of a sequence for a global palette, are reduced to 256. */
+public enum QuantizerType {
+    /** Octree over a 5-bit-per-channel histogram, see {@link OctreeQuantizer}. The fastest. */
+    OCTREE,
+    /**
+     * Median cut over the same histogram, see {@link MedianCutQuantizer}: splits the
+     * colour space where the pixels are, which keeps large smooth areas smoother.
+     */
+    MEDIAN_CUT,
+    /**
+     * Dekker's NeuQuant neural network, see {@link NeuQuantQuantizer}. The best
+     * palettes for photographic frames and the slowest; its sample factor trades
+     * quality for speed.
+     */
+    NEUQUANT;
+
+    /** @param sampleFactor for {@link #NEUQUANT}: learn from one pixel in this many, 1 to 30 */
+    ColorQuantizer create(int sampleFactor) {
+        switch (this) {
+            case MEDIAN_CUT:
+                return new MedianCutQuantizer();
+            case NEUQUANT:
+                return new NeuQuantQuantizer(sampleFactor);
+            case OCTREE:
+            default:
+                return new OctreeQuantizer();
+        }
+    }
+}
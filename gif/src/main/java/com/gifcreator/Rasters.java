@@ -0,0 +1,134 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Helpers for getting at the packed ARGB pixels behind a {@link BufferedImage}
+ * without going through per-pixel {@code getRGB}/{@code setRGB} calls.
+ */
+final class Rasters {
+
+    // One scratch array per thread, grown to the largest frame that thread has seen
+    private static final ThreadLocal<int[]> SCRATCH = new ThreadLocal<>();
+
+    private Rasters() {
+    }
+
+    /**
+     * A per-thread array with room for at least {@code pixelCount} ARGB pixels, for
+     * intermediate frames that are consumed before the thread handles the next one.
+     * The contents are undefined and the array must not escape the current frame.
+     */
+    static int[] scratchArgb(int pixelCount) {
+        int[] scratch = SCRATCH.get();
+        if (scratch == null || scratch.length < pixelCount) {
+            scratch = new int[pixelCount];
+            SCRATCH.set(scratch);
+        }
+        return scratch;
+    }
+
+    /**
+     * Returns the image's own backing array when it is a plain {@code TYPE_INT_ARGB}
+     * raster, so writes go straight to the image. Any other layout is converted
+     * into a fresh array with a single bulk {@code getRGB} call.
+     */
+    static int[] argbPixels(BufferedImage image) {
+        int[] direct = directArgb(image);
+        if (direct != null) {
+            return direct;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        return image.getRGB(0, 0, width, height, new int[width * height], 0, width);
+    }
+
+    /** Copies the image's pixels into {@code target} as packed non-premultiplied ARGB. */
+    static void copyArgb(BufferedImage image, int[] target) {
+        int[] direct = directArgb(image);
+        if (direct != null) {
+            System.arraycopy(direct, 0, target, 0, direct.length);
+            return;
+        }
+        if (copyInterleavedBytes(image, target)) {
+            return;
+        }
+        int width = image.getWidth();
+        image.getRGB(0, 0, width, image.getHeight(), target, 0, width);
+    }
+
+    /**
+     * Converts the {@code TYPE_4BYTE_ABGR} and {@code TYPE_3BYTE_BGR} images the PNG
+     * and JPEG readers produce straight from their byte arrays, instead of through
+     * a colour model call per pixel.
+     *
+     * @return {@code false} if the image has any other layout
+     */
+    private static boolean copyInterleavedBytes(BufferedImage image, int[] target) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_4BYTE_ABGR && type != BufferedImage.TYPE_3BYTE_BGR) {
+            return false;
+        }
+        WritableRaster raster = image.getRaster();
+        if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0
+                || !(raster.getSampleModel() instanceof PixelInterleavedSampleModel)) {
+            return false;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+        int stride = type == BufferedImage.TYPE_4BYTE_ABGR ? 4 : 3;
+        DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+        if (sampleModel.getPixelStride() != stride || sampleModel.getScanlineStride() != width * stride
+                || buffer.getOffset() != 0) {
+            return false;
+        }
+        byte[] data = buffer.getData();
+        int count = width * height;
+        if (stride == 4) {
+            for (int i = 0, p = 0; i < count; i++, p += 4) {
+                target[i] = (data[p] & 0xFF) << 24 | (data[p + 3] & 0xFF) << 16 | (data[p + 2] & 0xFF) << 8
+                        | (data[p + 1] & 0xFF);
+            }
+        } else {
+            for (int i = 0, p = 0; i < count; i++, p += 3) {
+                target[i] = 0xFF000000 | (data[p + 2] & 0xFF) << 16 | (data[p + 1] & 0xFF) << 8 | (data[p] & 0xFF);
+            }
+        }
+        return true;
+    }
+
+    /** Creates a {@code TYPE_INT_ARGB} image whose pixels can be reached through {@link #data}. */
+    static BufferedImage newArgb(int width, int height) {
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /** The backing array of an image created by {@link #newArgb(int, int)}. */
+    static int[] data(BufferedImage argbImage) {
+        return ((DataBufferInt) argbImage.getRaster().getDataBuffer()).getData();
+    }
+
+    private static int[] directArgb(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_ARGB) {
+            return null;
+        }
+        WritableRaster raster = image.getRaster();
+        if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0
+                || raster.getSampleModelTranslateY() != 0
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+            return null;
+        }
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        if (sampleModel.getScanlineStride() != image.getWidth()) {
+            return null;
+        }
+        DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+        return buffer.getOffset() == 0 ? buffer.getData() : null;
+    }
+}
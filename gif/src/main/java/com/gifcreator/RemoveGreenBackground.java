@@ -1,24 +1,25 @@
 package com.gifcreator;
 
-import com.madgag.gif.fmsware.AnimatedGifEncoder;
-import com.madgag.gif.fmsware.GifDecoder;
-
-import javax.imageio.ImageIO;
-import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
 
 public class RemoveGreenBackground {
 
     private static final int GREEN_THRESHOLD = 150;
 
-    public static void processGifs(String gifDir) {
+    public static int processGifs(String gifDir) {
+        return processGifs(gifDir, GifEncoderType.FAST);
+    }
+
+    /** @return the number of GIFs written to the "transparent" folder */
+    public static int processGifs(String gifDir, GifEncoderType encoderType) {
         File dir = new File(gifDir);
         if (!dir.exists() || !dir.isDirectory()) {
-            System.out.println("Invalid directory: " + gifDir);
-            return;
+            System.err.println("Invalid directory: " + gifDir);
+            return 0;
         }
 
         // Create the output directory inside the input directory
@@ -32,57 +33,61 @@ public class RemoveGreenBackground {
         File[] gifFiles = dir.listFiles((d, name) -> name.toLowerCase().endsWith(".gif"));
 
         if (gifFiles == null || gifFiles.length == 0) {
-            System.out.println("No GIFs found in the directory.");
-            return;
+            System.err.println("No GIFs found in the directory.");
+            return 0;
         }
 
         // Process each GIF file
+        int processed = 0;
         for (File gifFile : gifFiles) {
             try {
-                GifDecoder decoder = new GifDecoder();
-                int status = decoder.read(gifFile.getAbsolutePath());
-                if (status != GifDecoder.STATUS_OK) {
-                    System.out.println("Failed to read GIF: " + gifFile.getAbsolutePath());
+                if (!keyGif(gifFile, Paths.get(outputGifDir, gifFile.getName()).toFile(), encoderType)) {
+                    System.err.println("Failed to read GIF: " + gifFile.getAbsolutePath());
                     continue;
                 }
-
-                AnimatedGifEncoder encoder = new AnimatedGifEncoder();
-                encoder.start(outputGifDir + File.separator + gifFile.getName());
-                encoder.setRepeat(decoder.getLoopCount());
-
-                for (int i = 0; i < decoder.getFrameCount(); i++) {
-                    BufferedImage frame = decoder.getFrame(i);
-                    BufferedImage transparentFrame = makeTransparent(frame);
-                    encoder.setDelay(decoder.getDelay(i));
-                    encoder.addFrame(transparentFrame);
-                }
-
-                encoder.finish();
-                System.out.println("Processed GIF saved at: " + outputGifDir + File.separator + gifFile.getName());
+                processed++;
+                System.err.println("Processed GIF saved at: " + outputGifDir + File.separator + gifFile.getName());
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
+        return processed;
     }
 
-    private static BufferedImage makeTransparent(BufferedImage image) {
-        BufferedImage transparentImage = new BufferedImage(image.getWidth(), image.getHeight(),
-                BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2d = transparentImage.createGraphics();
-        g2d.drawImage(image, 0, 0, null);
+    /**
+     * Keys one GIF frame by frame: each frame is decoded onto the reader's canvas,
+     * copied into a reused buffer, keyed in place and handed to the encoder, so
+     * memory doesn't grow with the number of frames.
+     *
+     * @return {@code false} if the GIF has no frames
+     */
+    static boolean keyGif(File gifFile, File outputFile, GifEncoderType encoderType) throws IOException {
+        try (GifFrameReader reader = GifFrameReader.open(gifFile)) {
+            BufferedImage frame = reader.next();
+            if (frame == null) {
+                return false;
+            }
+            int width = reader.width();
+            int height = reader.height();
+            BufferedImage keyed = Rasters.newArgb(width, height);
+            int[] keyedPixels = Rasters.data(keyed);
+            int[] canvasPixels = Rasters.data(frame);
 
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                int pixel = image.getRGB(x, y);
-                Color color = new Color(pixel, true);
-                if (color.getGreen() > GREEN_THRESHOLD && color.getRed() < GREEN_THRESHOLD
-                        && color.getBlue() < GREEN_THRESHOLD) {
-                    transparentImage.setRGB(x, y, 0x00FFFFFF & pixel); // Set alpha to 0 (transparent)
-                }
+            try (OutputStream output = GifOutput.toFile(outputFile.toPath())) {
+                GifEncoder encoder = encoderType.create();
+                encoder.start(output, reader.loopCount());
+                do {
+                    System.arraycopy(canvasPixels, 0, keyedPixels, 0, keyedPixels.length);
+                    ChromaKey.keyGreen(keyedPixels, width, height, GREEN_THRESHOLD);
+                    encoder.addFrame(keyed, reader.delayMs());
+                } while (reader.next() != null);
+                encoder.finish();
             }
         }
+        return true;
+    }
 
-        g2d.dispose();
-        return transparentImage;
+    static BufferedImage makeTransparent(BufferedImage image) {
+        return ChromaKey.keyGreen(image, GREEN_THRESHOLD);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package com.gifcreator;
+
+/** Portable {@link PixelOps}; also handles the tail lanes of {@link VectorPixelOps}. */
+class ScalarPixelOps extends PixelOps {
+
+    @Override
+    String name() {
+        return "scalar";
+    }
+
+    @Override
+    void compositeOver(int[] pixels, int from, int to, int backgroundRgb) {
+        int backR = backgroundRgb >> 16 & 0xFF;
+        int backG = backgroundRgb >> 8 & 0xFF;
+        int backB = backgroundRgb & 0xFF;
+        for (int i = from; i < to; i++) {
+            int pixel = pixels[i];
+            int alpha = pixel >>> 24;
+            int inverse = 255 - alpha;
+            int r = mul8(alpha, pixel >> 16 & 0xFF) + mul8(inverse, backR);
+            int g = mul8(alpha, pixel >> 8 & 0xFF) + mul8(inverse, backG);
+            int b = mul8(alpha, pixel & 0xFF) + mul8(inverse, backB);
+            pixels[i] = 0xFF000000 | r << 16 | g << 8 | b;
+        }
+    }
+
+    @Override
+    void keyGreen(int[] pixels, int from, int to, int threshold) {
+        for (int i = from; i < to; i++) {
+            int pixel = pixels[i];
+            int r = pixel >> 16 & 0xFF;
+            int g = pixel >> 8 & 0xFF;
+            int b = pixel & 0xFF;
+            // Sign bit set only when r < t, b < t and g > t all hold
+            int keyed = ((r - threshold) & (b - threshold) & (threshold - g)) >> 31;
+            int clear = ((pixel >>> 24) - 1) >> 31; // all ones when alpha == 0
+            pixels[i] = pixel & ~(keyed & 0xFF000000) & ~(clear & ~keyed);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.gifcreator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Lists the images of one directory in a single pass and finds their sequences.
+ *
+ * Every file name is parsed once: a name of the form {@code base-N.png} (or
+ * {@code .jpg}, {@code .jpeg}, in any case) belongs to the sequence {@code base},
+ * grouped in a hash map with the case of the base ignored, as the old per-seed
+ * regular expression did. Numbers are turned into sort keys up front, so sorting
+ * never parses a name again, and digit runs of any length order correctly
+ * instead of overflowing an {@code int}.
+ *
+ * A scan is a snapshot and is not thread-safe.
+ */
+final class SequenceScanner {
+    private final List<Image> images;
+    private final Map<String, List<Image>> sequences;
+    // Sequences already sorted by frame number
+    private final Map<String, List<File>> sorted = new HashMap<>();
+
+    private SequenceScanner(List<Image> images, Map<String, List<Image>> sequences) {
+        this.images = images;
+        this.sequences = sequences;
+    }
+
+    /** Scans {@code dir}; an unreadable directory gives an empty scan. */
+    static SequenceScanner scan(File dir) {
+        List<Image> images = new ArrayList<>();
+        Map<String, List<Image>> sequences = new HashMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir.toPath())) {
+            for (Path entry : entries) {
+                Image image = Image.parse(entry.toFile());
+                if (image == null) {
+                    continue;
+                }
+                images.add(image);
+                if (image.sequence != null) {
+                    sequences.computeIfAbsent(image.sequence, key -> new ArrayList<>()).add(image);
+                }
+            }
+        } catch (IOException e) {
+            return new SequenceScanner(Collections.emptyList(), Collections.emptyMap());
+        }
+        return new SequenceScanner(images, sequences);
+    }
+
+    /** Every image of the directory, ordered by the number formed by all the digits of its name. */
+    List<File> images() {
+        List<Image> ordered = new ArrayList<>(images);
+        ordered.sort(Comparator.comparing(image -> image.allDigits));
+        return files(ordered);
+    }
+
+    /** Images whose name contains {@code suffix}, in directory order. */
+    List<File> seeds(String suffix) {
+        List<File> seeds = new ArrayList<>();
+        for (Image image : images) {
+            if (image.file.getName().contains(suffix)) {
+                seeds.add(image.file);
+            }
+        }
+        return seeds;
+    }
+
+    /** The files {@code baseName-N.ext} ordered by {@code N}, or an empty list. */
+    List<File> sequence(String baseName) {
+        String key = baseName.toLowerCase(Locale.ROOT);
+        return sorted.computeIfAbsent(key, k -> {
+            List<Image> frames = sequences.get(k);
+            if (frames == null) {
+                return Collections.emptyList();
+            }
+            List<Image> ordered = new ArrayList<>(frames);
+            ordered.sort(Comparator.comparing(image -> image.index));
+            return Collections.unmodifiableList(files(ordered));
+        });
+    }
+
+    private static List<File> files(List<Image> images) {
+        List<File> files = new ArrayList<>(images.size());
+        for (Image image : images) {
+            files.add(image.file);
+        }
+        return files;
+    }
+
+    static boolean isImage(String name) {
+        return extensionStart(name) >= 0;
+    }
+
+    /**
+     * The base of the sequence an image starts or belongs to, in the case of its
+     * name: for a seed, a name containing {@code suffix}, whatever comes before
+     * the suffix, or the name without its extension when the suffix opens it; for
+     * any other image the {@code base} of {@code base-N.ext}, or the name without
+     * its extension. Batches and the {@link FolderWatcher} both key sequences by
+     * it, in lower case.
+     */
+    static String baseName(String name, String suffix) {
+        int suffixIndex = name.indexOf(suffix);
+        if (suffixIndex > 0) {
+            return name.substring(0, suffixIndex);
+        }
+        int dot = extensionStart(name);
+        int dash = dot < 0 || suffixIndex == 0 ? -1 : indexDash(name, dot);
+        if (dash >= 0) {
+            return name.substring(0, dash);
+        }
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    /** Index of the dash before the frame number that ends {@code name} at {@code dot}, or -1. */
+    private static int indexDash(String name, int dot) {
+        int dash = name.lastIndexOf('-', dot - 1);
+        if (dash < 0 || dash + 1 == dot) {
+            return -1;
+        }
+        for (int i = dash + 1; i < dot; i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        return dash;
+    }
+
+    /** Index of the dot before a png, jpg or jpeg extension, or -1. */
+    private static int extensionStart(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return -1;
+        }
+        String extension = name.substring(dot + 1);
+        return extension.equalsIgnoreCase("png") || extension.equalsIgnoreCase("jpg")
+                || extension.equalsIgnoreCase("jpeg") ? dot : -1;
+    }
+
+    private static final class Image {
+        final File file;
+        // Lower-case base of base-N.ext, or null
+        final String sequence;
+        final NumberKey index;
+        final NumberKey allDigits;
+
+        private Image(File file, String sequence, NumberKey index, NumberKey allDigits) {
+            this.file = file;
+            this.sequence = sequence;
+            this.index = index;
+            this.allDigits = allDigits;
+        }
+
+        static Image parse(File file) {
+            String name = file.getName();
+            int dot = extensionStart(name);
+            if (dot < 0) {
+                return null;
+            }
+            StringBuilder digits = new StringBuilder();
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    digits.append(c);
+                }
+            }
+
+            int dash = indexDash(name, dot);
+            String sequence = null;
+            NumberKey index = null;
+            if (dash >= 0) {
+                sequence = name.substring(0, dash).toLowerCase(Locale.ROOT);
+                index = NumberKey.of(name, dash + 1, dot);
+            }
+            return new Image(file, sequence, index, NumberKey.of(digits, 0, digits.length()));
+        }
+    }
+
+    /**
+     * A run of decimal digits as a {@code long}, or, past 18 significant digits, as
+     * the digits themselves, compared by length and then character by character.
+     * An empty run is zero.
+     */
+    static final class NumberKey implements Comparable<NumberKey> {
+        private static final int MAX_LONG_DIGITS = 18;
+
+        // Long.MAX_VALUE when the digits don't fit
+        private final long value;
+        private final String digits;
+
+        private NumberKey(long value, String digits) {
+            this.value = value;
+            this.digits = digits;
+        }
+
+        static NumberKey of(CharSequence text, int from, int to) {
+            while (from < to && text.charAt(from) == '0') {
+                from++;
+            }
+            if (to - from > MAX_LONG_DIGITS) {
+                return new NumberKey(Long.MAX_VALUE, text.subSequence(from, to).toString());
+            }
+            long value = 0;
+            for (int i = from; i < to; i++) {
+                value = value * 10 + (text.charAt(i) - '0');
+            }
+            return new NumberKey(value, null);
+        }
+
+        @Override
+        public int compareTo(NumberKey other) {
+            if (value != other.value || digits == null) {
+                return Long.compare(value, other.value);
+            }
+            if (digits.length() != other.digits.length()) {
+                return Integer.compare(digits.length(), other.digits.length());
+            }
+            return digits.compareTo(other.digits);
+        }
+    }
+}
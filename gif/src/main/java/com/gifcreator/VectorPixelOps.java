@@ -0,0 +1,67 @@
+package com.gifcreator;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link PixelOps} on the incubating Vector API. Only loaded reflectively by
+ * {@link PixelOps#get()} once the {@code jdk.incubator.vector} module is known to
+ * be present; lanes left over at the end of a range go through the scalar code.
+ */
+final class VectorPixelOps extends ScalarPixelOps {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    String name() {
+        return "vector-" + SPECIES.vectorBitSize();
+    }
+
+    @Override
+    void compositeOver(int[] pixels, int from, int to, int backgroundRgb) {
+        IntVector backR = IntVector.broadcast(SPECIES, backgroundRgb >> 16 & 0xFF);
+        IntVector backG = IntVector.broadcast(SPECIES, backgroundRgb >> 8 & 0xFF);
+        IntVector backB = IntVector.broadcast(SPECIES, backgroundRgb & 0xFF);
+        int i = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector pixel = IntVector.fromArray(SPECIES, pixels, i);
+            IntVector alpha = pixel.lanewise(VectorOperators.LSHR, 24);
+            IntVector inverse = alpha.neg().add(255);
+            IntVector r = mul8(alpha, pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF)).add(mul8(inverse, backR));
+            IntVector g = mul8(alpha, pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF)).add(mul8(inverse, backG));
+            IntVector b = mul8(alpha, pixel.and(0xFF)).add(mul8(inverse, backB));
+            r.lanewise(VectorOperators.LSHL, 16)
+                    .or(g.lanewise(VectorOperators.LSHL, 8))
+                    .or(b)
+                    .or(0xFF000000)
+                    .intoArray(pixels, i);
+        }
+        super.compositeOver(pixels, i, to, backgroundRgb);
+    }
+
+    @Override
+    void keyGreen(int[] pixels, int from, int to, int threshold) {
+        int i = from;
+        int upper = from + SPECIES.loopBound(to - from);
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector pixel = IntVector.fromArray(SPECIES, pixels, i);
+            IntVector r = pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+            IntVector g = pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+            IntVector b = pixel.and(0xFF);
+            VectorMask<Integer> keyed = r.lt(threshold)
+                    .and(b.lt(threshold))
+                    .and(g.compare(VectorOperators.GT, threshold));
+            VectorMask<Integer> clear = pixel.lanewise(VectorOperators.LSHR, 24).eq(0).andNot(keyed);
+            pixel.blend(pixel.and(0x00FFFFFF), keyed)
+                    .blend(0, clear)
+                    .intoArray(pixels, i);
+        }
+        super.keyGreen(pixels, i, to, threshold);
+    }
+
+    private static IntVector mul8(IntVector a, IntVector b) {
+        return a.mul(b).mul(0x010101).add(0x800000).lanewise(VectorOperators.LSHR, 24);
+    }
+}
@@ -0,0 +1,179 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void unchangedFramesSurviveReloadAndNewMtimes() throws Exception {
+        File output = folder.newFolder("processed");
+        List<File> frames = Arrays.asList(frame("a-0.png", "first"), frame("a-1.png", "second"));
+        File gif = gif(output, "a.gif");
+
+        BuildManifest manifest = BuildManifest.load(output);
+        manifest.record("a", gif, stamps(manifest, "a", frames), "FAST|LOCAL|false|100");
+        manifest.save();
+
+        frames.get(0).setLastModified(frames.get(0).lastModified() - 60_000);
+        BuildManifest reloaded = BuildManifest.load(output);
+        assertEquals(gif, reloaded.currentOutput("a", frames, "FAST|LOCAL|false|100"));
+        assertNull(reloaded.currentOutput("a", frames, "FAST|GLOBAL|false|100"));
+        assertNull(reloaded.currentOutput("b", frames, "FAST|LOCAL|false|100"));
+    }
+
+    @Test
+    public void changedContentOrMissingOutputIsDirty() throws Exception {
+        File output = folder.newFolder("processed");
+        List<File> frames = Arrays.asList(frame("a-0.png", "first"), frame("a-1.png", "second"));
+        File gif = gif(output, "a.gif");
+        BuildManifest manifest = BuildManifest.load(output);
+        manifest.record("a", gif, stamps(manifest, "a", frames), "s");
+
+        // Same size, different bytes
+        Files.write(frames.get(1).toPath(), "SECOND".getBytes("UTF-8"));
+        frames.get(1).setLastModified(frames.get(1).lastModified() + 60_000);
+        assertNull(manifest.currentOutput("a", frames, "s"));
+        assertEquals(gif, manifest.previousOutput("a"));
+
+        manifest.record("a", gif, stamps(manifest, "a", frames), "s");
+        assertEquals(gif, manifest.currentOutput("a", frames, "s"));
+        gif.delete();
+        assertNull(manifest.currentOutput("a", frames, "s"));
+        assertNull(manifest.previousOutput("a"));
+    }
+
+    @Test
+    public void batchesSharingAnOutputRootKeepEachOthersEntries() throws Exception {
+        File output = folder.newFolder("processed");
+        List<File> frames = Arrays.asList(frame("a-0.png", "first"));
+        File a = gif(output, "a.gif");
+        File b = gif(output, "b.gif");
+
+        // Both load before either saves, as two server jobs would
+        BuildManifest first = BuildManifest.load(output);
+        BuildManifest second = BuildManifest.load(output);
+        first.record("a", a, stamps(first, "a", frames), "s");
+        second.record("b", b, stamps(second, "b", frames), "s");
+        first.save();
+        second.save();
+
+        BuildManifest reloaded = BuildManifest.load(output);
+        assertEquals(a, reloaded.currentOutput("a", frames, "s"));
+        assertEquals(b, reloaded.currentOutput("b", frames, "s"));
+    }
+
+    @Test
+    public void concurrentSavesLoseNothing() throws Exception {
+        File output = folder.newFolder("processed");
+        List<File> frames = Arrays.asList(frame("a-0.png", "first"));
+        File gif = gif(output, "a.gif");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> saves = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                String key = "seq" + i;
+                saves.add(pool.submit(() -> {
+                    BuildManifest manifest = BuildManifest.load(output);
+                    manifest.record(key, gif, stamps(manifest, key, frames), "s");
+                    manifest.save();
+                    return null;
+                }));
+            }
+            for (Future<?> save : saves) {
+                save.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        BuildManifest reloaded = BuildManifest.load(output);
+        for (int i = 0; i < 16; i++) {
+            assertEquals("seq" + i, gif, reloaded.currentOutput("seq" + i, frames, "s"));
+        }
+        String[] left = output.list();
+        Arrays.sort(left);
+        assertArrayEquals(new String[] { BuildManifest.FILE_NAME, BuildManifest.LOCK_NAME, "a.gif" }, left);
+    }
+
+    @Test
+    public void onlyNewOrChangedFramesAreLeftToHash() throws Exception {
+        File output = folder.newFolder("processed");
+        List<File> frames = Arrays.asList(frame("a-0.png", "first"), frame("a-1.png", "second"));
+        File gif = gif(output, "a.gif");
+        BuildManifest manifest = BuildManifest.load(output);
+        manifest.record("a", gif, stamps(manifest, "a", frames), "s");
+        long firstCrc = stamps(manifest, "b", frames).get(0).crc;
+
+        // Same size and mtime: the recorded CRC is trusted, even over new bytes
+        long modified = frames.get(0).lastModified();
+        Files.write(frames.get(0).toPath(), "FIRST".getBytes("UTF-8"));
+        frames.get(0).setLastModified(modified);
+        frames.get(1).setLastModified(frames.get(1).lastModified() + 60_000);
+        List<BuildManifest.Stamp> stamps = manifest.stamp("a", frames);
+        assertEquals(firstCrc, stamps.get(0).crc);
+        assertEquals(BuildManifest.UNKNOWN_CRC, stamps.get(1).crc);
+        assertEquals(BuildManifest.UNKNOWN_CRC, manifest.stamp("b", frames).get(0).crc);
+
+        List<BuildManifest.Stamp> complete = BuildManifest.withChecksums(stamps,
+                new long[] { BuildManifest.UNKNOWN_CRC, 42 });
+        assertEquals(firstCrc, complete.get(0).crc);
+        assertEquals(42, complete.get(1).crc);
+    }
+
+    @Test
+    public void loaderChecksumsMatchTheFiles() throws Exception {
+        File png = new File(folder.getRoot(), "a-0.png");
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB), "png", png);
+        List<File> frames = Arrays.asList(png, frame("a-1.png", "not an image"));
+        long[] checksums = { BuildManifest.UNKNOWN_CRC, BuildManifest.UNKNOWN_CRC };
+        try (FrameLoader loader = new FrameLoader(frames, 2, null, checksums)) {
+            loader.load(frames.get(0));
+            loader.load(frames.get(1));
+        }
+
+        // Files that fail to decode were still read, so they get a CRC too
+        BuildManifest manifest = BuildManifest.load(folder.newFolder("processed"));
+        List<BuildManifest.Stamp> hashed = stamps(manifest, "a", frames);
+        assertEquals(hashed.get(0).crc, checksums[0]);
+        assertEquals(hashed.get(1).crc, checksums[1]);
+    }
+
+    /** Stamps with every CRC hashed from the file. */
+    private static List<BuildManifest.Stamp> stamps(BuildManifest manifest, String key, List<File> frames)
+            throws Exception {
+        return BuildManifest.withChecksums(manifest.stamp(key, frames), null);
+    }
+
+    private File frame(String name, String content) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+        return file;
+    }
+
+    private static File gif(File dir, String name) throws Exception {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), new byte[] { 'G', 'I', 'F' });
+        return file;
+    }
+}
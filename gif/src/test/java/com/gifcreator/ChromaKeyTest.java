@@ -0,0 +1,82 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ChromaKeyTest {
+
+    @Test
+    public void matchesPerPixelImplementationOnSmallFrame() {
+        assertMatchesLegacy(randomFrame(83, 57, 1));
+    }
+
+    @Test
+    public void matchesPerPixelImplementationOnRowSplitFrame() {
+        assertMatchesLegacy(randomFrame(1280, 720, 2));
+    }
+
+    @Test
+    public void thresholdIsExclusive() {
+        BufferedImage frame = new BufferedImage(3, 1, BufferedImage.TYPE_INT_ARGB);
+        frame.setRGB(0, 0, 0xFF009600); // g == 150: kept
+        frame.setRGB(1, 0, 0xFF009700); // g == 151: keyed
+        frame.setRGB(2, 0, 0xFF969700); // r == 150: kept
+
+        BufferedImage keyed = RemoveGreenBackground.makeTransparent(frame);
+
+        assertEquals(0xFF009600, keyed.getRGB(0, 0));
+        assertEquals(0x00009700, keyed.getRGB(1, 0));
+        assertEquals(0xFF969700, keyed.getRGB(2, 0));
+    }
+
+    private static void assertMatchesLegacy(BufferedImage frame) {
+        BufferedImage expected = legacyMakeTransparent(frame);
+        BufferedImage actual = RemoveGreenBackground.makeTransparent(frame);
+        for (int y = 0; y < frame.getHeight(); y++) {
+            for (int x = 0; x < frame.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /** Frames as a GIF decoder hands them out: every pixel fully opaque or fully transparent. */
+    private static BufferedImage randomFrame(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int alpha = random.nextInt(10) == 0 ? 0 : 0xFF;
+                int rgb = random.nextBoolean() ? 0x00FF00 + random.nextInt(0x40) : random.nextInt(0x1000000);
+                frame.setRGB(x, y, alpha << 24 | rgb);
+            }
+        }
+        return frame;
+    }
+
+    /** The original getRGB/Color/setRGB loop the kernel replaced. */
+    private static BufferedImage legacyMakeTransparent(BufferedImage image) {
+        BufferedImage transparentImage = new BufferedImage(image.getWidth(), image.getHeight(),
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = transparentImage.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int pixel = image.getRGB(x, y);
+                Color color = new Color(pixel, true);
+                if (color.getGreen() > 150 && color.getRed() < 150 && color.getBlue() < 150) {
+                    transparentImage.setRGB(x, y, 0x00FFFFFF & pixel);
+                }
+            }
+        }
+
+        g2d.dispose();
+        return transparentImage;
+    }
+}
@@ -0,0 +1,283 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CliTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void jobLinesOverrideCommandLineOptions() throws IOException {
+        File jobs = folder.newFile("jobs.txt");
+        Files.write(jobs.toPath(), Arrays.asList(
+                "# comentário",
+                "",
+                "--mode sequential --delay 40 \"pasta com espaço\"",
+                "--encoder imageio outra"), StandardCharsets.UTF_8);
+
+        Cli.Invocation invocation = Cli.parse(new String[] { "--palette", "global", "--layout", "mirror",
+                "primeira", "--jobs", jobs.getPath() });
+
+        assertEquals(3, invocation.jobs.size());
+        assertNull(invocation.summary);
+
+        Cli.Job first = invocation.jobs.get(0);
+        assertEquals("primeira", first.input);
+        assertEquals(MultiConvert.ProcessingMode.RECURSIVE, first.options.getMode());
+        assertEquals(PaletteMode.GLOBAL, first.options.getPaletteMode());
+        assertEquals(OutputLayout.MIRROR, first.options.getOutputLayout());
+
+        Cli.Job second = invocation.jobs.get(1);
+        assertEquals("pasta com espaço", second.input);
+        assertEquals(MultiConvert.ProcessingMode.SEQUENTIAL, second.options.getMode());
+        assertEquals(40, second.options.getFrameDelay());
+        assertEquals(PaletteMode.GLOBAL, second.options.getPaletteMode());
+
+        Cli.Job third = invocation.jobs.get(2);
+        assertEquals(GifEncoderType.IMAGEIO, third.options.getEncoder());
+        assertEquals(100, third.options.getFrameDelay());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOptionIsAUsageError() {
+        Cli.parse(new String[] { "--fast", "pasta" });
+    }
+
+    @Test
+    public void splitsQuotedArgumentsAndEscapesJson() {
+        assertArrayEquals(new String[] { "--output", "a b", "c'd" }, Cli.split("--output 'a b'  \"c'd\""));
+        assertEquals("\"C:\\\\x\\\"y\\u0001\"", Cli.json("C:\\x\"y\u0001"));
+        assertTrue(Cli.parse(new String[] { "--help" }).help);
+    }
+
+    @Test
+    public void standardOutputIsOnlyTheJsonSummary() throws IOException {
+        File clips = folder.newFolder("clips");
+        for (int i = 0; i < 5; i++) {
+            ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB), "png",
+                    new File(clips, "walk-" + i + ".png"));
+        }
+        File stills = folder.newFolder("stills");
+        ImageIO.write(new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB), "png", new File(stills, "still.png"));
+        String[] args = { "--mode", "sequential", "--output", new File(folder.getRoot(), "out").getPath(),
+                clips.getPath(), stills.getPath(), new File(folder.getRoot(), "missing").getPath() };
+
+        // The second run finds the GIF up to date; both print progress along the way
+        for (int run = 0; run < 2; run++) {
+            List<String> lines = stdoutOf(args, Cli.EXIT_FAILED);
+            assertEquals(4, lines.size());
+            for (String line : lines) {
+                assertTrue(line, new JsonReader(line).document() instanceof Map);
+            }
+            Map<?, ?> total = (Map<?, ?>) new JsonReader(lines.get(3)).document();
+            assertEquals(Boolean.TRUE, total.get("total"));
+            assertEquals(run == 0 ? 1.0 : 0.0, total.get("created"));
+            assertEquals(run == 0 ? 0.0 : 1.0, total.get("upToDate"));
+            assertEquals(1.0, total.get("failed"));
+        }
+    }
+
+    @Test
+    public void subcommandsRunTheSingleStepToolsWithTheSameSummary() throws IOException {
+        Cli.Invocation invocation = Cli.parse(new String[] { "key", "--encoder", "imageio", "a", "b" });
+        assertEquals(Cli.Command.KEY, invocation.command);
+        assertEquals(2, invocation.jobs.size());
+        assertEquals(GifEncoderType.IMAGEIO, invocation.jobs.get(1).options.getEncoder());
+        assertEquals(Cli.Command.CONVERT, Cli.parse(new String[] { "./key" }).command);
+
+        File clips = folder.newFolder("clips");
+        for (int i = 0; i < 5; i++) {
+            ImageIO.write(TestImages.random(8, 8, BufferedImage.TYPE_INT_ARGB, i), "png",
+                    new File(clips, "walk-" + i + ".png"));
+        }
+        List<String> lines = stdoutOf(new String[] { "sequence", clips.getPath() }, Cli.EXIT_OK);
+        assertEquals(2, lines.size());
+        Map<?, ?> job = (Map<?, ?>) new JsonReader(lines.get(0)).document();
+        assertEquals("sequence", job.get("command"));
+        assertEquals(1.0, job.get("created"));
+        File processed = new File(clips, "processed");
+        assertTrue(new File(processed, "walk.gif").isFile());
+
+        lines = stdoutOf(new String[] { "key", processed.getPath(), new File(folder.getRoot(), "missing").getPath() },
+                Cli.EXIT_FAILED);
+        assertEquals(3, lines.size());
+        Map<?, ?> total = (Map<?, ?>) new JsonReader(lines.get(2)).document();
+        assertEquals("key", total.get("command"));
+        assertEquals(1.0, total.get("created"));
+        assertEquals(1.0, total.get("failed"));
+        assertTrue(new File(processed, "transparent/walk.gif").isFile());
+    }
+
+    /** Runs the CLI with {@code System.out} pointing at its standard output, as {@code main} does. */
+    private static List<String> stdoutOf(String[] args, int exitCode) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        PrintStream original = System.out;
+        System.setOut(out);
+        try {
+            assertEquals(exitCode, Cli.run(args, out, new PrintStream(new ByteArrayOutputStream(), true, "UTF-8")));
+        } finally {
+            System.setOut(original);
+        }
+        List<String> lines = new ArrayList<>();
+        for (String line : bytes.toString("UTF-8").split("\\R")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /** A strict reader for one JSON value per line; numbers come back as doubles. */
+    private static final class JsonReader {
+        private final String text;
+        private int position;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        Object document() {
+            Object value = value();
+            skipSpace();
+            if (position != text.length()) {
+                throw error();
+            }
+            return value;
+        }
+
+        private Object value() {
+            skipSpace();
+            if (position >= text.length()) {
+                throw error();
+            }
+            char c = text.charAt(position);
+            if (c == '{') {
+                Map<String, Object> object = new LinkedHashMap<>();
+                position++;
+                skipSpace();
+                if (!take('}')) {
+                    do {
+                        skipSpace();
+                        String key = string();
+                        skipSpace();
+                        expect(':');
+                        object.put(key, value());
+                        skipSpace();
+                    } while (take(','));
+                    expect('}');
+                }
+                return object;
+            }
+            if (c == '[') {
+                List<Object> array = new ArrayList<>();
+                position++;
+                skipSpace();
+                if (!take(']')) {
+                    do {
+                        array.add(value());
+                        skipSpace();
+                    } while (take(','));
+                    expect(']');
+                }
+                return array;
+            }
+            if (c == '"') {
+                return string();
+            }
+            for (String literal : new String[] { "true", "false", "null" }) {
+                if (text.startsWith(literal, position)) {
+                    position += literal.length();
+                    return literal.equals("null") ? null : Boolean.valueOf(literal);
+                }
+            }
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            try {
+                return Double.valueOf(text.substring(start, position));
+            } catch (NumberFormatException e) {
+                throw error();
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c < 0x20) {
+                    throw error();
+                }
+                if (c == '\\') {
+                    if (position >= text.length()) {
+                        throw error();
+                    }
+                    char escaped = text.charAt(position++);
+                    int index = "\"\\/bfnrt".indexOf(escaped);
+                    if (escaped == 'u' && position + 4 <= text.length()) {
+                        sb.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                    } else if (index >= 0) {
+                        sb.append("\"\\/\b\f\n\r\t".charAt(index));
+                    } else {
+                        throw error();
+                    }
+                } else {
+                    sb.append(c);
+                }
+            }
+            throw error();
+        }
+
+        private void skipSpace() {
+            while (position < text.length() && " \t\r\n".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+        }
+
+        private boolean take(char c) {
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!take(c)) {
+                throw error();
+            }
+        }
+
+        private IllegalArgumentException error() {
+            return new IllegalArgumentException("Not JSON at " + position + ": " + text);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConversionMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void histogramPercentilesAreBucketUpperBounds() {
+        ConversionMetrics.Histogram histogram = new ConversionMetrics().latency(ConversionMetrics.Stage.DECODE);
+        assertEquals(0, histogram.percentileNanos(50));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1_000);
+        }
+        histogram.record(1_000_000);
+
+        assertEquals(100, histogram.count());
+        assertEquals(99 * 1_000 + 1_000_000, histogram.totalNanos());
+        assertEquals(1023, histogram.percentileNanos(50));
+        assertEquals(1023, histogram.percentileNanos(99));
+        assertEquals((1 << 20) - 1, histogram.percentileNanos(100));
+    }
+
+    @Test
+    public void conversionFeedsMetricsListenerAndFlightRecorder() throws Exception {
+        File input = folder.newFolder("walk");
+        for (int i = 0; i < 3; i++) {
+            BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+            image.setRGB(i, i, 0xFFFF0000);
+            ImageIO.write(image, "png", new File(input, "walk-" + i + ".png"));
+        }
+        // Not an image at all: decoding fails and the frame is skipped
+        assertTrue(new File(input, "walk-3.png").createNewFile());
+
+        AtomicInteger queued = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger created = new AtomicInteger();
+        MultiConvert converter = new MultiConvert(ConversionOptions.builder()
+                .outputDir(new File(folder.getRoot(), "out"))
+                .incremental(false)
+                .frameParallelism(2)
+                .listener(new ConversionListener() {
+                    @Override
+                    public void framesQueued(String source, int frames) {
+                        queued.addAndGet(frames);
+                    }
+
+                    @Override
+                    public void frameWritten(String source) {
+                        written.incrementAndGet();
+                    }
+
+                    @Override
+                    public void frameSkipped(String source) {
+                        skipped.incrementAndGet();
+                    }
+
+                    @Override
+                    public void gifCreated(String source, File gif) {
+                        created.incrementAndGet();
+                    }
+                })
+                .build());
+
+        Path dump = folder.getRoot().toPath().resolve("conversion.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.gifcreator.GifConversion");
+            recording.start();
+            assertEquals(1, converter.convertImagesToGif(input.getPath()).getCreated());
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        assertEquals(4, queued.get());
+        assertEquals(3, written.get());
+        assertEquals(1, skipped.get());
+        assertEquals(1, created.get());
+
+        ConversionMetrics metrics = converter.getMetrics();
+        for (ConversionMetrics.Stage stage : ConversionMetrics.Stage.values()) {
+            assertEquals(stage.name(), 3, metrics.frames(stage));
+        }
+        assertEquals(1, metrics.gifsCreated());
+        File[] gifs = new File(folder.getRoot(), "out").listFiles((d, name) -> name.endsWith(".gif"));
+        assertEquals(gifs[0].length(), metrics.bytesWritten());
+        assertEquals(0, metrics.framesInFlight());
+        assertEquals(0, metrics.jobsQueued());
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        assertEquals(1, events.size());
+        assertEquals(3, events.get(0).getInt("frames"));
+        assertEquals(gifs[0].length(), events.get(0).getLong("bytes"));
+        assertEquals(gifs[0].getAbsolutePath(), events.get(0).getString("output"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConversionServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void convertsAndKeysJobsSentByTheClient() throws Exception {
+        File input = folder.newFolder("walk");
+        for (int i = 0; i < 3; i++) {
+            BufferedImage frame = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+            frame.setRGB(i, i, 0xFFFF0000);
+            ImageIO.write(frame, "png", new File(input, "walk-" + i + ".png"));
+        }
+        File output = new File(folder.getRoot(), "out");
+        Path socket = new File(folder.getRoot(), "s.sock").toPath();
+
+        try (ConversionServer server = ConversionServer.start(socket, 1)) {
+            String first = ConversionClient.submit(socket, "convert",
+                    Arrays.asList("--output", output.getPath(), input.getPath()));
+            assertTrue(first, first.startsWith("{\"ok\":true"));
+            assertTrue(first, first.contains("\"created\":1,"));
+            assertTrue(new File(output, "walk.gif").length() > 0);
+
+            // Relative paths are resolved against the client's working directory
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int exit = ConversionClient.run(new String[] { "--socket", socket.toString(), "--output",
+                    output.getPath(), Paths.get("").toAbsolutePath().relativize(input.toPath()).toString() }, new PrintStream(out, true, "UTF-8"), System.err);
+            assertEquals(Cli.EXIT_OK, exit);
+            assertTrue(out.toString("UTF-8").contains("\"upToDate\":1,"));
+
+            String keyed = ConversionClient.submit(socket, "key", Collections.singletonList(output.getPath()));
+            assertTrue(keyed, keyed.contains("\"keyed\":1"));
+            assertTrue(new File(output, "transparent/walk.gif").length() > 0);
+        }
+        assertFalse(socket.toFile().exists());
+    }
+
+    @Test
+    public void badRequestsGetAnError() throws Exception {
+        Path socket = new File(folder.getRoot(), "s.sock").toPath();
+        try (ConversionServer server = ConversionServer.start(socket, 1)) {
+            String unknown = ConversionClient.send(socket, "explode");
+            assertTrue(unknown, unknown.startsWith("{\"ok\":false,\"error\":"));
+            String badOption = ConversionClient.submit(socket, "convert", Arrays.asList("--bogus", "x"));
+            assertTrue(badOption, badOption.contains("--bogus"));
+            assertEquals("{\"ok\":true}", ConversionClient.send(socket, "ping"));
+        }
+    }
+
+    @Test
+    public void socketDirectoryIsCreatedPrivate() throws Exception {
+        Path socket = new File(folder.getRoot(), "run/gifcreator/s.sock").toPath();
+        try (ConversionServer server = ConversionServer.start(socket, 1)) {
+            assertEquals(PosixFilePermissions.fromString("rwx------"),
+                    Files.getPosixFilePermissions(socket.getParent()));
+            assertEquals("{\"ok\":true}", ConversionClient.send(socket, "ping"));
+        }
+    }
+
+    @Test
+    public void sharedSocketDirectoryIsRefused() throws Exception {
+        Path missing = new File(folder.getRoot(), "private").toPath();
+        ConversionServer.privateDirectory(missing);
+        assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(missing));
+        // Already checked, so a second server can reuse it
+        ConversionServer.privateDirectory(missing);
+
+        Path open = folder.newFolder("open").toPath();
+        Files.setPosixFilePermissions(open, PosixFilePermissions.fromString("rwxr-xr-x"));
+        try {
+            ConversionServer.privateDirectory(open);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(open.toString()));
+        }
+    }
+
+    @Test
+    public void joinedArgumentsSplitBackUnchanged() {
+        String[] args = { "plain", "with space", "it's", "say \"hi\"", "" };
+        assertEquals(Arrays.asList(args), Arrays.asList(Cli.split(Cli.join(Arrays.asList(args)))));
+    }
+}
@@ -0,0 +1,128 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+public class DeltaFramesTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int[] COLORS = { 0x00000000, 0xFF00FF00, 0xFFC81E1E, 0xFF1E1EC8, 0xFFFFFFFF };
+
+    @Test
+    public void deltaFramesDecodeToTheOriginalSequence() throws Exception {
+        BufferedImage[] frames = sequence(new Random(5), 12);
+        for (GifEncoderType type : GifEncoderType.values()) {
+            byte[] gif = encode(frames, type, true);
+            assertDecodesTo(type.name(), frames, gif);
+            assertTrue(type.name() + " smaller than full frames", gif.length < encode(frames, type, false).length);
+        }
+    }
+
+    @Test
+    public void repeatedFramesAreMergedIntoOne() throws Exception {
+        BufferedImage[] frames = sequence(new Random(9), 2);
+        BufferedImage[] repeated = { frames[0], frames[0], frames[0], frames[1] };
+
+        ImageReader reader = TestImages.gifReader(encode(repeated, GifEncoderType.FAST, true));
+        assertEquals(2, reader.getNumImages(true));
+        assertEquals("30", graphicControl(reader, 0).getAttribute("delayTime"));
+    }
+
+    /** An opaque sprite walking over a background that is half transparent, half noise. */
+    private static BufferedImage[] sequence(Random random, int count) {
+        int[] background = new int[WIDTH * HEIGHT];
+        for (int i = WIDTH * HEIGHT / 2; i < background.length; i++) {
+            background[i] = COLORS[random.nextInt(COLORS.length)];
+        }
+        int[] sprite = new int[8 * 8];
+        for (int i = 0; i < sprite.length; i++) {
+            sprite[i] = COLORS[1 + random.nextInt(COLORS.length - 1)];
+        }
+
+        BufferedImage[] frames = new BufferedImage[count];
+        int spriteX = 4;
+        int spriteY = HEIGHT / 2 - 4;
+        for (int f = 0; f < count; f++) {
+            spriteX = Math.max(0, Math.min(WIDTH - 8, spriteX + random.nextInt(7) - 2));
+            spriteY = Math.max(0, Math.min(HEIGHT - 8, spriteY + random.nextInt(5) - 2));
+            int[] pixels = background.clone();
+            for (int y = 0; y < 8; y++) {
+                System.arraycopy(sprite, y * 8, pixels, (spriteY + y) * WIDTH + spriteX, 8);
+            }
+            frames[f] = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+            frames[f].setRGB(0, 0, WIDTH, HEIGHT, pixels, 0, WIDTH);
+        }
+        return frames;
+    }
+
+    private static byte[] encode(BufferedImage[] frames, GifEncoderType type, boolean deltaFrames) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifEncoder encoder = type.create(deltaFrames);
+        encoder.start(out, 0);
+        for (BufferedImage frame : frames) {
+            encoder.addFrame(frame, 100);
+        }
+        encoder.finish();
+        return out.toByteArray();
+    }
+
+    /** Replays the frames the way a browser does: draw at the frame offset, then apply its disposal. */
+    private static void assertDecodesTo(String message, BufferedImage[] expected, byte[] gif) throws Exception {
+        ImageReader reader = TestImages.gifReader(gif);
+        int[] canvas = new int[WIDTH * HEIGHT];
+        int count = reader.getNumImages(true);
+        assertEquals(message, expected.length, count);
+        for (int f = 0; f < count; f++) {
+            BufferedImage frame = reader.read(f);
+            IIOMetadataNode descriptor = node(reader, f, "ImageDescriptor");
+            int left = Integer.parseInt(descriptor.getAttribute("imageLeftPosition"));
+            int top = Integer.parseInt(descriptor.getAttribute("imageTopPosition"));
+            for (int y = 0; y < frame.getHeight(); y++) {
+                for (int x = 0; x < frame.getWidth(); x++) {
+                    int pixel = frame.getRGB(x, y);
+                    if (pixel >>> 24 != 0) {
+                        canvas[(top + y) * WIDTH + left + x] = pixel;
+                    }
+                }
+            }
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int pixel = expected[f].getRGB(x, y);
+                    assertEquals(message + " frame " + f + " pixel " + x + "," + y,
+                            pixel >>> 24 == 0 ? 0 : pixel, canvas[y * WIDTH + x]);
+                }
+            }
+            if ("restoreToBackgroundColor".equals(graphicControl(reader, f).getAttribute("disposalMethod"))) {
+                for (int y = top; y < top + frame.getHeight(); y++) {
+                    for (int x = left; x < left + frame.getWidth(); x++) {
+                        canvas[y * WIDTH + x] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    private static IIOMetadataNode graphicControl(ImageReader reader, int index) throws Exception {
+        return node(reader, index, "GraphicControlExtension");
+    }
+
+    private static IIOMetadataNode node(ImageReader reader, int index, String name) throws Exception {
+        Node root = reader.getImageMetadata(index).getAsTree("javax_imageio_gif_image_1.0");
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeName().equals(name)) {
+                return (IIOMetadataNode) child;
+            }
+        }
+        throw new AssertionError("missing " + name);
+    }
+}
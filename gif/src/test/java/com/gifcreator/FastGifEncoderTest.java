@@ -0,0 +1,126 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import javax.imageio.ImageReader;
+
+import org.junit.Test;
+
+public class FastGifEncoderTest {
+
+    @Test
+    public void framesWithFewColoursRoundTripExactly() throws Exception {
+        Random random = new Random(42);
+        int[] colors = { 0xFF00FF00, 0xFFC81E1E, 0xFF1E1EC8, 0xFFFFFFFF, 0xFF000000 };
+        BufferedImage[] frames = new BufferedImage[3];
+        for (int f = 0; f < frames.length; f++) {
+            frames[f] = new BufferedImage(97, 61, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < 61; y++) {
+                for (int x = 0; x < 97; x++) {
+                    frames[f].setRGB(x, y, colors[random.nextInt(colors.length)]);
+                }
+            }
+        }
+
+        ImageReader reader = TestImages.gifReader(encode(frames, GifEncoderType.FAST));
+        assertEquals(frames.length, reader.getNumImages(true));
+        for (int f = 0; f < frames.length; f++) {
+            assertSamePixels(frames[f], reader.read(f));
+        }
+    }
+
+    @Test
+    public void longRunsSurviveLzwTableResets() throws Exception {
+        // Large noisy frame: forces many clear codes and every code width up to 12 bits
+        Random random = new Random(7);
+        BufferedImage frame = new BufferedImage(640, 480, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 480; y++) {
+            for (int x = 0; x < 640; x++) {
+                int level = random.nextInt(200);
+                frame.setRGB(x, y, 0xFF000000 | level << 16 | (x & 0xFF) << 8);
+            }
+        }
+        BufferedImage indexed = new OctreeQuantizer().quantize(frame);
+
+        ImageReader reader = TestImages.gifReader(encode(new BufferedImage[] { indexed }, GifEncoderType.FAST));
+        assertSamePixels(indexed, reader.read(0));
+    }
+
+    @Test
+    public void globalPaletteIsWrittenOnce() throws Exception {
+        Random random = new Random(11);
+        int[] colors = { 0xFF00FF00, 0xFFC81E1E, 0xFF1E1EC8, 0xFF123456 };
+        BufferedImage[] frames = new BufferedImage[4];
+        for (int f = 0; f < frames.length; f++) {
+            frames[f] = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+            for (int y = 0; y < 30; y++) {
+                for (int x = 0; x < 40; x++) {
+                    frames[f].setRGB(x, y, colors[random.nextInt(colors.length)]);
+                }
+            }
+        }
+        GlobalPalette palette = GlobalPalette.fromFrames(frames, 8, 4096, false);
+        BufferedImage[] mapped = new BufferedImage[frames.length];
+        for (int f = 0; f < frames.length; f++) {
+            mapped[f] = palette.map(frames[f]);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifEncoder encoder = GifEncoderType.FAST.create();
+        encoder.start(out, 0, palette.colorModel());
+        for (BufferedImage frame : mapped) {
+            encoder.addFrame(frame, 100);
+        }
+        encoder.finish();
+        byte[] gif = out.toByteArray();
+
+        assertEquals("global colour table flag", 0x80, gif[10] & 0x80);
+        assertTrue(gif.length < encode(mapped, GifEncoderType.FAST).length);
+        ImageReader reader = TestImages.gifReader(gif);
+        for (int f = 0; f < frames.length; f++) {
+            assertSamePixels(frames[f], reader.read(f));
+        }
+    }
+
+    @Test
+    public void transparentPixelsStayTransparent() throws Exception {
+        BufferedImage frame = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                frame.setRGB(x, y, x < 8 ? 0x00000000 : 0xFFFF0000);
+            }
+        }
+
+        for (GifEncoderType type : GifEncoderType.values()) {
+            BufferedImage decoded = TestImages.gifReader(encode(new BufferedImage[] { frame }, type)).read(0);
+            assertEquals(type.name(), 0, decoded.getRGB(3, 3) >>> 24);
+            assertEquals(type.name(), 0xFFFF0000, decoded.getRGB(12, 3));
+        }
+    }
+
+    private static byte[] encode(BufferedImage[] frames, GifEncoderType type) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifEncoder encoder = type.create();
+        encoder.start(out, 0);
+        for (BufferedImage frame : frames) {
+            encoder.addFrame(frame, 100);
+        }
+        encoder.finish();
+        return out.toByteArray();
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.function.BooleanSupplier;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FolderWatcherTest {
+    private static final long TIMEOUT_MILLIS = 20_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void newDirectoriesAreConvertedOnceTheyGoQuiet() throws Exception {
+        File input = folder.newFolder("renders");
+        File output = new File(folder.getRoot(), "out");
+        MultiConvert converter = new MultiConvert(ConversionOptions.builder()
+                .outputDir(output)
+                .outputLayout(OutputLayout.MIRROR)
+                .build());
+        try (FolderWatcher watcher = converter.watch(input.getPath(), 200)) {
+            waitFor(() -> watcher.getRounds() >= 1);
+
+            File shot = new File(input, "shot");
+            assertTrue(shot.mkdir());
+            for (int i = 0; i < 3; i++) {
+                frame(shot, "shot-" + i + ".png", i);
+            }
+            File gif = new File(output, "shot/shot.gif");
+            waitFor(() -> gif.length() > 0 && watcher.getSummary().getCreated() == 1);
+            assertEquals(0, watcher.getSummary().getFailed());
+        }
+    }
+
+    @Test
+    public void onlyTheChangedSequenceIsRebuilt() throws Exception {
+        File input = folder.newFolder("flat");
+        frame(input, "walk-0.png", 0);
+        frame(input, "walk-1.png", 1);
+        File output = new File(folder.getRoot(), "out");
+        MultiConvert converter = new MultiConvert(ConversionOptions.builder()
+                .mode(MultiConvert.ProcessingMode.SEQUENTIAL)
+                .outputDir(output)
+                .build());
+        try (FolderWatcher watcher = converter.watch(input.getPath(), 200)) {
+            waitFor(() -> watcher.getRounds() >= 1);
+            assertEquals(1, watcher.getSummary().getCreated());
+
+            frame(input, "jump-0.png", 2);
+            frame(input, "jump-1.png", 3);
+            waitFor(() -> watcher.getSummary().getCreated() == 2);
+            // walk was neither rebuilt nor even checked against the manifest
+            assertEquals(0, watcher.getSummary().getUpToDate());
+            assertFalse(new File(output, "flat_2.gif").exists());
+        }
+    }
+
+    @Test
+    public void customSuffixSeedsAndFramesAreTracked() throws Exception {
+        File input = folder.newFolder("flat");
+        frame(input, "walk-start.png", 0);
+        frame(input, "walk-1.png", 1);
+        frame(input, "walk-2.png", 2);
+        // Frames without their seed yet: no GIF
+        frame(input, "jump-1.png", 3);
+        frame(input, "jump-2.png", 4);
+        File output = new File(folder.getRoot(), "out");
+        MultiConvert converter = new MultiConvert(ConversionOptions.builder()
+                .mode(MultiConvert.ProcessingMode.SEQUENTIAL)
+                .suffix("-start")
+                .outputDir(output)
+                .build());
+        try (FolderWatcher watcher = converter.watch(input.getPath(), 200)) {
+            waitFor(() -> watcher.getRounds() >= 1);
+            assertEquals(1, watcher.getSummary().getCreated());
+
+            // The seed is not a frame of its own sequence, but still names it
+            frame(input, "jump-start.png", 5);
+            waitFor(() -> watcher.getSummary().getCreated() == 2);
+
+            // A frame of a sequence started by a custom seed rebuilds that GIF in place
+            frame(input, "walk-2.png", 6);
+            waitFor(() -> watcher.getSummary().getCreated() == 3);
+            assertEquals(0, watcher.getSummary().getUpToDate());
+            assertEquals(0, watcher.getSummary().getFailed());
+            assertFalse(new File(output, "flat_2.gif").exists());
+        }
+    }
+
+    private static void frame(File dir, String name, int seed) throws Exception {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(seed % 8, seed / 8, 0xFF0000);
+        ImageIO.write(image, "png", new File(dir, name));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+}
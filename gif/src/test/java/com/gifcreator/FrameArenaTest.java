@@ -0,0 +1,258 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageReader;
+
+import org.junit.Test;
+
+public class FrameArenaTest {
+
+    @Test
+    public void framesAreQuantizedStraightIntoAnOffHeapBuffer() {
+        int[] argb = noise(40, 30, 1);
+        try (FrameArena arena = new FrameArena(1 << 20)) {
+            ByteBuffer indices = arena.allocate(40 * 30);
+            BufferedImage frame = arena.indexed(indices, 40, 30,
+                    new OctreeQuantizer().quantizeInto(argb, 40, 30, indices));
+            ByteBuffer buffer = FrameArena.indices(frame.getRaster(), 40, 30);
+            assertSame(indices, buffer);
+            assertTrue(buffer.isDirect());
+            assertEquals(40 * 30, buffer.limit());
+
+            BufferedImage heap = new OctreeQuantizer().quantize(argb, 40, 30);
+            assertArrayEquals(heap.getRGB(0, 0, 40, 30, null, 0, 40), frame.getRGB(0, 0, 40, 30, null, 0, 40));
+        }
+    }
+
+    @Test
+    public void releasedBuffersAreReused() {
+        try (FrameArena arena = new FrameArena(1 << 20)) {
+            BufferedImage first = frame(arena, 64, 64);
+            ByteBuffer buffer = FrameArena.indices(first.getRaster(), 64, 64);
+            arena.release(first);
+
+            // A smaller frame fits in the same buffer
+            BufferedImage second = frame(arena, 32, 32);
+            assertSame(buffer, FrameArena.indices(second.getRaster(), 32, 32));
+            assertEquals(32 * 32, buffer.limit());
+
+            BufferedImage third = frame(arena, 32, 32);
+            assertNotSame(buffer, FrameArena.indices(third.getRaster(), 32, 32));
+        }
+    }
+
+    @Test
+    public void directMemoryStopsAtTheCap() {
+        try (FrameArena arena = new FrameArena(64 * 64 + 16 * 16)) {
+            ByteBuffer large = arena.allocate(64 * 64);
+            ByteBuffer small = arena.allocate(16 * 16);
+            ByteBuffer overflow = arena.allocate(16 * 16);
+            assertTrue(large.isDirect());
+            assertTrue(small.isDirect());
+            assertFalse(overflow.isDirect());
+
+            arena.release(large);
+            arena.release(small);
+            arena.release(overflow);
+            // The smallest free buffer that fits is handed out; the heap one wasn't kept
+            assertSame(small, arena.allocate(8 * 8));
+            assertSame(large, arena.allocate(8 * 8));
+            assertFalse(arena.allocate(8 * 8).isDirect());
+        }
+    }
+
+    @Test
+    public void droppedBuffersGiveBackTheirRoom() {
+        try (FrameArena arena = new FrameArena(64 * 64)) {
+            ByteBuffer small = arena.allocate(16 * 16);
+            arena.release(small);
+            // The free buffer is too small, so it makes way for a direct one that fits
+            ByteBuffer large = arena.allocate(64 * 64);
+            assertTrue(large.isDirect());
+            assertNotSame(small, large);
+
+            arena.close();
+            arena.release(large);
+            assertTrue(arena.allocate(64 * 64).isDirect());
+        }
+    }
+
+    @Test
+    public void failedEncodeGivesItsBuffersBack() throws Exception {
+        List<BufferedImage> frames = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            frames.add(new OctreeQuantizer().quantize(noise(48, 32, i), 48, 32));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try (FrameArena arena = new FrameArena(4 * 48 * 32)) {
+            GifEncoder encoder = GifEncoderType.FAST.create(false);
+            encoder.start(new ByteArrayOutputStream(), 0);
+            AtomicInteger written = new AtomicInteger();
+            try {
+                // Frames are copied into the arena ahead of the writer, which fails on the third
+                new FramePipeline<BufferedImage, BufferedImage>(pool, 4).run(Collections.unmodifiableList(frames),
+                        frame -> {
+                            ByteBuffer indices = arena.allocate(48 * 32);
+                            indices.put(0, FastGifEncoder.indices(frame.getRaster(), 48, 32));
+                            return arena.indexed(indices, 48, 32, (IndexColorModel) frame.getColorModel());
+                        }, frame -> {
+                            try {
+                                if (written.incrementAndGet() == 3) {
+                                    throw new IOException("disk full");
+                                }
+                                encoder.addFrame(frame, 80);
+                            } finally {
+                                arena.release(frame);
+                            }
+                        }, arena::release);
+                fail();
+            } catch (IOException e) {
+                assertEquals("disk full", e.getMessage());
+            }
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+            for (int i = 0; i < 4; i++) {
+                assertTrue("buffer " + i, arena.allocate(48 * 32).isDirect());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void closedArenaKeepsNothing() {
+        FrameArena arena = new FrameArena(1 << 20);
+        BufferedImage frame = frame(arena, 4, 4);
+        ByteBuffer buffer = FrameArena.indices(frame.getRaster(), 4, 4);
+        arena.close();
+        arena.release(frame);
+        assertNotSame(buffer, FrameArena.indices(frame(arena, 4, 4).getRaster(), 4, 4));
+    }
+
+    @Test
+    public void heapCopiesMatchArenaFrames() {
+        try (FrameArena arena = new FrameArena(1 << 20)) {
+            int[] argb = noise(48, 32, 3);
+            ByteBuffer indices = arena.allocate(48 * 32);
+            BufferedImage frame = arena.indexed(indices, 48, 32,
+                    new OctreeQuantizer().quantizeInto(argb, 48, 32, indices));
+            BufferedImage copy = FrameArena.onHeap(frame);
+            assertTrue(copy.getRaster().getDataBuffer() instanceof DataBufferByte);
+            assertSame(frame.getColorModel(), copy.getColorModel());
+            assertArrayEquals(frame.getRGB(0, 0, 48, 32, null, 0, 48), copy.getRGB(0, 0, 48, 32, null, 0, 48));
+            assertSame(copy, FrameArena.onHeap(copy));
+        }
+    }
+
+    @Test
+    public void fastEncoderWritesArenaFramesLikeHeapFrames() throws Exception {
+        for (boolean delta : new boolean[] { false, true }) {
+            assertArrayEquals("delta " + delta, encode(GifEncoderType.FAST, delta, false),
+                    encode(GifEncoderType.FAST, delta, true));
+        }
+    }
+
+    @Test
+    public void imageIoEncoderWritesArenaFramesLikeHeapFrames() throws Exception {
+        for (boolean delta : new boolean[] { false, true }) {
+            BufferedImage[] heap = decode(encode(GifEncoderType.IMAGEIO, delta, false));
+            BufferedImage[] offHeap = decode(encode(GifEncoderType.IMAGEIO, delta, true));
+            assertEquals(heap.length, offHeap.length);
+            for (int i = 0; i < heap.length; i++) {
+                int width = heap[i].getWidth();
+                int height = heap[i].getHeight();
+                assertArrayEquals("delta " + delta + " frame " + i, heap[i].getRGB(0, 0, width, height, null, 0, width),
+                        offHeap[i].getRGB(0, 0, width, height, null, 0, width));
+            }
+        }
+    }
+
+    @Test
+    public void arenaFramesMayBeReusedAfterAddFrame() throws Exception {
+        // The arena hands the same buffer to every frame; delta frames must still see each one
+        assertEquals(4, decode(encode(GifEncoderType.FAST, true, true)).length);
+    }
+
+    private static byte[] encode(GifEncoderType type, boolean delta, boolean offHeap) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifEncoder encoder = type.create(delta);
+        encoder.start(out, 0);
+        try (FrameArena arena = new FrameArena(1 << 20)) {
+            for (int i = 0; i < 4; i++) {
+                int[] argb = noise(48, 32, 10 + i);
+                BufferedImage frame;
+                if (offHeap) {
+                    ByteBuffer indices = arena.allocate(48 * 32);
+                    frame = arena.indexed(indices, 48, 32, new OctreeQuantizer().quantizeInto(argb, 48, 32, indices));
+                } else {
+                    frame = new OctreeQuantizer().quantize(argb, 48, 32);
+                }
+                encoder.addFrame(frame, 80);
+                arena.release(frame);
+            }
+        }
+        encoder.finish();
+        return out.toByteArray();
+    }
+
+    private static BufferedImage[] decode(byte[] gif) throws Exception {
+        ImageReader reader = TestImages.gifReader(gif);
+        try {
+            BufferedImage[] frames = new BufferedImage[reader.getNumImages(true)];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = reader.read(i);
+            }
+            return frames;
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /** A frame of index 0 in an arena buffer. */
+    private static BufferedImage frame(FrameArena arena, int width, int height) {
+        ByteBuffer indices = arena.allocate(width * height);
+        for (int i = 0; i < width * height; i++) {
+            indices.put(i, (byte) 0);
+        }
+        return arena.indexed(indices, width, height, palette());
+    }
+
+    /** A few colours in blocks, so delta frames have unchanged areas to skip. */
+    private static int[] noise(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                argb[y * width + x] = x < width / 2 ? 0xFF204060 : 0xFF000000 | random.nextInt(8) * 0x1F1F1F;
+            }
+        }
+        return argb;
+    }
+
+    private static IndexColorModel palette() {
+        return OctreeQuantizer.colorModel(new int[] { 0xFF000000, 0xFFFFFFFF }, -1);
+    }
+}
@@ -0,0 +1,126 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FrameCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void offHeapFramesComeBackWithTheSamePixels() {
+        FrameCache cache = new FrameCache(1 << 20, true);
+        int[] types = { BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB,
+                BufferedImage.TYPE_USHORT_GRAY };
+        for (int type : types) {
+            BufferedImage image = TestImages.random(32, 32, type, type);
+            FrameCache.Key key = new FrameCache.Key("frame-" + type, 1, 1);
+            assertNull(cache.get(key));
+            cache.put(key, image);
+
+            BufferedImage cached = cache.get(key);
+            assertNotNull(cached);
+            assertEquals(type, cached.getType());
+            assertArrayEquals(TestImages.argb(image), TestImages.argb(cached));
+        }
+        assertEquals(4, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+
+    @Test
+    public void frequentFramesSurviveAScanAndTheBudgetHolds() {
+        // 32x32 ABGR frames are 4 KB; room for about 160 of them
+        long maxBytes = 40 * 1024 * 16;
+        FrameCache cache = new FrameCache(maxBytes, false);
+        BufferedImage frame = TestImages.random(32, 32, BufferedImage.TYPE_4BYTE_ABGR, 1);
+        FrameCache.Key hot = new FrameCache.Key("hot", 1, 1);
+        cache.get(hot);
+        cache.put(hot, frame);
+        for (int i = 0; i < 5; i++) {
+            cache.get(hot);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            FrameCache.Key key = new FrameCache.Key("scan-" + i, 1, 1);
+            cache.get(key);
+            cache.put(key, TestImages.random(32, 32, BufferedImage.TYPE_4BYTE_ABGR, i));
+            assertTrue(cache.weightedSize() <= maxBytes);
+        }
+        assertSame(frame, cache.get(hot));
+    }
+
+    @Test
+    public void framesFarLargerThanASixteenthOfTheCacheAreKept() {
+        // Each frame takes a third of the budget, like 1080p frames in a small cache
+        long maxBytes = 1 << 20;
+        FrameCache cache = new FrameCache(maxBytes, false);
+        BufferedImage[] frames = new BufferedImage[3];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = TestImages.random(270, 270, BufferedImage.TYPE_4BYTE_ABGR, i);
+            FrameCache.Key key = new FrameCache.Key("large-" + i, 1, 1);
+            assertNull(cache.get(key));
+            cache.put(key, frames[i]);
+        }
+        assertTrue(cache.weightedSize() > maxBytes / 16 * 2);
+        for (int i = 0; i < frames.length; i++) {
+            assertSame(frames[i], cache.get(new FrameCache.Key("large-" + i, 1, 1)));
+        }
+
+        // A frame close to the whole budget still fits, in place of the others
+        BufferedImage huge = TestImages.random(470, 470, BufferedImage.TYPE_4BYTE_ABGR, 9);
+        FrameCache.Key hugeKey = new FrameCache.Key("huge", 1, 1);
+        for (int i = 0; i < 20; i++) {
+            cache.get(hugeKey);
+        }
+        cache.put(hugeKey, huge);
+        assertSame(huge, cache.get(hugeKey));
+        assertTrue(cache.weightedSize() <= maxBytes);
+    }
+
+    @Test
+    public void loaderSkipsReadingAndDecodingCachedFiles() throws Exception {
+        File png = new File(folder.getRoot(), "a-0.png");
+        BufferedImage image = TestImages.random(32, 32, BufferedImage.TYPE_INT_ARGB, 7);
+        ImageIO.write(image, "png", png);
+        FrameCache cache = new FrameCache(1 << 20, false);
+
+        BufferedImage first;
+        try (FrameLoader loader = new FrameLoader(Collections.singletonList(png), 2, cache)) {
+            first = loader.load(png);
+        }
+        assertArrayEquals(TestImages.argb(image), TestImages.argb(first));
+
+        // Same size and time but unreadable contents: only a cache hit can still produce the frame
+        long modified = png.lastModified();
+        byte[] garbage = new byte[(int) png.length()];
+        Files.write(png.toPath(), garbage);
+        assertTrue(png.setLastModified(modified));
+        try (FrameLoader loader = new FrameLoader(Collections.singletonList(png), 2, cache)) {
+            assertSame(first, loader.load(png));
+        }
+
+        // A new modification time is a different file
+        assertTrue(png.setLastModified(modified - 10_000));
+        try (FrameLoader loader = new FrameLoader(Collections.singletonList(png), 2, cache)) {
+            assertNull(loader.load(png));
+        }
+        assertNotEquals(0, cache.hits());
+    }
+}
@@ -0,0 +1,57 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FrameLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadsFramesLikeImageIoRead() throws Exception {
+        File png = write(TestImages.random(37, 23, BufferedImage.TYPE_INT_ARGB, 1), "png", "a-0.png");
+        File jpeg = write(TestImages.random(37, 23, BufferedImage.TYPE_INT_RGB, 2), "jpg", "a-1.jpg");
+        // PNG data behind a .jpg name must still be read
+        File mislabeled = write(TestImages.random(37, 23, BufferedImage.TYPE_INT_ARGB, 3), "png", "a-2.jpg");
+        File missing = new File(folder.getRoot(), "a-3.png");
+        List<File> files = Arrays.asList(png, jpeg, mislabeled, missing);
+
+        try (FrameLoader loader = new FrameLoader(files, 2)) {
+            for (File file : Arrays.asList(png, jpeg, mislabeled)) {
+                BufferedImage loaded = loader.load(file);
+                assertNotNull(file.getName(), loaded);
+                assertArrayEquals(file.getName(), TestImages.argb(ImageIO.read(file)), TestImages.argb(loaded));
+            }
+            assertNull(loader.load(missing));
+        }
+    }
+
+    @Test
+    public void interleavedByteImagesCopyLikeGetRgb() {
+        for (int type : new int[] { BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_3BYTE_BGR }) {
+            BufferedImage image = TestImages.random(37, 23, type, type);
+            int[] copied = new int[image.getWidth() * image.getHeight() + 5];
+            Rasters.copyArgb(image, copied);
+            assertArrayEquals(TestImages.argb(image), Arrays.copyOf(copied, copied.length - 5));
+        }
+    }
+
+    private File write(BufferedImage image, String format, String name) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        ImageIO.write(image, format, file);
+        return file;
+    }
+}
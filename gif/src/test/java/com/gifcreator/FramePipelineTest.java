@@ -0,0 +1,187 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class FramePipelineTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(8);
+
+    @After
+    public void shutdown() throws InterruptedException {
+        pool.shutdownNow();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void framesReachTheSinkInInputOrder() throws Exception {
+        List<Integer> received = new ArrayList<>();
+        // Later frames finish first, and every fifth one is dropped
+        new FramePipeline<Integer, Integer>(pool, 4).run(range(40), input -> {
+            sleep(40 - input);
+            return input % 5 == 4 ? null : input;
+        }, received::add);
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            if (i % 5 != 4) {
+                expected.add(i);
+            }
+        }
+        assertEquals(expected, received);
+    }
+
+    @Test
+    public void noMoreThanTheWindowIsInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger mostInFlight = new AtomicInteger();
+        // A frame counts from the moment the stage starts until the sink takes it
+        new FramePipeline<Integer, Integer>(pool, 3).run(range(30), input -> {
+            mostInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(2);
+            return input;
+        }, output -> {
+            sleep(3);
+            inFlight.decrementAndGet();
+        });
+
+        assertEquals(0, inFlight.get());
+        assertTrue("most in flight: " + mostInFlight.get(), mostInFlight.get() <= 3);
+    }
+
+    @Test
+    public void permitsComeBackWhenTheStageThrows() throws Exception {
+        Semaphore budget = new Semaphore(3);
+        ConversionMetrics metrics = new ConversionMetrics();
+        try {
+            new FramePipeline<Integer, Integer>(pool, 4, budget, metrics).run(range(20), input -> {
+                if (input == 6) {
+                    throw new IOException("bad frame");
+                }
+                sleep(1);
+                return input;
+            }, output -> {
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("bad frame", e.getMessage());
+        }
+        assertEquals(3, budget.availablePermits());
+        assertEquals(0, metrics.framesInFlight());
+    }
+
+    @Test
+    public void permitsComeBackWhenTheSinkThrows() throws Exception {
+        Semaphore budget = new Semaphore(3);
+        ConversionMetrics metrics = new ConversionMetrics();
+        try {
+            new FramePipeline<Integer, Integer>(pool, 4, budget, metrics).run(range(20), input -> input, output -> {
+                if (output == 2) {
+                    throw new IllegalStateException("disk full");
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        assertEquals(3, budget.availablePermits());
+        assertEquals(0, metrics.framesInFlight());
+    }
+
+    @Test
+    public void framesTheSinkNeverGetsAreDiscarded() throws Exception {
+        AtomicInteger produced = new AtomicInteger();
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> discarded = Collections.synchronizedList(new ArrayList<>());
+        try {
+            // Some frames are done when the sink fails, others are still running and finish later
+            new FramePipeline<Integer, Integer>(pool, 6).run(range(30), input -> {
+                long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(input % 3 * 5);
+                while (System.nanoTime() < until) {
+                    Thread.onSpinWait();
+                }
+                produced.incrementAndGet();
+                return input;
+            }, output -> {
+                if (output == 3) {
+                    throw new IllegalStateException("disk full");
+                }
+                received.add(output);
+            }, discarded::add);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Only the frame the sink threw on is its own to clean up
+        assertEquals(range(3), received);
+        assertEquals(produced.get() - 4, discarded.size());
+        assertTrue(discarded.size() > 0);
+    }
+
+    @Test
+    public void sharedBudgetCapsFramesAcrossGifs() throws Exception {
+        Semaphore budget = new Semaphore(3);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger mostInFlight = new AtomicInteger();
+        ExecutorService gifs = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<List<Integer>>> results = new ArrayList<>();
+            for (int gif = 0; gif < 3; gif++) {
+                results.add(gifs.submit(() -> {
+                    List<Integer> received = new ArrayList<>();
+                    // Each window alone would allow more than the shared budget. A frame gives its
+                    // permit back as the sink takes it, so only the stage is counted
+                    new FramePipeline<Integer, Integer>(pool, 4, budget).run(range(25), input -> {
+                        mostInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        sleep(2);
+                        inFlight.decrementAndGet();
+                        return input;
+                    }, received::add);
+                    return received;
+                }));
+            }
+            for (Future<List<Integer>> result : results) {
+                assertEquals(range(25), result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            gifs.shutdownNow();
+        }
+        assertTrue("most in flight: " + mostInFlight.get(), mostInFlight.get() <= 3);
+        assertEquals(3, budget.availablePermits());
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> inputs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            inputs.add(i);
+        }
+        return Collections.unmodifiableList(inputs);
+    }
+
+    private static void sleep(int millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.madgag.gif.fmsware.GifDecoder;
+
+public class GifFrameReaderTest {
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+    private static final int[] COLORS = { 0xFF00FF00, 0xFFC81E1E, 0xFF1E1EC8, 0xFFFFFFFF };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void deltaFramesAreCompositedLikeGifDecoder() throws Exception {
+        BufferedImage[] frames = walkingSprite(new Random(3), 10);
+        File gif = folder.newFile("walk.gif");
+        try (OutputStream out = Files.newOutputStream(gif.toPath())) {
+            GifEncoder encoder = GifEncoderType.FAST.create(true);
+            encoder.start(out, 0);
+            for (BufferedImage frame : frames) {
+                encoder.addFrame(frame, 70);
+            }
+            encoder.finish();
+        }
+
+        GifDecoder decoder = new GifDecoder();
+        assertEquals(GifDecoder.STATUS_OK, decoder.read(gif.getAbsolutePath()));
+
+        try (GifFrameReader reader = GifFrameReader.open(gif)) {
+            assertEquals(WIDTH, reader.width());
+            assertEquals(HEIGHT, reader.height());
+            for (int f = 0; f < frames.length; f++) {
+                BufferedImage canvas = reader.next();
+                assertEquals(0, reader.loopCount());
+                assertEquals(70, reader.delayMs());
+                BufferedImage reference = decoder.getFrame(f);
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int x = 0; x < WIDTH; x++) {
+                        String where = "frame " + f + " pixel " + x + "," + y;
+                        int expected = frames[f].getRGB(x, y);
+                        int actual = canvas.getRGB(x, y);
+                        assertEquals(where, expected >>> 24 == 0 ? 0 : expected, actual);
+                        int decoded = reference.getRGB(x, y);
+                        assertEquals(where, decoded >>> 24 == 0 ? 0 : decoded, actual);
+                    }
+                }
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    /** A sprite moving over a transparent background, so frames need both offsets and clearing. */
+    private static BufferedImage[] walkingSprite(Random random, int count) {
+        int[] sprite = new int[6 * 6];
+        for (int i = 0; i < sprite.length; i++) {
+            sprite[i] = COLORS[random.nextInt(COLORS.length)];
+        }
+        BufferedImage[] frames = new BufferedImage[count];
+        for (int f = 0; f < count; f++) {
+            frames[f] = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+            int left = 2 + f * 3;
+            int top = 4 + (f % 3) * 5;
+            frames[f].setRGB(left, top, 6, 6, sprite, 0, 6);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,66 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GifOutputTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fileStreamKeepsEveryByteAcrossBufferBoundaries() throws Exception {
+        byte[] expected = new byte[GifOutput.BUFFER_SIZE * 2 + 1234];
+        new Random(1).nextBytes(expected);
+        File file = folder.newFile("out.bin");
+        Files.write(file.toPath(), new byte[expected.length * 2]);
+
+        try (OutputStream out = GifOutput.toFile(file.toPath())) {
+            int position = 0;
+            Random sizes = new Random(2);
+            while (position < expected.length) {
+                if (sizes.nextBoolean()) {
+                    out.write(expected[position++]);
+                } else {
+                    int length = Math.min(expected.length - position, sizes.nextInt(GifOutput.BUFFER_SIZE / 3));
+                    out.write(expected, position, length);
+                    position += length;
+                }
+            }
+        }
+        // The longer previous contents must be gone
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void inMemoryGifMatchesTheFile() throws Exception {
+        BufferedImage[] frames = new BufferedImage[4];
+        Random random = new Random(7);
+        for (int f = 0; f < frames.length; f++) {
+            frames[f] = new BufferedImage(32, 24, BufferedImage.TYPE_INT_ARGB);
+            for (int i = 0; i < 100; i++) {
+                frames[f].setRGB(random.nextInt(32), random.nextInt(24), 0xFF000000 | random.nextInt(0x1000000));
+            }
+        }
+        ConversionOptions options = ConversionOptions.defaults();
+        File file = new File(folder.getRoot(), "frames.gif");
+        MultiConvert.createGif(frames, file.getPath(), 80, options);
+
+        ByteBuffer memory = MultiConvert.createGifInMemory(frames, 80, options);
+        byte[] bytes = new byte[memory.remaining()];
+        memory.get(bytes);
+        assertEquals(file.length(), bytes.length);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), bytes);
+    }
+}
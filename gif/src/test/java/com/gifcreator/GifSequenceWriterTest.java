@@ -0,0 +1,71 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+public class GifSequenceWriterTest {
+
+    private static final int[][] BOUNDS = { { 5, 4, 40, 30 }, { 5, 4, 20, 10 }, { 5, 4, 40, 30 }, { 0, 0, 8, 8 },
+            { 5, 4, 12, 6 } };
+
+    @Test
+    public void reusedTemplatesTakeEachFramesBounds() throws Exception {
+        // The second GIF gets the pooled writer and the templates the first one left behind
+        for (int gif = 0; gif < 2; gif++) {
+            ImageReader reader = TestImages.gifReader(write());
+            assertEquals(BOUNDS.length, reader.getNumImages(true));
+            for (int i = 0; i < BOUNDS.length; i++) {
+                IIOMetadataNode descriptor = descriptor(reader, i);
+                String frame = "gif " + gif + " frame " + i;
+                assertEquals(frame, BOUNDS[i][0], attribute(descriptor, "imageLeftPosition"));
+                assertEquals(frame, BOUNDS[i][1], attribute(descriptor, "imageTopPosition"));
+                assertEquals(frame, BOUNDS[i][2], attribute(descriptor, "imageWidth"));
+                assertEquals(frame, BOUNDS[i][3], attribute(descriptor, "imageHeight"));
+                BufferedImage image = reader.read(i);
+                assertEquals(frame, BOUNDS[i][2], image.getWidth());
+                assertEquals(frame, BOUNDS[i][3], image.getHeight());
+            }
+            reader.dispose();
+        }
+    }
+
+    private static byte[] write() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            GifSequenceWriter writer = GifSequenceWriter.pooled(output, BufferedImage.TYPE_INT_ARGB, 100, 0);
+            for (int i = 0; i < BOUNDS.length; i++) {
+                BufferedImage frame = new OctreeQuantizer().quantize(
+                        TestImages.random(BOUNDS[i][2], BOUNDS[i][3], BufferedImage.TYPE_INT_RGB, i));
+                // Same delay and disposal throughout, so every frame shares one template
+                writer.writeToSequence(frame, BOUNDS[i][0], BOUNDS[i][1], 100, 1);
+            }
+            writer.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static IIOMetadataNode descriptor(ImageReader reader, int index) throws Exception {
+        IIOMetadataNode root = (IIOMetadataNode) reader.getImageMetadata(index)
+                .getAsTree("javax_imageio_gif_image_1.0");
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeName().equals("ImageDescriptor")) {
+                return (IIOMetadataNode) child;
+            }
+        }
+        throw new AssertionError("missing ImageDescriptor");
+    }
+
+    private static int attribute(IIOMetadataNode node, String name) {
+        return Integer.parseInt(node.getAttribute(name));
+    }
+}
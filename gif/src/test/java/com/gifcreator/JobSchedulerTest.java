@@ -0,0 +1,235 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JobSchedulerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void pixelCountReadsOnlyTheHeader() throws Exception {
+        assertEquals(30 * 20, FrameLoader.pixelCount(png("frame-0.png", 30, 20)));
+
+        File text = folder.newFile("notes.png");
+        Files.write(text.toPath(), "not an image".getBytes("UTF-8"));
+        assertEquals(-1, FrameLoader.pixelCount(text));
+    }
+
+    @Test
+    public void jobsRunLargestCostFirst() throws Exception {
+        List<File> small = frames("small", 16, 16, 4);
+        List<File> tall = frames("tall", 16, 16, 40);
+        List<File> wide = frames("wide", 64, 64, 4);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        JobScheduler scheduler = new JobScheduler(Long.MAX_VALUE, 4, FrameLoader.IO, new ConversionMetrics());
+        scheduler.add(small, () -> order.add("small"));
+        scheduler.add(tall, () -> order.add("tall"));
+        scheduler.add(wide, () -> order.add("wide"));
+
+        // 64x64x4 = 16384 pixels, 16x16x40 = 10240, 16x16x4 = 1024
+        scheduler.runAll(Runnable::run, 1);
+        assertEquals(Arrays.asList("wide", "tall", "small"), order);
+    }
+
+    @Test
+    public void runningJobsStayWithinTheBudget() throws Exception {
+        List<File> frames = frames("walk", 64, 64, 8);
+        long peak = JobScheduler.peakBytes(64 * 64, 8, 4);
+        ConversionMetrics metrics = new ConversionMetrics();
+        // Room for two jobs at a time, with four workers
+        JobScheduler scheduler = new JobScheduler(2 * peak + 1024, 4, FrameLoader.IO, metrics);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 8; i++) {
+            scheduler.add(frames, () -> {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.incrementAndGet();
+            });
+        }
+        assertEquals(8, metrics.jobsQueued());
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        scheduler.runAll(pool, 4);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(8, done.get());
+        assertEquals(2, mostRunning.get());
+        assertEquals(0, metrics.jobsQueued());
+    }
+
+    @Test
+    public void batchesSharingABudgetStayWithinItTogether() throws Exception {
+        List<File> frames = frames("walk", 64, 64, 8);
+        long peak = JobScheduler.peakBytes(64 * 64, 8, 4);
+        // Each batch alone could run two jobs at a time; together they have room for two
+        JobScheduler.Budget shared = new JobScheduler.Budget(2 * peak + 1024);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        ExecutorService batches = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int batch = 0; batch < 2; batch++) {
+                JobScheduler scheduler = new JobScheduler(2 * peak + 1024, shared, 4, FrameLoader.IO,
+                        new ConversionMetrics());
+                for (int i = 0; i < 4; i++) {
+                    scheduler.add(frames, () -> {
+                        mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.decrementAndGet();
+                        done.incrementAndGet();
+                    });
+                }
+                results.add(batches.submit(() -> {
+                    scheduler.runAll(pool, 2);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            batches.shutdownNow();
+            pool.shutdown();
+        }
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(8, done.get());
+        assertEquals(2, mostRunning.get());
+    }
+
+    @Test
+    public void jobLargerThanTheBudgetRunsAlone() throws Exception {
+        List<File> big = frames("big", 64, 64, 2);
+        List<File> small = frames("small", 8, 8, 2);
+        JobScheduler scheduler = new JobScheduler(1024, 4, FrameLoader.IO, new ConversionMetrics());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        Runnable job = () -> {
+            mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+        };
+        scheduler.add(small, job);
+        scheduler.add(big, job);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        scheduler.runAll(pool, 2);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1, mostRunning.get());
+    }
+
+    @Test
+    public void smallerJobsOvertakeOneWaitingForRoom() throws Exception {
+        List<File> first = frames("first", 64, 64, 5);
+        List<File> second = frames("second", 64, 64, 4);
+        List<File> small = frames("small", 16, 16, 4);
+        long bigKib = JobScheduler.peakBytes(64 * 64, 4, 4) / 1024;
+        long smallKib = Math.ceilDiv(JobScheduler.peakBytes(16 * 16, 4, 4), 1024);
+        // While the first big job runs, what is left holds two small jobs but not the second big one
+        JobScheduler scheduler = new JobScheduler((bigKib + 2 * smallKib) * 1024, 4, FrameLoader.IO,
+                new ConversionMetrics());
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        scheduler.add(first, () -> pause(started, "first"));
+        scheduler.add(second, () -> pause(started, "second"));
+        for (int i = 0; i < 3; i++) {
+            String name = "small" + i;
+            scheduler.add(small, () -> pause(started, name));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        scheduler.runAll(pool, 4);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(5, started.size());
+        assertEquals(new HashSet<>(Arrays.asList("first", "small0", "small1")), new HashSet<>(started.subList(0, 3)));
+    }
+
+    @Test
+    public void tightBudgetStillConvertsEverySequence() throws Exception {
+        File input = folder.newFolder("clips");
+        for (String name : new String[] { "a", "b", "c" }) {
+            for (int i = 0; i < 3; i++) {
+                ImageIO.write(new BufferedImage(24, 24, BufferedImage.TYPE_INT_ARGB), "png",
+                        new File(input, name + "-" + i + ".png"));
+            }
+        }
+        ConversionSummary summary = new MultiConvert(ConversionOptions.builder()
+                .mode(MultiConvert.ProcessingMode.SEQUENTIAL)
+                .parallelism(3)
+                .memoryBudget(1)
+                .outputDir(new File(folder.getRoot(), "out"))
+                .build()).convertImagesToGif(input.getPath());
+        assertEquals(3, summary.getCreated());
+        assertEquals(0, summary.getFailed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void budgetMustBePositive() {
+        ConversionOptions.builder().memoryBudget(0).build();
+    }
+
+    private static void pause(List<String> started, String name) {
+        started.add(name);
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<File> frames(String name, int width, int height, int count) throws Exception {
+        List<File> frames = new ArrayList<>();
+        File first = png(name + "-0.png", width, height);
+        frames.add(first);
+        // Only the first header is read, so the rest need not be images
+        for (int i = 1; i < count; i++) {
+            frames.add(new File(folder.getRoot(), name + "-" + i + ".png"));
+        }
+        return frames;
+    }
+
+    private File png(String name, int width, int height) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", file);
+        return file;
+    }
+}
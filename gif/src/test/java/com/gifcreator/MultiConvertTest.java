@@ -0,0 +1,129 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MultiConvertTest {
+
+    private static final int[] COLORS = { 0xFFFF0000, 0xFF0000FF, 0xFFFFFF00, 0xFF000000, 0xFFFFFFFF };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void streamedGifKeepsEveryFrameInOrder() throws Exception {
+        File input = folder.newFolder("walk");
+        for (int i = 0; i < COLORS.length; i++) {
+            solid(new File(input, "walk-" + i + ".png"), COLORS[i]);
+        }
+
+        File gif = new File(convert(input, 0), "walk.gif");
+        assertFrames(gif, COLORS);
+    }
+
+    @Test
+    public void unreadableFramesAreSkipped() throws Exception {
+        File input = folder.newFolder("walk");
+        for (int i = 0; i < COLORS.length; i++) {
+            File frame = new File(input, "walk-" + i + ".png");
+            if (i == 2) {
+                Files.write(frame.toPath(), "not an image".getBytes("UTF-8"));
+            } else {
+                solid(frame, COLORS[i]);
+            }
+        }
+
+        File gif = new File(convert(input, 0), "walk.gif");
+        assertFrames(gif, new int[] { COLORS[0], COLORS[1], COLORS[3], COLORS[4] });
+    }
+
+    @Test
+    public void noGifIsWrittenWhenNoFrameCanBeRead() throws Exception {
+        File input = folder.newFolder("broken");
+        for (int i = 0; i < 3; i++) {
+            Files.write(new File(input, "broken-" + i + ".png").toPath(), "not an image".getBytes("UTF-8"));
+        }
+
+        File output = convert(input, 1);
+        String[] written = output.list((dir, name) -> name.endsWith(".gif"));
+        assertEquals(0, written == null ? 0 : written.length);
+    }
+
+    @Test
+    public void collidingNamesGetDistinctFilesInAParallelBatch() throws Exception {
+        // Every sequence at the root is named after the root, so all of them race for clips.gif
+        File input = folder.newFolder("clips");
+        for (int s = 0; s < COLORS.length; s++) {
+            for (int i = 0; i < 3; i++) {
+                solid(new File(input, "seq" + s + "-" + i + ".png"), COLORS[s]);
+            }
+        }
+        File output = new File(folder.getRoot(), "out");
+        ConversionSummary summary = new MultiConvert(ConversionOptions.builder()
+                .mode(MultiConvert.ProcessingMode.SEQUENTIAL)
+                .parallelism(COLORS.length)
+                .outputDir(output)
+                .build()).convertImagesToGif(input.getPath());
+        assertEquals(COLORS.length, summary.getCreated());
+
+        String[] names = output.list((dir, name) -> name.endsWith(".gif"));
+        Arrays.sort(names);
+        assertEquals(Arrays.asList("clips.gif", "clips_1.gif", "clips_2.gif", "clips_3.gif", "clips_4.gif"),
+                Arrays.asList(names));
+        // Each sequence ended up in a file of its own
+        Set<Integer> colors = new HashSet<>();
+        for (String name : names) {
+            ImageReader reader = TestImages.gifReader(Files.readAllBytes(new File(output, name).toPath()));
+            assertEquals(name, 3, reader.getNumImages(true));
+            colors.add(reader.read(0).getRGB(3, 3));
+            reader.dispose();
+        }
+        assertEquals(COLORS.length, colors.size());
+    }
+
+    /** Converts {@code input} in recursive mode and checks how many GIFs failed. */
+    private File convert(File input, int failed) {
+        File output = new File(folder.getRoot(), "out");
+        ConversionSummary summary = new MultiConvert(ConversionOptions.builder()
+                .frameParallelism(2)
+                .outputDir(output)
+                .build()).convertImagesToGif(input.getPath());
+        assertEquals(1 - failed, summary.getCreated());
+        assertEquals(failed, summary.getFailed());
+        return output;
+    }
+
+    private static void assertFrames(File gif, int[] colors) throws Exception {
+        assertTrue(gif.isFile());
+        ImageReader reader = TestImages.gifReader(Files.readAllBytes(gif.toPath()));
+        assertEquals(colors.length, reader.getNumImages(true));
+        for (int i = 0; i < colors.length; i++) {
+            assertEquals("frame " + i, colors[i], reader.read(i).getRGB(3, 3));
+        }
+        reader.dispose();
+    }
+
+    private static void solid(File file, int argb) throws Exception {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        ImageIO.write(image, "png", file);
+    }
+}
@@ -0,0 +1,79 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PixelOpsTest {
+
+    @Test
+    public void vectorAndScalarCompositeAreIdentical() {
+        PixelOps vector = vectorOps();
+        for (int length : new int[] { 0, 1, 7, 64, 1000, 4099 }) {
+            int[] expected = randomPixels(length, length);
+            int[] actual = expected.clone();
+            new ScalarPixelOps().compositeOver(expected, 0, length, 0x00FF00);
+            vector.compositeOver(actual, 0, length, 0x00FF00);
+            assertArrayEquals("length " + length, expected, actual);
+        }
+    }
+
+    @Test
+    public void vectorAndScalarKeyingAreIdentical() {
+        PixelOps vector = vectorOps();
+        for (int length : new int[] { 0, 3, 16, 999, 4099 }) {
+            int[] expected = randomPixels(length, 31 * length);
+            int[] actual = expected.clone();
+            new ScalarPixelOps().keyGreen(expected, 0, length, 150);
+            vector.keyGreen(actual, 0, length, 150);
+            assertArrayEquals("length " + length, expected, actual);
+        }
+    }
+
+    @Test
+    public void compositeMatchesGraphics2D() {
+        BufferedImage source = new BufferedImage(256, 64, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(3);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 256; x++) {
+                source.setRGB(x, y, x << 24 | random.nextInt(0x1000000));
+            }
+        }
+
+        BufferedImage expected = new BufferedImage(256, 64, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = expected.createGraphics();
+        g2d.setColor(Color.GREEN);
+        g2d.fillRect(0, 0, 256, 64);
+        g2d.drawImage(source, 0, 0, null);
+        g2d.dispose();
+
+        BufferedImage actual = new ScalarPixelOps().compositeOver(source, Color.GREEN.getRGB());
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 256; x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    private static PixelOps vectorOps() {
+        PixelOps ops = PixelOps.get();
+        assumeTrue("jdk.incubator.vector not available", ops instanceof VectorPixelOps);
+        return ops;
+    }
+
+    private static int[] randomPixels(int length, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[length];
+        for (int i = 0; i < length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+}
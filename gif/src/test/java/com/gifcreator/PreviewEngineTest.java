@@ -0,0 +1,87 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PreviewEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void thumbnailsFitThePanelAndComeFromTheCache() throws Exception {
+        File png = write("a-0.png", 400, 300);
+        PreviewEngine engine = new PreviewEngine(PreviewEngine.DEFAULT_PIXEL_BUDGET);
+
+        BufferedImage thumbnail = engine.thumbnail(png, 100, 100, Background.GREEN);
+        assertTrue(thumbnail.getWidth() <= 100 && thumbnail.getWidth() >= 50);
+        assertTrue(thumbnail.getHeight() <= 100);
+        // Transparent pixels are keyed to green like in the GIF
+        assertEquals(MultiConvert.GREEN_RGB, thumbnail.getRGB(0, 0));
+        assertSame(thumbnail, engine.thumbnail(png, 100, 100, Background.GREEN));
+        assertEquals(0, engine.thumbnail(png, 100, 100, Background.TRANSPARENT).getRGB(0, 0) >>> 24);
+
+        png.setLastModified(png.lastModified() - 10_000);
+        assertNotSame(thumbnail, engine.thumbnail(png, 100, 100, Background.GREEN));
+        assertNull(engine.thumbnail(new File(folder.getRoot(), "missing.png"), 100, 100, Background.GREEN));
+    }
+
+    @Test
+    public void cacheStaysWithinItsPixelBudget() throws Exception {
+        PreviewEngine engine = new PreviewEngine(3 * 40 * 30);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            files.add(write("a-" + i + ".png", 40, 30));
+        }
+        List<BufferedImage> frames = new ArrayList<>();
+        engine.load(files, 1, 40, 30, Background.GREEN, frames::add);
+
+        assertEquals(5, frames.size());
+        assertEquals(3 * 40 * 30, engine.cachedPixels());
+        // The most recent frames are still cached, the oldest are not
+        assertSame(frames.get(4), engine.thumbnail(files.get(4), 40, 30, Background.GREEN));
+        assertNotSame(frames.get(0), engine.thumbnail(files.get(0), 40, 30, Background.GREEN));
+    }
+
+    @Test
+    public void longSequencesSkipFramesToFitTheBudget() throws Exception {
+        PreviewEngine engine = new PreviewEngine(10 * 100 * 100);
+        assertEquals(1, engine.stepFor(10, 100, 100));
+        assertEquals(2, engine.stepFor(11, 100, 100));
+        assertEquals(3, engine.stepFor(30, 100, 100));
+
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            files.add(write("b-" + i + ".png", 20, 20));
+        }
+        List<BufferedImage> frames = new ArrayList<>();
+        engine.load(files, 2, 20, 20, Background.GREEN, frames::add);
+        assertEquals(3, frames.size());
+    }
+
+    private File write(String name, int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = width / 2; x < width; x++) {
+                image.setRGB(x, y, 0xFFFF0000);
+            }
+        }
+        File file = new File(folder.getRoot(), name);
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+}
@@ -0,0 +1,159 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QuantizerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyQuantizerFindsAPaletteCloseToTheFrame() {
+        int[] argb = gradient(128, 128, 0);
+        for (QuantizerType type : QuantizerType.values()) {
+            for (Dithering dithering : Dithering.values()) {
+                BufferedImage indexed = new FrameQuantizer(type, dithering, 1).quantize(argb, 128, 128);
+                IndexColorModel colorModel = (IndexColorModel) indexed.getColorModel();
+                assertTrue(colorModel.getMapSize() <= 256);
+                assertEquals(-1, colorModel.getTransparentPixel());
+                double error = meanError(argb, indexed);
+                assertTrue(type + "/" + dithering + " error " + error, error < 12);
+            }
+        }
+    }
+
+    @Test
+    public void framesWithFewColoursAreKeptExactAndNotDithered() {
+        int[] argb = new int[64 * 64];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = 0xFF000000 | (i % 7) * 0x252525;
+        }
+        for (QuantizerType type : QuantizerType.values()) {
+            BufferedImage indexed = new FrameQuantizer(type, Dithering.FLOYD_STEINBERG, 1).quantize(argb, 64, 64);
+            assertArrayEquals(argb, indexed.getRGB(0, 0, 64, 64, null, 0, 64));
+        }
+    }
+
+    @Test
+    public void transparentPixelsShareTheExtraIndex() {
+        int[] argb = gradient(64, 64, 1);
+        for (int i = 0; i < argb.length; i += 3) {
+            argb[i] &= 0x00FFFFFF;
+        }
+        for (QuantizerType type : QuantizerType.values()) {
+            for (Dithering dithering : Dithering.values()) {
+                BufferedImage indexed = new FrameQuantizer(type, dithering, 1).quantize(argb, 64, 64);
+                IndexColorModel colorModel = (IndexColorModel) indexed.getColorModel();
+                int transparent = colorModel.getTransparentPixel();
+                assertEquals(colorModel.getMapSize() - 1, transparent);
+                byte[] indices = ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
+                for (int i = 0; i < argb.length; i++) {
+                    assertEquals(argb[i] >>> 24 < 0x80, (indices[i] & 0xFF) == transparent);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelBandsMapLikeOneThread() {
+        int width = 1024;
+        int height = PaletteMapper.PARALLEL_PIXELS / width + 100;
+        int[] argb = gradient(width, height, 2);
+        int[] palette = new MedianCutQuantizer().palette(argb, argb.length, 256);
+        for (Dithering dithering : new Dithering[] { Dithering.NONE, Dithering.ORDERED }) {
+            PaletteMapper mapper = new PaletteMapper(palette, -1, dithering);
+            byte[] parallel = new byte[argb.length];
+            mapper.map(argb, width, height, ByteBuffer.wrap(parallel));
+
+            // Mapped in strips below the parallel threshold
+            byte[] sequential = new byte[argb.length];
+            int strip = 64;
+            for (int y = 0; y < height; y += strip) {
+                int rows = Math.min(strip, height - y);
+                int[] part = new int[rows * width];
+                System.arraycopy(argb, y * width, part, 0, part.length);
+                byte[] mapped = new byte[part.length];
+                // Ordered dithering depends on y & 7, which strips of 64 rows keep
+                mapper.map(part, width, rows, ByteBuffer.wrap(mapped));
+                System.arraycopy(mapped, 0, sequential, y * width, mapped.length);
+            }
+            assertArrayEquals(sequential, parallel);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void neuQuantRejectsSampleFactorsOutOfRange() {
+        ConversionOptions.builder().neuQuantSampleFactor(NeuQuantQuantizer.MAX_SAMPLE_FACTOR + 1).build();
+    }
+
+    @Test
+    public void globalPaletteWithDitheringKeepsOneColourTable() throws Exception {
+        File input = folder.newFolder("sky");
+        for (int i = 0; i < 3; i++) {
+            BufferedImage frame = new BufferedImage(96, 64, BufferedImage.TYPE_INT_ARGB);
+            frame.setRGB(0, 0, 96, 64, gradient(96, 64, 10 + i), 0, 96);
+            ImageIO.write(frame, "png", new File(input, "sky-" + i + ".png"));
+        }
+        File output = new File(folder.getRoot(), "out");
+        ConversionSummary summary = new MultiConvert(ConversionOptions.builder()
+                .quantizer(QuantizerType.NEUQUANT)
+                .neuQuantSampleFactor(5)
+                .dithering(Dithering.FLOYD_STEINBERG)
+                .paletteMode(PaletteMode.GLOBAL)
+                .outputDir(output)
+                .build()).convertImagesToGif(input.getPath());
+        assertEquals(1, summary.getCreated());
+        try (ImageInputStream in = ImageIO.createImageInputStream(new File(output, "sky.gif"))) {
+            ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+            reader.setInput(in);
+            assertEquals(3, reader.getNumImages(true));
+            BufferedImage first = reader.read(0);
+            assertTrue(meanError(gradient(96, 64, 10), first) < 12);
+            reader.dispose();
+        }
+    }
+
+    /** Smooth gradients with noise, far more than 256 colours. */
+    private static int[] gradient(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / Math.max(1, width - 1);
+                int g = y * 255 / Math.max(1, height - 1);
+                int b = Math.min(255, (r + g) / 2 + random.nextInt(16));
+                argb[y * width + x] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return argb;
+    }
+
+    private static double meanError(int[] argb, BufferedImage indexed) {
+        int width = indexed.getWidth();
+        int[] mapped = indexed.getRGB(0, 0, width, indexed.getHeight(), null, 0, width);
+        long total = 0;
+        for (int i = 0; i < argb.length; i++) {
+            total += Math.abs((argb[i] >> 16 & 0xFF) - (mapped[i] >> 16 & 0xFF))
+                    + Math.abs((argb[i] >> 8 & 0xFF) - (mapped[i] >> 8 & 0xFF))
+                    + Math.abs((argb[i] & 0xFF) - (mapped[i] & 0xFF));
+        }
+        return (double) total / (3 * argb.length);
+    }
+}
@@ -0,0 +1,81 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SequenceScannerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void groupsSequencesAndOrdersThemByFrameNumber() throws Exception {
+        File dir = folder.newFolder("frames");
+        touch(dir, "walk-10.png", "walk-2.PNG", "walk-0.jpg", "Walk-1.jpeg", "run-0.png", "run-1-2.png",
+                "walk-x.png", "notes.txt", "walk-3.gif");
+        SequenceScanner scan = SequenceScanner.scan(dir);
+
+        assertEquals(Arrays.asList("walk-0.jpg", "Walk-1.jpeg", "walk-2.PNG", "walk-10.png"),
+                names(scan.sequence("walk")));
+        assertEquals(Arrays.asList("run-0.png"), names(scan.sequence("run")));
+        assertEquals(Arrays.asList("run-1-2.png"), names(scan.sequence("run-1")));
+        assertTrue(scan.sequence("jump").isEmpty());
+        assertEquals(7, scan.images().size());
+        assertEquals(2, scan.seeds("-0").size());
+    }
+
+    @Test
+    public void longDigitRunsSortWithoutOverflow() throws Exception {
+        File dir = folder.newFolder("long");
+        touch(dir, "shot-99999999999999999999.png", "shot-3000000000.png", "shot-100000000000000000000.png",
+                "shot-007.png", "shot-2147483648.png");
+
+        assertEquals(Arrays.asList("shot-007.png", "shot-2147483648.png", "shot-3000000000.png",
+                "shot-99999999999999999999.png", "shot-100000000000000000000.png"),
+                names(SequenceScanner.scan(dir).sequence("shot")));
+        assertEquals(Arrays.asList("shot-007.png", "shot-2147483648.png", "shot-3000000000.png",
+                "shot-99999999999999999999.png", "shot-100000000000000000000.png"),
+                names(SequenceScanner.scan(dir).images()));
+    }
+
+    @Test
+    public void seedsAndFramesShareABaseName() {
+        assertEquals("walk", SequenceScanner.baseName("walk-0.png", "-0"));
+        assertEquals("Walk", SequenceScanner.baseName("Walk-7.jpeg", "-0"));
+        assertEquals("walk", SequenceScanner.baseName("walk-start.png", "-start"));
+        assertEquals("walk", SequenceScanner.baseName("walk-12.PNG", "-start"));
+        assertEquals("notes", SequenceScanner.baseName("notes.png", "-start"));
+        // The suffix opening the name is not a seed; the old behaviour keeps the whole name
+        assertEquals("-start-1", SequenceScanner.baseName("-start-1.png", "-start"));
+    }
+
+    @Test
+    public void missingDirectoryIsEmpty() {
+        SequenceScanner scan = SequenceScanner.scan(new File(folder.getRoot(), "missing"));
+        assertTrue(scan.images().isEmpty());
+        assertTrue(scan.sequence("walk").isEmpty());
+    }
+
+    private static void touch(File dir, String... names) throws Exception {
+        for (String name : names) {
+            assertTrue(new File(dir, name).createNewFile());
+        }
+    }
+
+    private static List<String> names(List<File> files) {
+        List<String> names = new ArrayList<>();
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        return names;
+    }
+}
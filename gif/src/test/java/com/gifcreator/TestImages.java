@@ -0,0 +1,42 @@
+package com.gifcreator;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/** Images and pixel helpers shared by the tests. */
+final class TestImages {
+
+    private TestImages() {
+    }
+
+    /** A {@code width} x {@code height} image of {@code type} filled with random ARGB pixels. */
+    static BufferedImage random(int width, int height, int type, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    /** The pixels of {@code image} as packed ARGB, row by row. */
+    static int[] argb(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /** The JDK GIF reader, set up on the bytes of a GIF. */
+    static ImageReader gifReader(byte[] gif) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(gif));
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        reader.setInput(input);
+        return reader;
+    }
+}
@@ -0,0 +1,72 @@
+package com.gifcreator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TransparentBackgroundTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sourceAlphaBecomesTheTransparentIndex() throws Exception {
+        for (GifEncoderType encoder : GifEncoderType.values()) {
+            File input = folder.newFolder("sprite-" + encoder);
+            for (int i = 0; i < 3; i++) {
+                ImageIO.write(sprite(i), "png", new File(input, "walk-" + i + ".png"));
+            }
+            File output = new File(folder.getRoot(), "out-" + encoder);
+
+            ConversionSummary summary = new MultiConvert(ConversionOptions.builder()
+                    .encoder(encoder)
+                    .background(Background.TRANSPARENT)
+                    .outputDir(output)
+                    .incremental(false)
+                    .build()).convertImagesToGif(input.getPath());
+            assertEquals(1, summary.getCreated());
+
+            File[] gifs = output.listFiles((d, name) -> name.endsWith(".gif"));
+            assertNotNull(gifs);
+            assertEquals(1, gifs.length);
+            try (ImageInputStream in = ImageIO.createImageInputStream(gifs[0])) {
+                ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+                reader.setInput(in);
+                assertEquals(3, reader.getNumImages(true));
+                BufferedImage first = reader.read(0);
+                IndexColorModel colorModel = (IndexColorModel) first.getColorModel();
+                assertTrue(colorModel.getTransparentPixel() >= 0);
+                // Corner was fully transparent, the square mostly opaque red and the faint pixel below half
+                assertEquals(0, first.getRGB(0, 0) >>> 24);
+                assertEquals(0xFFFF0000, first.getRGB(8, 8));
+                assertEquals(0, first.getRGB(14, 14) >>> 24);
+                reader.dispose();
+            }
+        }
+    }
+
+    /** A 16x16 frame: transparent, with a red square at alpha 200 and a faint pixel at alpha 100. */
+    private static BufferedImage sprite(int step) {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 6; y < 11; y++) {
+            for (int x = 6; x < 11; x++) {
+                image.setRGB(x, y, 0xC8FF0000);
+            }
+        }
+        image.setRGB(14, 14, 0x6400FF00);
+        image.setRGB(step, 15, 0xFF0000FF);
+        return image;
+    }
+}